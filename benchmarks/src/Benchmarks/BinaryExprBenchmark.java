@@ -0,0 +1,90 @@
+package Benchmarks;
+
+import Interpreter.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Interpreter.visitBinaryExpr on literal operands, per specialization.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryExprBenchmark {
+    private Interpreter interpreter;
+    private Parser.Expr.Binary numberAdd;
+    private Parser.Expr.Binary numberLess;
+    private Parser.Expr.Binary stringConcat;
+    private Parser.Expr.Binary charEqual;
+    private Parser.Expr.Binary logicalAnd;
+    private Parser.Expr.Binary genericAdd;
+    private Parser.Expr.Binary deepArithmetic;
+
+    @Setup
+    public void setup() {
+        interpreter = new Interpreter();
+
+        numberAdd = binary(literal(3.0), TokenType.PLUS, literal(4.0));
+        numberLess = binary(literal(3.0), TokenType.LESS, literal(4.0));
+        stringConcat = binary(literal("x="), TokenType.CONCAT, literal(42.0));
+        charEqual = binary(literal('a'), TokenType.EQUAL, literal('b'));
+        logicalAnd = binary(literal("OO"), TokenType.UG, literal("DILI"));
+        genericAdd = binary(literal(3.0), TokenType.PLUS, literal(4.0));
+        genericAdd.specialization = Parser.Expr.Binary.Specialization.GENERIC;
+
+        // ((1 + 2) * (3 - 4)) % ((5 + 6) * 7) / 8, as a parser would build it
+        deepArithmetic = binary(
+                binary(
+                        binary(binary(literal(1.0), TokenType.PLUS, literal(2.0)), TokenType.MULTIPLY,
+                                binary(literal(3.0), TokenType.MINUS, literal(4.0))),
+                        TokenType.MODULO,
+                        binary(binary(literal(5.0), TokenType.PLUS, literal(6.0)), TokenType.MULTIPLY, literal(7.0))),
+                TokenType.DIVIDE, literal(8.0));
+    }
+
+    @Benchmark
+    public Object numberAdd() {
+        return interpreter.visitBinaryExpr(numberAdd);
+    }
+
+    @Benchmark
+    public Object numberLess() {
+        return interpreter.visitBinaryExpr(numberLess);
+    }
+
+    @Benchmark
+    public Object stringConcat() {
+        return interpreter.visitBinaryExpr(stringConcat);
+    }
+
+    @Benchmark
+    public Object charEqual() {
+        return interpreter.visitBinaryExpr(charEqual);
+    }
+
+    @Benchmark
+    public Object logicalAnd() {
+        return interpreter.visitBinaryExpr(logicalAnd);
+    }
+
+    @Benchmark
+    public Object genericAdd() {
+        return interpreter.visitBinaryExpr(genericAdd);
+    }
+
+    @Benchmark
+    public Object deepArithmetic() {
+        return interpreter.visitBinaryExpr(deepArithmetic);
+    }
+
+    private static Parser.Expr literal(Object value) {
+        return new Parser.Expr.Literal(value);
+    }
+
+    private static Parser.Expr.Binary binary(Parser.Expr left, TokenType operator, Parser.Expr right) {
+        return new Parser.Expr.Binary(left, new Token(operator, operator.name(), null, 1), right);
+    }
+}
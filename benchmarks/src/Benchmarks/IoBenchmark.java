@@ -0,0 +1,51 @@
+package Benchmarks;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Programs dominated by IPAKITA formatting or by DAWAT parsing.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IoBenchmark {
+    @Param({"10000"})
+    public int count;
+
+    private String printSource;
+    private String inputSource;
+    private byte[] input;
+    private PrintStream originalOut;
+    private InputStream originalIn;
+
+    @Setup
+    public void setup() {
+        printSource = Programs.printHeavy(count);
+        inputSource = Programs.inputHeavy(count);
+        input = Programs.inputLines(count);
+        originalOut = System.out;
+        originalIn = System.in;
+        System.setOut(Programs.NULL_OUT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+        System.setIn(originalIn);
+    }
+
+    @Benchmark
+    public void printHeavy() {
+        Programs.run(printSource);
+    }
+
+    @Benchmark
+    public void inputHeavy() {
+        System.setIn(new ByteArrayInputStream(input));
+        Programs.run(inputSource);
+    }
+}
@@ -0,0 +1,44 @@
+package Benchmarks;
+
+import Interpreter.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Front-end throughput on the README sample and on generated programs of growing size.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexParseBenchmark {
+    @Param({"small", "1000", "10000", "100000"})
+    public String size;
+
+    private String source;
+    private List<Token> tokens;
+
+    @Setup
+    public void setup() {
+        source = size.equals("small") ? Programs.SMALL : Programs.generated(Integer.parseInt(size), 3, 10);
+        tokens = Programs.lex(source);
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Parser.Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public List<Parser.Stmt> lexAndParse() {
+        return new Parser(new Lexer(source).scanTokens()).parse();
+    }
+}
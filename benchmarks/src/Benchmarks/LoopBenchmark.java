@@ -0,0 +1,38 @@
+package Benchmarks;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Whole-program runs of nested ALANG SA loops; inner trip count is the parameter.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopBenchmark {
+    @Param({"10", "100", "1000"})
+    public int inner;
+
+    private String source;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setup() {
+        source = Programs.nestedLoops(100, inner);
+        originalOut = System.out;
+        System.setOut(Programs.NULL_OUT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void nestedLoops() {
+        Programs.run(source);
+    }
+}
@@ -0,0 +1,90 @@
+package Benchmarks;
+
+import Interpreter.*;
+
+import java.io.*;
+import java.util.*;
+
+// Bisaya++ sources and helpers shared by the benchmarks.
+public final class Programs {
+    public static final String SMALL =
+            "SUGOD\n" +
+            "  MUGNA NUMERO x, y, z=5\n" +
+            "  MUGNA LETRA a_1='n'\n" +
+            "  MUGNA TINUOD t=\"OO\"\n" +
+            "  x=y=4\n" +
+            "  a_1='c' -- this is a comment\n" +
+            "  IPAKITA: x & t & z & $ & a_1 & [#] & \"last\"\n" +
+            "KATAPUSAN\n";
+
+    public static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private Programs() {
+    }
+
+    // A WorkloadGenerator program; the seed is fixed so every run measures the same source.
+    public static String generated(int statements, int depth, int loopTrips) {
+        WorkloadGenerator.Options options = new WorkloadGenerator.Options();
+        options.statements = statements;
+        options.depth = depth;
+        options.loopTrips = loopTrips;
+        options.printPercent = 2;
+        options.seed = 42;
+        return new WorkloadGenerator(options).generate();
+    }
+
+    public static String nestedLoops(int outer, int inner) {
+        return "SUGOD\n" +
+                "  MUGNA NUMERO i, j, sum = 0\n" +
+                "  ALANG SA (i=1, i<=" + outer + ", i++)\n" +
+                "  PUNDOK{\n" +
+                "    ALANG SA (j=1, j<=" + inner + ", j++)\n" +
+                "    PUNDOK{\n" +
+                "      sum = sum + i * j % 7\n" +
+                "    }\n" +
+                "  }\n" +
+                "  IPAKITA: sum\n" +
+                "KATAPUSAN\n";
+    }
+
+    public static String printHeavy(int lines) {
+        return "SUGOD\n" +
+                "  MUGNA NUMERO i\n" +
+                "  MUGNA LETRA c = 'z'\n" +
+                "  ALANG SA (i=1, i<=" + lines + ", i++)\n" +
+                "  PUNDOK{\n" +
+                "    IPAKITA: \"line \" & i & [:] & c & \" \" & (i * 2) & $\n" +
+                "  }\n" +
+                "KATAPUSAN\n";
+    }
+
+    public static String inputHeavy(int reads) {
+        return "SUGOD\n" +
+                "  MUGNA NUMERO i, a, b, sum = 0\n" +
+                "  ALANG SA (i=1, i<=" + reads + ", i++)\n" +
+                "  PUNDOK{\n" +
+                "    DAWAT: a, b\n" +
+                "    sum = sum + a * b\n" +
+                "  }\n" +
+                "  IPAKITA: sum\n" +
+                "KATAPUSAN\n";
+    }
+
+    public static byte[] inputLines(int reads) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < reads; i++) {
+            input.append(i % 10).append(',').append(i % 3).append('\n');
+        }
+        return input.toString().getBytes();
+    }
+
+    public static List<Token> lex(String source) {
+        return new Lexer(source).scanTokens();
+    }
+
+    public static void run(String source) {
+        Parser parser = new Parser(lex(source));
+        List<Parser.Stmt> statements = parser.parse();
+        new Interpreter().interpret(statements);
+    }
+}
@@ -0,0 +1,42 @@
+package Benchmarks;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Whole-program runs of generated workloads. Sweeping statements and depth shows whether
+// lexing, parsing and interpretation stay linear in program size.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScalingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int statements;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    private String source;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setup() {
+        source = Programs.generated(statements, depth, 5);
+        originalOut = System.out;
+        System.setOut(Programs.NULL_OUT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void run() {
+        Programs.run(source);
+    }
+}
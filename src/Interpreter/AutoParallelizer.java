@@ -0,0 +1,828 @@
+package Interpreter;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+import static Interpreter.BisayaMain.printDebug;
+
+// Finds ALANG SA loops whose iterations are independent, so the interpreter can run them
+// in parallel chunks the way it runs DUNGAN ALANG SA. Runs after the Resolver, since it
+// compares variables by slot, after the TypeChecker, which links host function calls, and
+// after LoopOptimizer, whose unrolled loops are too short to split.
+//
+// A counted loop (the shape BoundsCheckHoisting matches) qualifies when its body has no
+// DAWAT, IULI, DUNGAN or procedure call, and each variable declared outside the body that
+// the body assigns is either
+//   - a reduction, only updated as s = s + e (SUMA; IHAP when e is 1), lo = min(lo, e) or
+//     KUNG (e < lo) lo = e (GAMAY), or the matching max forms (DAKO), and read nowhere else;
+//   - or private: assigned at the top level of the body before anything reads it, so no
+//     iteration sees another's value. After the loop it holds the last iteration's value.
+// An array declared outside the body may only be written at [i], and an array the body
+// writes may only be read at [i]. Chunks add up their sums in a different order than the
+// loop would, so SUMA terms must be whole numbers, which add up the same in any order as
+// long as no sum gets past 2^53, and must be updated outside any loop in the body.
+//
+// What only shows at runtime is checked on loop entry by the interpreter: the trip count,
+// that the counter and outer values a sum relies on are whole, that no sum can get past
+// 2^53, and that no array the body writes is also read under another name.
+//
+// DUNGAN loops are held to the same rules on variables and arrays by checkParallel, as
+// their reductions are listed rather than found.
+public class AutoParallelizer implements Parser.Stmt.Visitor<Void> {
+    public static class Plan {
+        public final int counterSlot;
+        public final Parser.Expr bound;
+        public final boolean inclusive; // i <= bound rather than i < bound
+        public final Parser.Stmt.Parallel.Reduction[] operators;
+        public final int[] reductionSlots;
+        public final String[] reductionNames;
+        public final int[] privateSlots;
+        public final int[] writtenArrays;
+        public final int[] readArrays;
+        // Variables from outside the body that SUMA terms rely on holding whole numbers.
+        public final int[] wholeSlots;
+        public final boolean wholeCounter;
+        // The terms added to each reduction, none for GAMAY and DAKO, and every value the
+        // body assigns to its own variables, to bound the sums on entry.
+        public final Parser.Expr[][] sumTerms;
+        final Map<Integer, List<Parser.Expr>> bodyValues;
+        // Set once a runtime decline has been explained, so a loop entered often explains it once.
+        boolean declineReported;
+
+        Plan(int counterSlot, Parser.Expr bound, boolean inclusive,
+             Parser.Stmt.Parallel.Reduction[] operators, int[] reductionSlots, String[] reductionNames,
+             int[] privateSlots, int[] writtenArrays, int[] readArrays, int[] wholeSlots, boolean wholeCounter,
+             Parser.Expr[][] sumTerms, Map<Integer, List<Parser.Expr>> bodyValues) {
+            this.counterSlot = counterSlot;
+            this.bound = bound;
+            this.inclusive = inclusive;
+            this.operators = operators;
+            this.reductionSlots = reductionSlots;
+            this.reductionNames = reductionNames;
+            this.privateSlots = privateSlots;
+            this.writtenArrays = writtenArrays;
+            this.readArrays = readArrays;
+            this.wholeSlots = wholeSlots;
+            this.wholeCounter = wholeCounter;
+            this.sumTerms = sumTerms;
+            this.bodyValues = bodyValues;
+        }
+    }
+
+    // Where to explain each decision, or null.
+    private final PrintStream report;
+    // Parallel loops around the statement being visited; loops inside them stay sequential.
+    private int parallelDepth = 0;
+    private int planned = 0;
+
+    public AutoParallelizer(PrintStream report) {
+        this.report = report;
+    }
+
+    public void analyze(List<Parser.Stmt> statements) {
+        planned = 0;
+        for (Parser.Stmt statement : statements) {
+            statement.accept(this);
+        }
+        printDebug("DEBUG: Planned " + planned + " loops to run in parallel");
+    }
+
+    @Override
+    public Void visitWhileStmt(Parser.Stmt.While stmt) {
+        stmt.parallel = null;
+        if (parallelDepth == 0) plan(stmt);
+        if (stmt.parallel != null) parallelDepth++;
+        try {
+            stmt.body.accept(this);
+        } finally {
+            if (stmt.parallel != null) parallelDepth--;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        parallelDepth++;
+        try {
+            stmt.body.accept(this);
+        } finally {
+            parallelDepth--;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+        for (Parser.Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Parser.Stmt.If stmt) {
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Parser.Stmt.Var stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Parser.Stmt.Input stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+        return null;
+    }
+
+    private void plan(Parser.Stmt.While stmt) {
+        List<Integer> boundSlots = new ArrayList<>();
+        Integer counter = BoundsCheckHoisting.countedLoopCounter(stmt, boundSlots);
+        if (counter == null) return;
+        if (stmt.unrolledTrips >= 0) {
+            explain(stmt, "runs sequentially: it always runs " + stmt.unrolledTrips + " times, too few to split.");
+            return;
+        }
+        List<Parser.Stmt> statements = ((Parser.Stmt.Block) stmt.body).statements;
+        Body body = new Body(counter);
+        for (Parser.Stmt statement : statements.subList(0, statements.size() - 1)) {
+            body.statement(statement);
+        }
+
+        String reason = body.reason;
+        List<Parser.Stmt.Parallel.Reduction> operators = new ArrayList<>();
+        List<Integer> reductions = new ArrayList<>();
+        List<Integer> privates = new ArrayList<>();
+        Set<Integer> assigned = new TreeSet<>(body.writes);
+        assigned.addAll(body.updates.keySet());
+        for (int slot : assigned) {
+            if (reason != null) break;
+            if (body.declared.contains(slot)) continue;
+            if (slot == counter) {
+                reason = "it assigns its counter '" + body.names.get(slot) + "'";
+            } else if (body.updates.containsKey(slot) && !body.writes.contains(slot) && !body.reads.contains(slot)) {
+                if (body.conflicting.contains(slot)) {
+                    reason = "it updates '" + body.names.get(slot) + "' with operations that do not combine";
+                } else if (body.loopedSums.contains(slot)) {
+                    // The bound checked on entry covers each term once an iteration.
+                    reason = "it sums '" + body.names.get(slot) + "' in a loop of its own";
+                }
+                operators.add(body.updates.get(slot));
+                reductions.add(slot);
+            } else if (Boolean.TRUE.equals(body.firstAccess.get(slot))) {
+                privates.add(slot);
+            } else {
+                reason = "'" + body.names.get(slot) + "' carries a value from one iteration to the next";
+            }
+        }
+        for (int slot : boundSlots) {
+            if (reason == null && (slot == counter || assigned.contains(slot))) {
+                reason = "its bound changes while it runs";
+            }
+        }
+
+        Set<Integer> writtenArrays = new LinkedHashSet<>();
+        Set<Integer> readArrays = new LinkedHashSet<>();
+        for (Parser.Expr.IndexAssign write : body.arrayWrites) {
+            if (body.declared.contains(write.slot)) continue;
+            if (reason == null && !isVariable(write.index, counter)) {
+                reason = "it writes '" + write.name.lexeme + "' at an index other than '" + body.names.get(counter) + "'";
+            }
+            writtenArrays.add(write.slot);
+        }
+        for (Parser.Expr.Index read : body.arrayReads) {
+            if (body.declared.contains(read.slot)) continue;
+            if (!writtenArrays.contains(read.slot)) {
+                readArrays.add(read.slot);
+            } else if (reason == null && !isVariable(read.index, counter)) {
+                reason = "it reads '" + read.name.lexeme + "' at other elements than the one each iteration writes";
+            }
+        }
+
+        Whole whole = new Whole(body, counter);
+        for (Map.Entry<Integer, List<Parser.Expr>> sum : body.sumTerms.entrySet()) {
+            for (Parser.Expr term : sum.getValue()) {
+                if (reason == null && !whole.check(term)) {
+                    reason = "it sums '" + body.names.get(sum.getKey()) + "' over values that may not be whole numbers,"
+                            + " and adding those in another order could change the result";
+                }
+            }
+        }
+
+        if (reason != null) {
+            explain(stmt, "runs sequentially: " + reason + ".");
+            return;
+        }
+        Parser.Expr.Binary condition = (Parser.Expr.Binary) stmt.condition;
+        String[] names = new String[reductions.size()];
+        Parser.Expr[][] terms = new Parser.Expr[reductions.size()][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = body.names.get(reductions.get(i));
+            terms[i] = body.sumTerms.getOrDefault(reductions.get(i), Collections.emptyList()).toArray(new Parser.Expr[0]);
+        }
+        stmt.parallel = new Plan(counter, condition.right, condition.operator.type == TokenType.LESS_EQUAL,
+                operators.toArray(new Parser.Stmt.Parallel.Reduction[0]), toArray(reductions), names, toArray(privates), toArray(writtenArrays), toArray(readArrays), toArray(whole.outerSlots), whole.counter,
+                terms, body.assignedValues);
+        planned++;
+
+        StringBuilder details = new StringBuilder("runs in parallel chunks");
+        for (int i = 0; i < names.length; i++) {
+            details.append(i == 0 ? "; reductions: " : ", ").append(operators.get(i)).append(' ').append(names[i]);
+        }
+        for (int i = 0; i < privates.size(); i++) {
+            details.append(i == 0 ? "; private: " : ", ").append(body.names.get(privates.get(i)));
+        }
+        explain(stmt, details.append('.').toString());
+    }
+
+    // Reports each way the body of a DUNGAN loop breaks the rules above: it may assign only
+    // the variables it declares and its reductions, which it updates in their operator's
+    // form and reads nowhere else, and it may write an array from outside only at [i],
+    // where alone it reads one it writes. What the procedures it calls do is left to the
+    // TypeChecker. Records the arrays on the loop, for the interpreter to check on entry.
+    static void checkParallel(Parser.Stmt.Parallel stmt, BiConsumer<Token, String> errors) {
+        int counter = stmt.counter.slot;
+        Body body = new Body(counter);
+        body.statement(stmt.body);
+        Map<Integer, Parser.Stmt.Parallel.Reduction> reductions = new HashMap<>();
+        for (int r = 0; r < stmt.reductions.size(); r++) {
+            reductions.put(stmt.reductions.get(r).slot, stmt.operators.get(r));
+        }
+
+        Set<Integer> assigned = new TreeSet<>(body.writes);
+        assigned.addAll(body.updates.keySet());
+        Set<Integer> reported = new HashSet<>();
+        for (int slot : assigned) {
+            if (body.declared.contains(slot)) continue;
+            String name = body.names.get(slot);
+            Token at = body.writtenAt.getOrDefault(slot, body.updatedAt.get(slot));
+            Parser.Stmt.Parallel.Reduction reduction = reductions.get(slot);
+            if (reduction == null) {
+                errors.accept(at, "Cannot assign '" + name + "' in a DUNGAN loop; declare it in the loop or list it as a reduction.");
+            } else if (body.writes.contains(slot) || body.conflicting.contains(slot)
+                    || body.updates.get(slot) != reduction && !(Body.isSum(body.updates.get(slot)) && Body.isSum(reduction))) {
+                String form = reduction == Parser.Stmt.Parallel.Reduction.GAMAY
+                        ? name + " = min(" + name + ", e) or KUNG (e < " + name + ") " + name + " = e"
+                        : reduction == Parser.Stmt.Parallel.Reduction.DAKO
+                        ? name + " = max(" + name + ", e) or KUNG (e > " + name + ") " + name + " = e"
+                        : name + " = " + name + " + e";
+                errors.accept(at, reduction + " variable '" + name + "' can only be updated as " + form + ".");
+                reported.add(slot);
+            }
+        }
+        // Each thread's copy only holds the part of the result from its own iterations.
+        for (int r = 0; r < stmt.reductions.size(); r++) {
+            Token read = body.readAt.get(stmt.reductions.get(r).slot);
+            if (read != null && !reported.contains(stmt.reductions.get(r).slot)) {
+                errors.accept(read, stmt.operators.get(r) + " variable '" + read.lexeme + "' cannot be read in a DUNGAN loop"
+                        + " other than in its update.");
+            }
+        }
+
+        String counterName = stmt.counter.name.lexeme;
+        Set<Integer> writtenArrays = new LinkedHashSet<>();
+        Set<Integer> readArrays = new LinkedHashSet<>();
+        for (Parser.Expr.IndexAssign write : body.arrayWrites) {
+            if (body.declared.contains(write.slot)) continue;
+            if (!isVariable(write.index, counter)) {
+                errors.accept(write.name, "Cannot write '" + write.name.lexeme + "' at an index other than '" + counterName
+                        + "' in a DUNGAN loop; every thread shares it.");
+            }
+            writtenArrays.add(write.slot);
+        }
+        for (Parser.Expr.Index read : body.arrayReads) {
+            if (body.declared.contains(read.slot)) continue;
+            if (!writtenArrays.contains(read.slot)) {
+                readArrays.add(read.slot);
+            } else if (!isVariable(read.index, counter)) {
+                errors.accept(read.name, "Cannot read '" + read.name.lexeme + "' at an index other than '" + counterName
+                        + "' in a DUNGAN loop that writes it.");
+            }
+        }
+        for (Parser.Expr.Variable argument : body.arrayArguments) {
+            if (body.declared.contains(argument.slot)) continue;
+            if (!writtenArrays.contains(argument.slot)) {
+                readArrays.add(argument.slot);
+            } else {
+                errors.accept(argument.name, "Cannot pass '" + argument.name.lexeme + "' to a procedure in a DUNGAN loop that writes it.");
+            }
+        }
+        stmt.writtenArrays = toArray(writtenArrays);
+        stmt.readArrays = toArray(readArrays);
+    }
+
+    private void explain(Parser.Stmt.While stmt, String decision) {
+        if (report != null) report.println("[parallel] line " + stmt.line + ": ALANG SA " + decision);
+    }
+
+    private static boolean isVariable(Parser.Expr expr, int slot) {
+        while (expr instanceof Parser.Expr.Grouping) expr = ((Parser.Expr.Grouping) expr).expression;
+        return expr instanceof Parser.Expr.Variable && ((Parser.Expr.Variable) expr).slot == slot;
+    }
+
+    // Doubles hold every whole number up to 2^53, so whole numbers below it add up exactly.
+    private static final double EXACT = 9007199254740992.0;
+
+    // Whether the sum in reduction r of the plan stays below 2^53, in any order, when it
+    // starts at value and the counter runs from first over trips iterations; values gives
+    // the variables from outside the body as they are on entry.
+    static boolean sumsExactly(Plan plan, int r, double value, double first, long trips, IntFunction<Object> values) {
+        double last = first + trips - 1;
+        double perIteration = 0;
+        for (Parser.Expr term : plan.sumTerms[r]) {
+            perIteration += magnitude(plan, term, first, last, values, new HashSet<>());
+        }
+        // NaN, from a term without a bound times zero, fails too.
+        return Math.abs(value) + trips * perIteration < EXACT;
+    }
+
+    // An upper bound on the magnitude of expr in every iteration, or infinity when there is none.
+    private static double magnitude(Plan plan, Parser.Expr expr, double first, double last,
+                                    IntFunction<Object> values, Set<Integer> visiting) {
+        if (expr instanceof Parser.Expr.Literal) {
+            Object value = ((Parser.Expr.Literal) expr).value;
+            return value instanceof Double ? Math.abs((Double) value) : Double.POSITIVE_INFINITY;
+        }
+        if (expr instanceof Parser.Expr.Grouping) {
+            return magnitude(plan, ((Parser.Expr.Grouping) expr).expression, first, last, values, visiting);
+        }
+        if (expr instanceof Parser.Expr.Unary) {
+            return magnitude(plan, ((Parser.Expr.Unary) expr).right, first, last, values, visiting);
+        }
+        if (expr instanceof Parser.Expr.Binary) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+            double left = magnitude(plan, binary.left, first, last, values, visiting);
+            double right = magnitude(plan, binary.right, first, last, values, visiting);
+            switch (binary.operator.type) {
+                case PLUS:
+                case MINUS:
+                    return left + right;
+                case MULTIPLY:
+                    return left * right;
+                case MODULO:
+                    // A remainder is no larger than either operand.
+                    return Math.min(left, right);
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+        if (expr instanceof Parser.Expr.Variable) {
+            int slot = ((Parser.Expr.Variable) expr).slot;
+            if (slot == plan.counterSlot) return Math.max(Math.abs(first), Math.abs(last));
+            List<Parser.Expr> assigned = plan.bodyValues.get(slot);
+            if (assigned == null) {
+                Object value = values.apply(slot);
+                return value instanceof Double ? Math.abs((Double) value) : Double.POSITIVE_INFINITY;
+            }
+            // A variable that feeds its own value has no bound from its assignments alone.
+            if (!visiting.add(slot)) return Double.POSITIVE_INFINITY;
+            double bound = 0;
+            for (Parser.Expr value : assigned) {
+                bound = value == null ? Double.POSITIVE_INFINITY
+                        : Math.max(bound, magnitude(plan, value, first, last, values, visiting));
+            }
+            visiting.remove(slot);
+            return bound;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static boolean sameValue(Parser.Expr a, Parser.Expr b) {
+        if (a instanceof Parser.Expr.Variable && b instanceof Parser.Expr.Variable) {
+            return ((Parser.Expr.Variable) a).slot == ((Parser.Expr.Variable) b).slot;
+        }
+        return a instanceof Parser.Expr.Literal && b instanceof Parser.Expr.Literal
+                && Objects.equals(((Parser.Expr.Literal) a).value, ((Parser.Expr.Literal) b).value);
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) array[i++] = value;
+        return array;
+    }
+
+    // What a loop body reads and writes, and the first thing that rules it out, if any.
+    private static class Body implements Parser.Expr.Visitor<Void>, Parser.Stmt.Visitor<Void> {
+        final int counter;
+        String reason;
+        // Whether the statement being walked runs in every iteration.
+        boolean unconditional = true;
+        // Loops in the body around the statement being walked.
+        int loops = 0;
+        // For each variable, whether its first access in an iteration is a write that always happens.
+        final Map<Integer, Boolean> firstAccess = new HashMap<>();
+        final Set<Integer> reads = new HashSet<>();
+        final Set<Integer> writes = new HashSet<>();
+        final Set<Integer> declared = new HashSet<>();
+        final Map<Integer, String> names = new HashMap<>();
+        // Every value assigned to each variable, for the whole-number check; null for unknown.
+        final Map<Integer, List<Parser.Expr>> assignedValues = new HashMap<>();
+        // Reduction updates, by variable.
+        final Map<Integer, Parser.Stmt.Parallel.Reduction> updates = new HashMap<>();
+        final Map<Integer, List<Parser.Expr>> sumTerms = new LinkedHashMap<>();
+        // Variables summed inside a loop in the body, whose terms may be added any number of times an iteration.
+        final Set<Integer> loopedSums = new HashSet<>();
+        final Set<Integer> conflicting = new HashSet<>();
+        final List<Parser.Expr.Index> arrayReads = new ArrayList<>();
+        final List<Parser.Expr.IndexAssign> arrayWrites = new ArrayList<>();
+        // Arrays passed whole to procedures.
+        final List<Parser.Expr.Variable> arrayArguments = new ArrayList<>();
+        // Where each variable is first assigned, updated and read, to report it there.
+        final Map<Integer, Token> writtenAt = new HashMap<>();
+        final Map<Integer, Token> updatedAt = new HashMap<>();
+        final Map<Integer, Token> readAt = new HashMap<>();
+
+        Body(int counter) {
+            this.counter = counter;
+        }
+
+        void statement(Parser.Stmt stmt) {
+            stmt.accept(this);
+        }
+
+        private void expression(Parser.Expr expr) {
+            if (expr != null) expr.accept(this);
+        }
+
+        private void access(int slot, boolean write) {
+            if (!firstAccess.containsKey(slot)) firstAccess.put(slot, write && unconditional);
+        }
+
+        private void rejectBecause(String why) {
+            if (reason == null) reason = why;
+        }
+
+        // s = s + e, s = e + s, s = min(s, e) and s = max(s, e) on a variable from outside the body.
+        private boolean update(Parser.Expr.Assign assign) {
+            if (declared.contains(assign.slot) || assign.slot == counter) return false;
+            Parser.Expr value = assign.value;
+            Parser.Expr term = null;
+            Parser.Stmt.Parallel.Reduction operator = null;
+            if (value instanceof Parser.Expr.Binary && ((Parser.Expr.Binary) value).operator.type == TokenType.PLUS) {
+                Parser.Expr.Binary sum = (Parser.Expr.Binary) value;
+                term = isVariable(sum.left, assign.slot) ? sum.right : isVariable(sum.right, assign.slot) ? sum.left : null;
+                operator = term instanceof Parser.Expr.Literal && Double.valueOf(1.0).equals(((Parser.Expr.Literal) term).value)
+                        ? Parser.Stmt.Parallel.Reduction.IHAP : Parser.Stmt.Parallel.Reduction.SUMA;
+            } else if (value instanceof Parser.Expr.Call && ((Parser.Expr.Call) value).host != null
+                    && ((Parser.Expr.Call) value).arguments.size() == 2) {
+                Parser.Expr.Call call = (Parser.Expr.Call) value;
+                if (call.host == HostFunctions.DEFAULT.get("min")) operator = Parser.Stmt.Parallel.Reduction.GAMAY;
+                if (call.host == HostFunctions.DEFAULT.get("max")) operator = Parser.Stmt.Parallel.Reduction.DAKO;
+                Parser.Expr first = call.arguments.get(0);
+                Parser.Expr second = call.arguments.get(1);
+                term = isVariable(first, assign.slot) ? second : isVariable(second, assign.slot) ? first : null;
+            }
+            if (term == null || operator == null) return false;
+            expression(term);
+            record(assign, operator);
+            if (operator == Parser.Stmt.Parallel.Reduction.SUMA || operator == Parser.Stmt.Parallel.Reduction.IHAP) {
+                if (loops > 0) loopedSums.add(assign.slot);
+                sumTerms.computeIfAbsent(assign.slot, slot -> new ArrayList<>()).add(term);
+            }
+            return true;
+        }
+
+        // KUNG (e < lo) lo = e, KUNG (lo > e) lo = e, and the same with > for a maximum.
+        private boolean conditionalUpdate(Parser.Stmt.If stmt) {
+            if (stmt.elseBranch != null || !(stmt.condition instanceof Parser.Expr.Binary)) return false;
+            Parser.Stmt then = stmt.thenBranch;
+            if (then instanceof Parser.Stmt.Block && ((Parser.Stmt.Block) then).statements.size() == 1) {
+                then = ((Parser.Stmt.Block) then).statements.get(0);
+            }
+            if (!(then instanceof Parser.Stmt.Expression) || !(((Parser.Stmt.Expression) then).expression instanceof Parser.Expr.Assign)) {
+                return false;
+            }
+            Parser.Expr.Assign assign = (Parser.Expr.Assign) ((Parser.Stmt.Expression) then).expression;
+            if (declared.contains(assign.slot) || assign.slot == counter) return false;
+
+            Parser.Expr.Binary condition = (Parser.Expr.Binary) stmt.condition;
+            boolean less;
+            switch (condition.operator.type) {
+                case LESS:
+                case LESS_EQUAL:
+                    less = true;
+                    break;
+                case GREATER:
+                case GREATER_EQUAL:
+                    less = false;
+                    break;
+                default:
+                    return false;
+            }
+            Parser.Expr other;
+            if (isVariable(condition.right, assign.slot)) {
+                other = condition.left;
+            } else if (isVariable(condition.left, assign.slot)) {
+                other = condition.right;
+                less = !less;
+            } else {
+                return false;
+            }
+            if (!sameValue(other, assign.value)) return false;
+            expression(other);
+            record(assign, less ? Parser.Stmt.Parallel.Reduction.GAMAY : Parser.Stmt.Parallel.Reduction.DAKO);
+            return true;
+        }
+
+        private void record(Parser.Expr.Assign assign, Parser.Stmt.Parallel.Reduction operator) {
+            names.put(assign.slot, assign.name.lexeme);
+            updatedAt.putIfAbsent(assign.slot, assign.name);
+            access(assign.slot, false);
+            Parser.Stmt.Parallel.Reduction previous = updates.put(assign.slot, operator);
+            if (previous != null && previous != operator && !(isSum(previous) && isSum(operator))) {
+                conflicting.add(assign.slot);
+            }
+            // Counting and summing combine the same way.
+            if (previous != null && isSum(previous)) updates.put(assign.slot, Parser.Stmt.Parallel.Reduction.SUMA);
+        }
+
+        private static boolean isSum(Parser.Stmt.Parallel.Reduction operator) {
+            return operator == Parser.Stmt.Parallel.Reduction.SUMA || operator == Parser.Stmt.Parallel.Reduction.IHAP;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+            if (stmt.expression instanceof Parser.Expr.Assign && update((Parser.Expr.Assign) stmt.expression)) return null;
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+            for (Parser.Expr expr : stmt.expressions) {
+                expression(expr);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Parser.Stmt.Var stmt) {
+            expression(stmt.size);
+            expression(stmt.initializer);
+            declared.add(stmt.slot);
+            names.put(stmt.slot, stmt.name.lexeme);
+            if (stmt.size == null) assignedValues.computeIfAbsent(stmt.slot, slot -> new ArrayList<>()).add(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+            for (Parser.Stmt statement : stmt.statements) {
+                statement.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Parser.Stmt.If stmt) {
+            if (conditionalUpdate(stmt)) return null;
+            expression(stmt.condition);
+            boolean outer = unconditional;
+            unconditional = false;
+            try {
+                stmt.thenBranch.accept(this);
+                if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+            } finally {
+                unconditional = outer;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Parser.Stmt.While stmt) {
+            expression(stmt.condition);
+            boolean outer = unconditional;
+            unconditional = false;
+            loops++;
+            try {
+                stmt.body.accept(this);
+            } finally {
+                unconditional = outer;
+                loops--;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitInputStmt(Parser.Stmt.Input stmt) {
+            rejectBecause("it reads input with DAWAT");
+            return null;
+        }
+
+        @Override
+        public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+            rejectBecause("it returns from its procedure with IULI");
+            return null;
+        }
+
+        // An inner DUNGAN loop assigns its counter, and updates its reductions in its body.
+        @Override
+        public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+            rejectBecause("it contains a DUNGAN loop");
+            expression(stmt.start);
+            expression(stmt.bound);
+            names.putIfAbsent(stmt.counter.slot, stmt.counter.name.lexeme);
+            access(stmt.counter.slot, true);
+            writes.add(stmt.counter.slot);
+            writtenAt.putIfAbsent(stmt.counter.slot, stmt.counter.name);
+            boolean outer = unconditional;
+            unconditional = false;
+            loops++;
+            try {
+                stmt.body.accept(this);
+            } finally {
+                unconditional = outer;
+                loops--;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Parser.Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Parser.Expr.Grouping expr) {
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Parser.Expr.Unary expr) {
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Parser.Expr.Binary expr) {
+            expression(expr.left);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Parser.Expr.Variable expr) {
+            names.putIfAbsent(expr.slot, expr.name.lexeme);
+            access(expr.slot, false);
+            reads.add(expr.slot);
+            readAt.putIfAbsent(expr.slot, expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Parser.Expr.Assign expr) {
+            expression(expr.value);
+            names.putIfAbsent(expr.slot, expr.name.lexeme);
+            access(expr.slot, true);
+            writes.add(expr.slot);
+            writtenAt.putIfAbsent(expr.slot, expr.name);
+            assignedValues.computeIfAbsent(expr.slot, slot -> new ArrayList<>()).add(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Parser.Expr.Index expr) {
+            expression(expr.index);
+            arrayReads.add(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+            expression(expr.index);
+            expression(expr.value);
+            arrayWrites.add(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Parser.Expr.Call expr) {
+            if (expr.host == null) {
+                rejectBecause("it calls procedure '" + expr.name.lexeme + "'");
+            } else if (expr.host != HostFunctions.DEFAULT.get(expr.name.lexeme)) {
+                rejectBecause("it calls host function '" + expr.name.lexeme + "', which may have side effects");
+            }
+            for (Parser.Expr argument : expr.arguments) {
+                expression(argument);
+                if (expr.host == null && argument instanceof Parser.Expr.Variable && ((Parser.Expr.Variable) argument).array) {
+                    arrayArguments.add((Parser.Expr.Variable) argument);
+                }
+            }
+            return null;
+        }
+    }
+
+    // Decides which expressions always have whole-number values. A variable the body assigns
+    // is whole when every value it is assigned is; a variable from outside the body is
+    // assumed whole and collected in outerSlots, for the interpreter to check on entry.
+    private static class Whole {
+        private final Body body;
+        private final int counterSlot;
+        private final Set<Integer> whole;
+        private final Set<Integer> visited = new HashSet<>();
+        final Set<Integer> outerSlots = new LinkedHashSet<>();
+        boolean counter;
+
+        Whole(Body body, int counterSlot) {
+            this.body = body;
+            this.counterSlot = counterSlot;
+            // Start from every assigned variable and drop the ones with a value that may not be whole.
+            this.whole = new HashSet<>(body.assignedValues.keySet());
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Iterator<Integer> slots = whole.iterator(); slots.hasNext(); ) {
+                    for (Parser.Expr value : body.assignedValues.get(slots.next())) {
+                        if (value == null || !isWhole(value, false)) {
+                            slots.remove();
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        boolean check(Parser.Expr expr) {
+            return isWhole(expr, true);
+        }
+
+        private boolean isWhole(Parser.Expr expr, boolean collect) {
+            if (expr instanceof Parser.Expr.Literal) {
+                Object value = ((Parser.Expr.Literal) expr).value;
+                return value instanceof Double && (Double) value == Math.rint((Double) value);
+            }
+            if (expr instanceof Parser.Expr.Grouping) return isWhole(((Parser.Expr.Grouping) expr).expression, collect);
+            if (expr instanceof Parser.Expr.Unary) {
+                Parser.Expr.Unary unary = (Parser.Expr.Unary) expr;
+                return unary.operator.type == TokenType.MINUS && isWhole(unary.right, collect);
+            }
+            if (expr instanceof Parser.Expr.Binary) {
+                Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+                switch (binary.operator.type) {
+                    case PLUS:
+                    case MINUS:
+                    case MULTIPLY:
+                    case MODULO:
+                        return isWhole(binary.left, collect) && isWhole(binary.right, collect);
+                }
+                return false;
+            }
+            if (expr instanceof Parser.Expr.Call) {
+                HostFunctions.Function host = ((Parser.Expr.Call) expr).host;
+                return host != null && host.returnType == TokenType.NUMERO;
+            }
+            if (expr instanceof Parser.Expr.Variable) {
+                int slot = ((Parser.Expr.Variable) expr).slot;
+                if (slot == counterSlot) {
+                    if (collect) counter = true;
+                    return true;
+                }
+                if (body.assignedValues.containsKey(slot)) {
+                    if (!whole.contains(slot)) return false;
+                    // Its values may rely on variables from outside the body in turn.
+                    if (collect && visited.add(slot)) {
+                        for (Parser.Expr value : body.assignedValues.get(slot)) {
+                            isWhole(value, true);
+                        }
+                    }
+                    return true;
+                }
+                if (body.updates.containsKey(slot)) return false;
+                if (collect) outerSlots.add(slot);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package Interpreter;
+
+// An error in a Bisaya++ program, with the source line it was found on.
+// It describes the user's program, not the interpreter, so it carries no stack trace:
+// creating one is as cheap as any other object, which matters when most of a batch fails.
+public class BisayaError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public final int line;
+    // Set when the error is that the input ended too early, so more input could fix it.
+    public final boolean atEnd;
+    // Set when the program failed while running, rather than being rejected before it ran.
+    public final boolean runtime;
+
+    public BisayaError(int line, String message) {
+        this(line, message, false);
+    }
+
+    public BisayaError(int line, String message, boolean atEnd) {
+        this(line, message, atEnd, false);
+    }
+
+    private BisayaError(int line, String message, boolean atEnd, boolean runtime) {
+        super(message, null, false, false);
+        this.line = line;
+        this.atEnd = atEnd;
+        this.runtime = runtime;
+    }
+
+    public static BisayaError lexical(int line, String message, boolean atEnd) {
+        return new BisayaError(line, "[line " + line + "] Lexical error: " + message, atEnd);
+    }
+
+    public static BisayaError syntax(Token token, String message) {
+        boolean atEnd = token.type == TokenType.EOF;
+        String where = atEnd ? "end" : "'" + token.lexeme + "'";
+        return new BisayaError(token.line, "[line " + token.line + "] Syntax error at " + where + ": " + message, atEnd);
+    }
+
+    public static BisayaError runtime(int line, String message) {
+        return new BisayaError(line, "[line " + line + "] Runtime error: " + message, false, true);
+    }
+}
@@ -1,28 +1,122 @@
 package Interpreter;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 
 public class BisayaMain {
     public static final boolean DEBUG = false;
 
+    private static boolean profile = false;
+    private static String coveragePath = null;
+    private static boolean metrics = false;
+    private static long metricsDumpSeconds = 0;
+    private static boolean watch = false;
+    private static int maxCallDepth = Interpreter.DEFAULT_MAX_CALL_DEPTH;
+    private static boolean autoParallel = true;
+    private static boolean explainParallel = false;
+    private static boolean compileClosures = true;
+    private static String nodeProfilePath = null;
+    private static String scriptPath = null;
+
     public static void main(String[] args) {
-        if (args.length > 1) {
-            System.out.println("Usage: java BisayaMain [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        List<String> scripts = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--profile")) {
+                profile = true;
+            } else if (arg.equals("--coverage")) {
+                coveragePath = "coverage.info";
+            } else if (arg.startsWith("--coverage=")) {
+                coveragePath = arg.substring("--coverage=".length());
+            } else if (arg.equals("--metrics")) {
+                metrics = true;
+            } else if (arg.startsWith("--metrics-dump=")) {
+                metrics = true;
+                metricsDumpSeconds = positive(arg.substring("--metrics-dump=".length()));
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.startsWith("--max-depth=")) {
+                maxCallDepth = (int) Math.min(positive(arg.substring("--max-depth=".length())), Integer.MAX_VALUE);
+            } else if (arg.equals("--no-auto-parallel")) {
+                autoParallel = false;
+            } else if (arg.equals("--explain-parallel")) {
+                explainParallel = true;
+            } else if (arg.equals("--no-compile")) {
+                compileClosures = false;
+            } else if (arg.equals("--node-profile")) {
+                nodeProfilePath = "";
+            } else if (arg.startsWith("--node-profile=")) {
+                nodeProfilePath = arg.substring("--node-profile=".length());
+            } else if (arg.startsWith("--")) {
+                usage();
+            } else {
+                scripts.add(arg);
+            }
+        }
+
+        if (scripts.size() > 1 || (profile && coveragePath != null)
+                || (watch && (scripts.isEmpty() || profile || coveragePath != null))
+                || (nodeProfilePath != null && (scripts.isEmpty() || watch))) {
+            usage();
+        }
+
+        // The main thread's stack runs out long before calls are nested maxCallDepth deep.
+        Thread runner = new Thread(null, () -> start(scripts), "bisaya-main", Interpreter.stackSize(maxCallDepth));
+        runner.start();
+        try {
+            runner.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void start(List<String> scripts) {
+        if (metrics) {
+            Metrics.registerMBean();
+            if (metricsDumpSeconds > 0) Metrics.startDump(metricsDumpSeconds, System.err);
+        }
+
+        if (scripts.size() == 1) {
+            scriptPath = scripts.get(0);
+            if ("".equals(nodeProfilePath)) nodeProfilePath = scriptPath + ".nodeprofile";
+            if (watch) {
+                watch(Paths.get(scriptPath));
+                return;
+            }
+            int status = runFile(scriptPath);
+            if (metrics) System.err.println(Metrics.get().format());
+            if (status != 0) System.exit(status);
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: java BisayaMain [--profile | --coverage[=file.info]] [--metrics] [--metrics-dump=seconds]"
+                + " [--max-depth=N] [--no-auto-parallel] [--explain-parallel] [--no-compile] [--node-profile[=file]] [script]");
+        System.out.println("       java BisayaMain --watch [--metrics] [--max-depth=N] [--no-auto-parallel] [--explain-parallel] [--no-compile] script");
+        System.exit(64);
+    }
+
+    // A whole number above zero given to an option; anything else only gets the usage.
+    private static long positive(String value) {
+        try {
+            long number = Long.parseLong(value);
+            if (number > 0) return number;
+        } catch (NumberFormatException e) {
+            // Falls through to the usage
+        }
+        usage();
+        return 0;
+    }
+
     public static void printDebug(String message){
         if (DEBUG) System.out.println(message);
     }
 
-    private static void runFile(String path) {
+    // Returns the exit status: 0, 74 when the file cannot be read, or the Daemon's for a program that failed.
+    private static int runFile(String path) {
         try {
             // Try multiple possible locations
             File file = new File(path);
@@ -43,47 +137,179 @@ public class BisayaMain {
                 System.err.println("- " + new File("../src/" + path).getAbsolutePath());
                 System.err.println("- " + new File("untitled/src/" + path).getAbsolutePath());
                 System.err.println("Current directory: " + System.getProperty("user.dir"));
-                System.exit(74);
+                return 74;
             }
 
             byte[] bytes = Files.readAllBytes(file.toPath());
-            run(new String(bytes, "UTF-8"));
+            return run(new String(bytes, "UTF-8"));
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
             System.err.println("Current directory: " + System.getProperty("user.dir"));
-            System.exit(74);
+            return 74;
         }
     }
 
     private static void runPrompt() {
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("Bisaya++ Interpreter");
-        System.out.println("Type 'exit' to quit");
-
-        while (true) {
-            System.out.print("> ");
-            String line = scanner.nextLine();
-            if (line.equals("exit")) break;
-            run(line);
-        }
+        new Repl(System.in, System.out).run();
     }
 
-    private static void run(String source) {
+    private static int run(String source) {
         try {
+            // Lexical and syntax errors are collected, so every one of them is reported
+            // before giving up, instead of only the first.
+            Diagnostics diagnostics = new Diagnostics();
+            List<Token> tokens = new Lexer(source, diagnostics).scanTokens();
+            Parser parser = new Parser(tokens, diagnostics);
+            List<Parser.Stmt> statements = parser.parse();
+            if (diagnostics.hasErrors()) {
+                diagnostics.print(System.err);
+                return Daemon.EXIT_PROGRAM_ERROR;
+            }
 
-            Lexer lexer = new Lexer(source);
-            List<Token> tokens = lexer.scanTokens();
+            NodeProfile nodeProfile = nodeProfilePath != null ? loadNodeProfile(source, statements) : null;
 
+            Interpreter interpreter;
+            if (profile) {
+                interpreter = new ProfilingInterpreter();
+            } else if (coveragePath != null) {
+                interpreter = new CoverageInterpreter();
+            } else {
+                interpreter = new Interpreter();
+            }
+            interpreter.setMaxCallDepth(maxCallDepth);
+            interpreter.setAutoParallel(autoParallel);
+            interpreter.setCompileClosures(compileClosures);
+            interpreter.setRecordProfile(nodeProfile != null);
+            if (explainParallel) interpreter.explainParallelism(System.err);
+            try {
+                interpreter.interpret(statements);
+            } finally {
+                if (profile) writeProfile((ProfilingInterpreter) interpreter);
+                if (coveragePath != null) writeCoverage((CoverageInterpreter) interpreter);
+                if (nodeProfile != null) saveNodeProfile(nodeProfile);
+            }
+            return 0;
+        } catch (BisayaError e) {
+            System.err.println(e.getMessage());
+            return e.runtime ? Daemon.EXIT_RUNTIME_ERROR : Daemon.EXIT_PROGRAM_ERROR;
+        } catch (RuntimeException e) {
+            // Anything else is a bug in the interpreter itself, so keep the trace.
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            return Daemon.EXIT_RUNTIME_ERROR;
+        }
+    }
 
+    // Runs the script, then again every time it changes on disk. The IncrementalParser
+    // keeps the previous version, so an edit only re-lexes and re-parses the lines around it.
+    private static void watch(Path file) {
+        file = file.toAbsolutePath();
+        IncrementalParser parser = new IncrementalParser();
+        try (WatchService watcher = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            runWatched(file, parser);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (!changed) continue;
 
-            Parser parser = new Parser(tokens);
-            List<Parser.Stmt> statements = parser.parse();
+                // Editors often save in several writes; let them settle and drop the extra events.
+                Thread.sleep(50);
+                while ((key = watcher.poll()) != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                runWatched(file, parser);
+            }
+        } catch (IOException e) {
+            System.err.println("Error watching file: " + e.getMessage());
+            System.exit(74);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runWatched(Path file, IncrementalParser parser) {
+        String source;
+        try {
+            source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // The editor may have replaced the file and not written the new one yet.
+            System.err.println("Error reading file: " + e.getMessage());
+            return;
+        }
 
-            Interpreter interpreter = new Interpreter(parser);
+        long start = System.nanoTime();
+        Diagnostics diagnostics = new Diagnostics();
+        List<Parser.Stmt> statements = parser.update(source, diagnostics);
+        System.err.printf("[watch] %s: parsed %d lines in %.2f ms%n", file.getFileName(), parser.getLinesParsed(),
+                (System.nanoTime() - start) / 1e6);
+        if (statements == null) {
+            diagnostics.print(System.err);
+            return;
+        }
+        try {
+            Interpreter interpreter = new Interpreter();
+            interpreter.setMaxCallDepth(maxCallDepth);
+            interpreter.setAutoParallel(autoParallel);
+            interpreter.setCompileClosures(compileClosures);
+            if (explainParallel) interpreter.explainParallelism(System.err);
             interpreter.interpret(statements);
+        } catch (BisayaError e) {
+            System.err.println(e.getMessage());
         } catch (RuntimeException e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         }
+        if (metrics) System.err.println(Metrics.get().format());
+    }
+
+    // The hot-spot report goes to stderr so it never mixes with program output; the
+    // collapsed stacks go next to the script for flamegraph tools.
+    private static void writeProfile(ProfilingInterpreter interpreter) {
+        interpreter.writeReport(System.err);
+        String path = (scriptPath != null ? scriptPath : "repl") + ".collapsed";
+        try (Writer out = Files.newBufferedWriter(Paths.get(path))) {
+            interpreter.writeCollapsedStacks(out);
+            System.err.println("Collapsed stacks written to " + path);
+        } catch (IOException e) {
+            System.err.println("Error writing profile: " + e.getMessage());
+        }
+    }
+
+    // A profile that cannot be read only means this run starts cold.
+    private static NodeProfile loadNodeProfile(String source, List<Parser.Stmt> statements) {
+        NodeProfile nodeProfile = new NodeProfile(source, statements);
+        try {
+            nodeProfile.load(Paths.get(nodeProfilePath));
+        } catch (IOException e) {
+            System.err.println("Error reading node profile: " + e.getMessage());
+        }
+        return nodeProfile;
+    }
+
+    private static void saveNodeProfile(NodeProfile nodeProfile) {
+        try {
+            nodeProfile.save(Paths.get(nodeProfilePath));
+        } catch (IOException e) {
+            System.err.println("Error writing node profile: " + e.getMessage());
+        }
+    }
+
+    // Hits are added to an existing tracefile, so CI can point every run of a batch at one file.
+    private static void writeCoverage(CoverageInterpreter interpreter) {
+        if (interpreter.getCoverage() == null) return;
+        String source = scriptPath != null ? scriptPath : "repl";
+        try {
+            interpreter.getCoverage().writeLcov(Paths.get(coveragePath), source);
+        } catch (IOException e) {
+            System.err.println("Error writing coverage: " + e.getMessage());
+        }
     }
 }
\ No newline at end of file
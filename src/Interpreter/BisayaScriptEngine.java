@@ -0,0 +1,248 @@
+package Interpreter;
+
+import java.io.*;
+import java.util.*;
+import javax.script.*;
+
+// JSR-223 engine. A script is lexed, parsed, type checked and resolved once by compile();
+// each eval of the CompiledScript then only runs it, on a fresh set of variables.
+//
+// Bindings map to the program's globals: before a run, every binding whose name is a
+// global of the program sets it, taking the place of the value its MUGNA gives it, and
+// after the run the values of all globals are put back into the engine scope. Those are
+// results, not bindings: a later run in the same context binds what the host supplied
+// in their place, if anything, unless the host has put a value of its own there since.
+// DAWAT reads lines from the context's reader and IPAKITA writes to its writer.
+// invokeFunction calls the procedures of the script evaluated last, with the values its
+// globals were left with.
+public class BisayaScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+    private final BisayaScriptEngineFactory factory;
+
+    // DAWAT input of the last reader seen; a Scanner per eval would drop what it buffered ahead.
+    private Reader inputReader;
+    private Scanner input;
+    private volatile HostFunctions hostFunctions = HostFunctions.builtins();
+    // The run invokeFunction calls into.
+    private volatile Interpreter lastRun;
+    // What the last run in each engine scope put back into it, and what the host had supplied under those names.
+    private final Map<Bindings, Results> results = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final class Results {
+        final Map<String, Object> written = new HashMap<>();
+        final Map<String, Object> supplied;
+
+        Results(Map<String, Object> supplied) {
+            this.supplied = supplied;
+        }
+    }
+
+    public BisayaScriptEngine(BisayaScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script, context).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return compile(readAll(reader), context).eval(context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        return compile(script, context);
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(readAll(script), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    // Java functions scripts compiled from now on can call.
+    public HostFunctions getHostFunctions() {
+        return hostFunctions;
+    }
+
+    public void setHostFunctions(HostFunctions hostFunctions) {
+        this.hostFunctions = hostFunctions;
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+        Interpreter interpreter = lastRun;
+        Parser.Stmt.Procedure procedure = interpreter != null ? interpreter.getProcedure(name) : null;
+        if (procedure == null) throw new NoSuchMethodException("No Bisaya++ procedure named '" + name + "'.");
+        Object[] arguments = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            arguments[i] = toBisaya(args[i]);
+        }
+        // One run's stack is not safe to share, so calls into it take turns.
+        synchronized (interpreter) {
+            try {
+                return toJava(interpreter.call(name, arguments), procedure.returnType);
+            } catch (BisayaError e) {
+                throw new ScriptException(e.getMessage(), null, e.line);
+            }
+        }
+    }
+
+    @Override
+    public Object invokeMethod(Object thiz, String name, Object... args) throws NoSuchMethodException {
+        throw new NoSuchMethodException("Bisaya++ values have no methods.");
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> type) {
+        return null;
+    }
+
+    @Override
+    public <T> T getInterface(Object thiz, Class<T> type) {
+        throw new IllegalArgumentException("Bisaya++ values have no methods.");
+    }
+
+    private CompiledScript compile(String source, ScriptContext context) throws ScriptException {
+        String fileName = fileName(context);
+        Diagnostics diagnostics = new Diagnostics();
+        Parser parser = new Parser(new Lexer(source, diagnostics).scanTokens(), diagnostics);
+        List<Parser.Stmt> statements = parser.parse();
+        if (diagnostics.hasErrors()) {
+            List<BisayaError> errors = diagnostics.getErrors();
+            StringJoiner messages = new StringJoiner("\n");
+            for (BisayaError error : errors) {
+                messages.add(error.getMessage());
+            }
+            throw new ScriptException(messages.toString(), fileName, errors.get(0).line);
+        }
+
+        Interpreter prepared = new Interpreter();
+        prepared.setHostFunctions(hostFunctions);
+        try {
+            prepared.prepare(statements);
+        } catch (BisayaError e) {
+            throw new ScriptException(e.getMessage(), fileName, e.line);
+        }
+        return new Compiled(statements, prepared);
+    }
+
+    private synchronized Scanner input(Reader reader) {
+        if (reader != inputReader) {
+            inputReader = reader;
+            input = new Scanner(reader);
+        }
+        return input;
+    }
+
+    private static String fileName(ScriptContext context) {
+        Object fileName = context.getAttribute(ScriptEngine.FILENAME);
+        return fileName != null ? fileName.toString() : null;
+    }
+
+    private static String readAll(Reader reader) throws ScriptException {
+        StringBuilder source = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                source.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+
+    // Java values to Bisaya++ ones: numbers become NUMERO doubles and booleans OO/DILI.
+    private static Object toBisaya(Object value) {
+        if (value instanceof Double || value instanceof Character || value instanceof String) return value;
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof Boolean) return (Boolean) value ? "OO" : "DILI";
+        // Arrays are shared, not copied, so the script and the host see each other's writes.
+        if (value instanceof double[] || value instanceof char[] || value instanceof boolean[]) return value;
+        return String.valueOf(value);
+    }
+
+    private static Object toJava(Object value, TokenType type) {
+        if (type == TokenType.TINUOD) return "OO".equals(value);
+        return value;
+    }
+
+    private class Compiled extends CompiledScript {
+        private final List<Parser.Stmt> statements;
+        private final Interpreter prepared;
+
+        Compiled(List<Parser.Stmt> statements, Interpreter prepared) {
+            this.statements = statements;
+            this.prepared = prepared;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Interpreter interpreter = new Interpreter(prepared);
+            interpreter.setInput(input(context.getReader()));
+            interpreter.setOutput(context.getWriter());
+
+            Bindings engineScope = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            Map<String, Object> supplied = new HashMap<>();
+            try {
+                // The engine scope is bound last, so its values win over the global scope's.
+                bind(interpreter, context.getBindings(ScriptContext.GLOBAL_SCOPE), null, supplied);
+                bind(interpreter, engineScope, engineScope != null ? results.get(engineScope) : null, supplied);
+                interpreter.interpretPrepared(statements);
+            } catch (BisayaError e) {
+                throw new ScriptException(e.getMessage(), fileName(context), e.line);
+            } finally {
+                try {
+                    context.getWriter().flush();
+                } catch (IOException e) {
+                    // The output is gone; the run's own result or error matters more.
+                }
+            }
+
+            lastRun = interpreter;
+            if (engineScope == null) return null;
+            Results written = new Results(supplied);
+            Map<String, TokenType> types = interpreter.getGlobalTypes();
+            for (Map.Entry<String, Object> global : interpreter.getGlobals().entrySet()) {
+                Object value = toJava(global.getValue(), types.get(global.getKey()));
+                engineScope.put(global.getKey(), value);
+                written.written.put(global.getKey(), value);
+            }
+            results.put(engineScope, written);
+            return null;
+        }
+
+        // Binds the host's values. A value an earlier run wrote back, and still there as it
+        // left it, stands for what the host supplied before that run, if anything.
+        private void bind(Interpreter interpreter, Bindings bindings, Results previous, Map<String, Object> supplied) {
+            if (bindings == null) return;
+            for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+                String name = binding.getKey();
+                Object value = binding.getValue();
+                if (previous != null && previous.written.containsKey(name) && previous.written.get(name) == value) {
+                    value = previous.supplied.get(name);
+                }
+                if (value == null) continue;
+                supplied.put(name, value);
+                interpreter.setGlobal(name, toBisaya(value));
+            }
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return BisayaScriptEngine.this;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package Interpreter;
+
+import java.util.*;
+import javax.script.*;
+
+// JSR-223 entry point: ScriptEngineManager finds it through
+// META-INF/services/javax.script.ScriptEngineFactory, under the names in NAMES.
+public class BisayaScriptEngineFactory implements ScriptEngineFactory {
+    private static final String VERSION = "1.0";
+    private static final List<String> NAMES = List.of("bisaya", "Bisaya++", "bisaya++", "bpp");
+
+    @Override
+    public String getEngineName() {
+        return "Bisaya++ Interpreter";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("bpp");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("text/x-bisaya");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Bisaya++";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            case ScriptEngine.NAME: return NAMES.get(0);
+            // Every eval gets its own variables, and a CompiledScript is read-only once compiled.
+            case "THREADING": return "MULTITHREADED";
+            default: return null;
+        }
+    }
+
+    @Override
+    // Bisaya++ has procedures rather than methods, so the object becomes the first argument.
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        StringJoiner call = new StringJoiner(", ", m + "(", ")");
+        call.add(obj);
+        for (String arg : args) {
+            call.add(arg);
+        }
+        return call.toString();
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "IPAKITA: \"" + toDisplay + "\"";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder("SUGOD\n");
+        for (String statement : statements) {
+            program.append(statement).append('\n');
+        }
+        return program.append("KATAPUSAN\n").toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new BisayaScriptEngine(this);
+    }
+}
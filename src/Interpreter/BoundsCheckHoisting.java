@@ -0,0 +1,406 @@
+package Interpreter;
+
+import java.util.*;
+
+import static Interpreter.BisayaMain.printDebug;
+
+// Moves array bounds checks out of counted ALANG SA loops. Runs after the Resolver, since
+// it compares variables by slot.
+//
+// A loop is counted when it has the shape the parser gives ALANG SA (i = start, i < bound
+// or i <= bound, i++), its body never assigns i, and its bound only reads variables the
+// body never assigns. An access xs[i], xs[i + k] or xs[i - k] in the body is covered when
+// the body never assigns xs either. A procedure called from the body may assign any
+// global, so in such a loop only the counter, bound and arrays of a procedure's own frame
+// can qualify. On entry the interpreter works out the first and last
+// value of i and checks them against each covered array once; if that passes, the
+// covered accesses skip their own checks for the whole loop.
+public class BoundsCheckHoisting implements Parser.Expr.Visitor<Void>, Parser.Stmt.Visitor<Void> {
+    public static class CountedLoop {
+        public final int id;
+        public final int counterSlot;
+        public final Parser.Expr bound;
+        public final boolean inclusive; // i <= bound rather than i < bound
+        // For each covered array, its slot and the smallest and largest offset added to i.
+        public final int[] arraySlots;
+        public final int[] minOffsets;
+        public final int[] maxOffsets;
+
+        CountedLoop(int id, int counterSlot, Parser.Expr bound, boolean inclusive,
+                    int[] arraySlots, int[] minOffsets, int[] maxOffsets) {
+            this.id = id;
+            this.counterSlot = counterSlot;
+            this.bound = bound;
+            this.inclusive = inclusive;
+            this.arraySlots = arraySlots;
+            this.minOffsets = minOffsets;
+            this.maxOffsets = maxOffsets;
+        }
+    }
+
+    // Larger offsets are left checked; they are rare and could overflow the range arithmetic.
+    private static final int MAX_OFFSET = 1 << 20;
+
+    // A counted loop being walked: what its body writes, and the accesses that may be covered.
+    private static class Loop {
+        final Parser.Stmt.While stmt;
+        final int counterSlot;
+        final List<Integer> boundSlots;
+        final Set<Integer> writes = new HashSet<>();
+        boolean calls;
+        final List<Parser.Expr> accesses = new ArrayList<>();
+        final List<Integer> accessArrays = new ArrayList<>();
+        final List<Integer> accessOffsets = new ArrayList<>();
+
+        Loop(Parser.Stmt.While stmt, int counterSlot, List<Integer> boundSlots) {
+            this.stmt = stmt;
+            this.counterSlot = counterSlot;
+            this.boundSlots = boundSlots;
+        }
+    }
+
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    // Writes made outside any counted loop; nothing reads them.
+    private final Set<Integer> topLevelWrites = new HashSet<>();
+    private int nextId;
+
+    // Analyzes the statements and returns the next free loop id. Ids continue from firstId,
+    // so loops from every call on the same interpreter get their own.
+    public int hoist(List<Parser.Stmt> statements, int firstId) {
+        nextId = firstId;
+        for (Parser.Stmt statement : statements) {
+            statement.accept(this);
+        }
+        printDebug("DEBUG: Hoisted bounds checks out of " + (nextId - firstId) + " counted loops");
+        return nextId;
+    }
+
+    @Override
+    public Void visitWhileStmt(Parser.Stmt.While stmt) {
+        stmt.counted = null;
+        Loop loop = countedLoop(stmt);
+        if (loop == null) {
+            visit(stmt.condition);
+            stmt.body.accept(this);
+            return null;
+        }
+
+        loops.push(loop);
+        try {
+            visit(stmt.condition);
+            // The trailing i = i + 1 is the increment that makes the loop counted; skip it.
+            List<Parser.Stmt> body = ((Parser.Stmt.Block) stmt.body).statements;
+            for (int i = 0; i < body.size() - 1; i++) {
+                body.get(i).accept(this);
+            }
+        } finally {
+            loops.pop();
+        }
+        // To the loops around this one, the whole loop is one statement that also writes i.
+        Set<Integer> enclosing = writes();
+        enclosing.addAll(loop.writes);
+        enclosing.add(loop.counterSlot);
+        if (loop.calls && !loops.isEmpty()) loops.peek().calls = true;
+        cover(loop);
+        return null;
+    }
+
+    // Decides which of the loop's candidate accesses it can check on entry.
+    private void cover(Loop loop) {
+        // A loop that ran its body less than twice per entry in the runs a NodeProfile
+        // recorded keeps the checks in the body: checking on entry would cost as much.
+        if (loop.stmt.trips < 2 * loop.stmt.entries) return;
+        if (written(loop, loop.counterSlot)) return;
+        for (int slot : loop.boundSlots) {
+            if (written(loop, slot)) return;
+        }
+
+        Map<Integer, int[]> ranges = new LinkedHashMap<>();
+        List<Parser.Expr> covered = new ArrayList<>();
+        for (int i = 0; i < loop.accesses.size(); i++) {
+            int array = loop.accessArrays.get(i);
+            if (written(loop, array)) continue;
+            int offset = loop.accessOffsets.get(i);
+            int[] range = ranges.get(array);
+            if (range == null) {
+                ranges.put(array, new int[] {offset, offset});
+            } else {
+                range[0] = Math.min(range[0], offset);
+                range[1] = Math.max(range[1], offset);
+            }
+            covered.add(loop.accesses.get(i));
+        }
+        if (covered.isEmpty()) return;
+
+        int id = nextId++;
+        for (Parser.Expr access : covered) {
+            if (access instanceof Parser.Expr.Index) {
+                ((Parser.Expr.Index) access).checkedByLoop = id;
+            } else {
+                ((Parser.Expr.IndexAssign) access).checkedByLoop = id;
+            }
+        }
+        int[] arraySlots = new int[ranges.size()];
+        int[] minOffsets = new int[ranges.size()];
+        int[] maxOffsets = new int[ranges.size()];
+        int i = 0;
+        for (Map.Entry<Integer, int[]> range : ranges.entrySet()) {
+            arraySlots[i] = range.getKey();
+            minOffsets[i] = range.getValue()[0];
+            maxOffsets[i] = range.getValue()[1];
+            i++;
+        }
+        Parser.Expr.Binary condition = (Parser.Expr.Binary) loop.stmt.condition;
+        loop.stmt.counted = new CountedLoop(id, loop.counterSlot, condition.right,
+                condition.operator.type == TokenType.LESS_EQUAL, arraySlots, minOffsets, maxOffsets);
+        printDebug("DEBUG: Loop at line " + loop.stmt.line + " checks " + covered.size() + " array accesses on entry");
+    }
+
+    // Frame slots are negative; a called procedure can only reach the others.
+    private static boolean written(Loop loop, int slot) {
+        return loop.writes.contains(slot) || (loop.calls && slot >= 0);
+    }
+
+    private static Loop countedLoop(Parser.Stmt.While stmt) {
+        List<Integer> boundSlots = new ArrayList<>();
+        Integer counter = countedLoopCounter(stmt, boundSlots);
+        return counter != null ? new Loop(stmt, counter, boundSlots) : null;
+    }
+
+    // Matches the While the parser builds for ALANG SA: i < bound or i <= bound, with a
+    // body block whose last statement is i = i + 1, and a bound that is pure arithmetic.
+    // Returns the counter's slot and adds the bound's slots to boundSlots, or returns null.
+    static Integer countedLoopCounter(Parser.Stmt.While stmt, List<Integer> boundSlots) {
+        if (!(stmt.condition instanceof Parser.Expr.Binary)) return null;
+        Parser.Expr.Binary condition = (Parser.Expr.Binary) stmt.condition;
+        TokenType comparison = condition.operator.type;
+        if (comparison != TokenType.LESS && comparison != TokenType.LESS_EQUAL) return null;
+        if (!(condition.left instanceof Parser.Expr.Variable)) return null;
+        int counter = ((Parser.Expr.Variable) condition.left).slot;
+
+        if (!(stmt.body instanceof Parser.Stmt.Block)) return null;
+        List<Parser.Stmt> body = ((Parser.Stmt.Block) stmt.body).statements;
+        if (body.isEmpty() || !(body.get(body.size() - 1) instanceof Parser.Stmt.Expression)) return null;
+        Parser.Expr last = ((Parser.Stmt.Expression) body.get(body.size() - 1)).expression;
+        if (!(last instanceof Parser.Expr.Assign) || ((Parser.Expr.Assign) last).slot != counter) return null;
+        Parser.Expr increment = ((Parser.Expr.Assign) last).value;
+        if (!(increment instanceof Parser.Expr.Binary)) return null;
+        Parser.Expr.Binary step = (Parser.Expr.Binary) increment;
+        if (step.operator.type != TokenType.PLUS || !isVariable(step.left, counter)
+                || !(step.right instanceof Parser.Expr.Literal) || !Double.valueOf(1.0).equals(((Parser.Expr.Literal) step.right).value)) {
+            return null;
+        }
+
+        if (!pureArithmetic(condition.right, boundSlots)) return null;
+        return counter;
+    }
+
+    // True when expr only does arithmetic on number literals and variables, whose slots are
+    // added to slots. Such a bound can be evaluated once more on entry without side effects.
+    private static boolean pureArithmetic(Parser.Expr expr, List<Integer> slots) {
+        if (expr instanceof Parser.Expr.Literal) return ((Parser.Expr.Literal) expr).value instanceof Double;
+        if (expr instanceof Parser.Expr.Variable) {
+            slots.add(((Parser.Expr.Variable) expr).slot);
+            return true;
+        }
+        if (expr instanceof Parser.Expr.Grouping) return pureArithmetic(((Parser.Expr.Grouping) expr).expression, slots);
+        if (expr instanceof Parser.Expr.Unary) {
+            Parser.Expr.Unary unary = (Parser.Expr.Unary) expr;
+            return unary.operator.type == TokenType.MINUS && pureArithmetic(unary.right, slots);
+        }
+        if (expr instanceof Parser.Expr.Binary) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case PLUS:
+                case MINUS:
+                case MULTIPLY:
+                case DIVIDE:
+                case MODULO:
+                    return pureArithmetic(binary.left, slots) && pureArithmetic(binary.right, slots);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isVariable(Parser.Expr expr, int slot) {
+        return expr instanceof Parser.Expr.Variable && ((Parser.Expr.Variable) expr).slot == slot;
+    }
+
+    // Records an access as a candidate of the innermost counted loop whose counter it is indexed by.
+    private void access(Parser.Expr access, int arraySlot, Parser.Expr index) {
+        while (index instanceof Parser.Expr.Grouping) index = ((Parser.Expr.Grouping) index).expression;
+        Parser.Expr counter = index;
+        double offset = 0;
+        if (index instanceof Parser.Expr.Binary) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) index;
+            if (binary.right instanceof Parser.Expr.Literal && ((Parser.Expr.Literal) binary.right).value instanceof Double
+                    && (binary.operator.type == TokenType.PLUS || binary.operator.type == TokenType.MINUS)) {
+                counter = binary.left;
+                offset = (Double) ((Parser.Expr.Literal) binary.right).value;
+                if (binary.operator.type == TokenType.MINUS) offset = -offset;
+            } else if (binary.left instanceof Parser.Expr.Literal && ((Parser.Expr.Literal) binary.left).value instanceof Double
+                    && binary.operator.type == TokenType.PLUS) {
+                counter = binary.right;
+                offset = (Double) ((Parser.Expr.Literal) binary.left).value;
+            } else {
+                return;
+            }
+        }
+        if (!(counter instanceof Parser.Expr.Variable)) return;
+        if (offset != Math.rint(offset) || Math.abs(offset) > MAX_OFFSET) return;
+
+        int slot = ((Parser.Expr.Variable) counter).slot;
+        for (Loop loop : loops) {
+            if (loop.counterSlot == slot) {
+                loop.accesses.add(access);
+                loop.accessArrays.add(arraySlot);
+                loop.accessOffsets.add((int) offset);
+                return;
+            }
+        }
+    }
+
+    private Set<Integer> writes() {
+        Loop loop = loops.peek();
+        return loop != null ? loop.writes : topLevelWrites;
+    }
+
+    private void visit(Parser.Expr expr) {
+        if (expr != null) expr.accept(this);
+    }
+
+    @Override
+    public Void visitLiteralExpr(Parser.Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Parser.Expr.Grouping expr) {
+        visit(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Parser.Expr.Unary expr) {
+        visit(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Parser.Expr.Binary expr) {
+        visit(expr.left);
+        visit(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Parser.Expr.Variable expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Parser.Expr.Assign expr) {
+        visit(expr.value);
+        writes().add(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Parser.Expr.Index expr) {
+        expr.checkedByLoop = -1;
+        visit(expr.index);
+        access(expr, expr.slot, expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+        expr.checkedByLoop = -1;
+        visit(expr.index);
+        visit(expr.value);
+        // Writing an element leaves the array, and so its length, unchanged.
+        access(expr, expr.slot, expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Parser.Expr.Call expr) {
+        for (Parser.Expr argument : expr.arguments) {
+            visit(argument);
+        }
+        if (!loops.isEmpty()) loops.peek().calls = true;
+        return null;
+    }
+
+    @Override
+    public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        // Procedures are declared at the top level, so no loop encloses the body.
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        visit(stmt.start);
+        visit(stmt.bound);
+        Set<Integer> writes = writes();
+        writes.add(stmt.counter.slot);
+        for (Parser.Expr.Variable reduction : stmt.reductions) {
+            writes.add(reduction.slot);
+        }
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+        visit(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+        visit(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+        for (Parser.Expr expr : stmt.expressions) {
+            visit(expr);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Parser.Stmt.Var stmt) {
+        visit(stmt.size);
+        visit(stmt.initializer);
+        writes().add(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+        for (Parser.Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Parser.Stmt.If stmt) {
+        visit(stmt.condition);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Parser.Stmt.Input stmt) {
+        for (int slot : stmt.slots) {
+            writes().add(slot);
+        }
+        return null;
+    }
+}
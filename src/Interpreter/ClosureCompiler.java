@@ -0,0 +1,529 @@
+package Interpreter;
+
+import java.util.*;
+import java.util.function.*;
+
+// Turns prepared statements into trees of closures over the running Interpreter, once,
+// after the other passes. Each closure already knows its operator and where its variable
+// lives on the stack, and the nodes the TypeChecker proved numeric pass plain doubles
+// between them, so running one does none of the visitor's dispatch or type tests. Every
+// closure calls the same few others each time, so the JIT can inline through them.
+//
+// The closures keep the visitor's behavior: the same errors at the same points, the same
+// statement counts and invariant caching. Loops still go through the Interpreter, which
+// clears invariants, checks bounds and splits loops across threads before running the
+// compiled condition and body. DAWAT, DUNGAN, array declarations and calls run on the
+// visitor, though the bodies they run are compiled.
+//
+// A KUNG branch that never ran in the runs a NodeProfile recorded, while its KUNG did, is
+// compiled the first time it is taken rather than up front.
+public class ClosureCompiler implements Parser.Expr.Visitor<Function<Interpreter, Object>>,
+        Parser.Stmt.Visitor<Consumer<Interpreter>> {
+    private final boolean staticallyTyped;
+    // Whether KUNG closures count their branches on the node, for a NodeProfile.
+    private final boolean recording;
+    // Expressions compiled so far. A statement's closure adds its own to the interpreter's
+    // metrics each run, counting cached invariants as if they were computed.
+    private int expressions = 0;
+
+    public ClosureCompiler(boolean staticallyTyped, boolean recording) {
+        this.staticallyTyped = staticallyTyped;
+        this.recording = recording;
+    }
+
+    public void compile(List<Parser.Stmt> statements) {
+        for (Parser.Stmt statement : statements) {
+            statement(statement);
+        }
+    }
+
+    private Consumer<Interpreter> statement(Parser.Stmt stmt) {
+        Consumer<Interpreter> code = stmt.accept(this);
+        stmt.compiled = code;
+        return code;
+    }
+
+    private Function<Interpreter, Object> value(Parser.Expr expr) {
+        return expr.accept(this);
+    }
+
+    // An expression whose type the TypeChecker proved to be NUMERO or TIPIK.
+    private ToDoubleFunction<Interpreter> number(Parser.Expr expr) {
+        if (expr instanceof Parser.Expr.Literal && ((Parser.Expr.Literal) expr).value instanceof Double) {
+            expressions++;
+            double value = (Double) ((Parser.Expr.Literal) expr).value;
+            return in -> value;
+        }
+        if (expr instanceof Parser.Expr.Grouping) {
+            expressions++;
+            return number(((Parser.Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Parser.Expr.Unary && ((Parser.Expr.Unary) expr).operator.type == TokenType.MINUS) {
+            expressions++;
+            ToDoubleFunction<Interpreter> right = number(((Parser.Expr.Unary) expr).right);
+            return in -> -right.applyAsDouble(in);
+        }
+        if (expr instanceof Parser.Expr.Variable) {
+            expressions++;
+            return numberVariable((Parser.Expr.Variable) expr);
+        }
+        if (expr instanceof Parser.Expr.Binary) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+            if (binary.invariant < 0 && binary.specialization == Parser.Expr.Binary.Specialization.TYPED_NUMBER
+                    && isArithmetic(binary.operator.type)) {
+                expressions++;
+                return arithmetic(binary);
+            }
+        }
+        if (expr instanceof Parser.Expr.Index) {
+            expressions++;
+            return numberElement((Parser.Expr.Index) expr);
+        }
+        Function<Interpreter, Object> code = value(expr);
+        return in -> (Double) code.apply(in);
+    }
+
+    // A condition, as the boolean isTruthy would make of its value.
+    private Predicate<Interpreter> test(Parser.Expr expr) {
+        if (expr instanceof Parser.Expr.Grouping) {
+            expressions++;
+            return test(((Parser.Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Parser.Expr.Unary && ((Parser.Expr.Unary) expr).operator.type == TokenType.DILI) {
+            expressions++;
+            Predicate<Interpreter> right = test(((Parser.Expr.Unary) expr).right);
+            return in -> !right.test(in);
+        }
+        if (expr instanceof Parser.Expr.Binary && ((Parser.Expr.Binary) expr).invariant < 0) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+            TokenType operator = binary.operator.type;
+            if (operator == TokenType.UG || operator == TokenType.O) {
+                expressions++;
+                Predicate<Interpreter> left = test(binary.left);
+                Predicate<Interpreter> right = test(binary.right);
+                // UG and O evaluate both sides, hence & and | rather than && and ||.
+                if (operator == TokenType.UG) return in -> left.test(in) & right.test(in);
+                return in -> left.test(in) | right.test(in);
+            }
+            if (binary.specialization == Parser.Expr.Binary.Specialization.TYPED_NUMBER && !isArithmetic(operator)) {
+                expressions++;
+                return comparison(binary);
+            }
+        }
+        Function<Interpreter, Object> code = value(expr);
+        return in -> in.isTruthy(code.apply(in));
+    }
+
+    private static boolean isArithmetic(TokenType operator) {
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private ToDoubleFunction<Interpreter> arithmetic(Parser.Expr.Binary expr) {
+        ToDoubleFunction<Interpreter> left = number(expr.left);
+        ToDoubleFunction<Interpreter> right = number(expr.right);
+        int line = expr.operator.line;
+        switch (expr.operator.type) {
+            case PLUS:
+                return in -> left.applyAsDouble(in) + right.applyAsDouble(in);
+            case MINUS:
+                return in -> left.applyAsDouble(in) - right.applyAsDouble(in);
+            case MULTIPLY:
+                return in -> left.applyAsDouble(in) * right.applyAsDouble(in);
+            case DIVIDE:
+                return in -> {
+                    double dividend = left.applyAsDouble(in);
+                    double divisor = right.applyAsDouble(in);
+                    if (divisor == 0) throw BisayaError.runtime(line, "Division by zero.");
+                    return dividend / divisor;
+                };
+            default:
+                return in -> {
+                    double dividend = left.applyAsDouble(in);
+                    double divisor = right.applyAsDouble(in);
+                    if (divisor == 0) throw BisayaError.runtime(line, "Modulo by zero.");
+                    return remainder(dividend, divisor);
+                };
+        }
+    }
+
+    // Whole operands, the usual case, take the integer remainder: exact, and much cheaper than
+    // the floating one. copySign keeps the sign % gives a zero remainder, as in -8 % 4.
+    private static double remainder(double dividend, double divisor) {
+        int whole = (int) dividend;
+        int wholeDivisor = (int) divisor;
+        if (whole == dividend && wholeDivisor == divisor) return Math.copySign(whole % wholeDivisor, dividend);
+        return dividend % divisor;
+    }
+
+    private Predicate<Interpreter> comparison(Parser.Expr.Binary expr) {
+        ToDoubleFunction<Interpreter> left = number(expr.left);
+        ToDoubleFunction<Interpreter> right = number(expr.right);
+        switch (expr.operator.type) {
+            case GREATER:
+                return in -> left.applyAsDouble(in) > right.applyAsDouble(in);
+            case GREATER_EQUAL:
+                return in -> left.applyAsDouble(in) >= right.applyAsDouble(in);
+            case LESS:
+                return in -> left.applyAsDouble(in) < right.applyAsDouble(in);
+            case LESS_EQUAL:
+                return in -> left.applyAsDouble(in) <= right.applyAsDouble(in);
+            case EQUAL:
+                return in -> Double.compare(left.applyAsDouble(in), right.applyAsDouble(in)) == 0;
+            default:
+                return in -> Double.compare(left.applyAsDouble(in), right.applyAsDouble(in)) != 0;
+        }
+    }
+
+    private static ToDoubleFunction<Interpreter> numberVariable(Parser.Expr.Variable expr) {
+        Token name = expr.name;
+        int slot = expr.slot;
+        if (slot >= 0) {
+            return in -> {
+                Object value = in.stack[slot];
+                if (value == Interpreter.UNDEFINED) throw Interpreter.undefinedVariable(name);
+                return (Double) value;
+            };
+        }
+        int offset = -1 - slot;
+        return in -> {
+            Object value = in.stack[in.fp + offset];
+            if (value == Interpreter.UNDEFINED) throw Interpreter.undefinedVariable(name);
+            return (Double) value;
+        };
+    }
+
+    // NUMERO and TIPIK arrays hold doubles, read without boxing.
+    private ToDoubleFunction<Interpreter> numberElement(Parser.Expr.Index expr) {
+        Function<Interpreter, Object> index = value(expr.index);
+        return in -> {
+            Object array = in.lookUpArray(expr.name, expr.slot);
+            Object position = index.apply(in);
+            if (array instanceof double[]) {
+                return ((double[]) array)[in.elementIndex(expr.name, expr.checkedByLoop, array, position)];
+            }
+            return (Double) in.element(expr, array, position);
+        };
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitLiteralExpr(Parser.Expr.Literal expr) {
+        expressions++;
+        Object value = expr.value;
+        return in -> value;
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitGroupingExpr(Parser.Expr.Grouping expr) {
+        expressions++;
+        return value(expr.expression);
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitUnaryExpr(Parser.Expr.Unary expr) {
+        expressions++;
+        switch (expr.operator.type) {
+            case MINUS:
+                Function<Interpreter, Object> right = value(expr.right);
+                if (staticallyTyped) return in -> -(double) right.apply(in);
+                return in -> {
+                    Object value = right.apply(in);
+                    in.checkNumberOperand(expr.operator, value);
+                    return -(double) value;
+                };
+            case DILI:
+                Predicate<Interpreter> operand = test(expr.right);
+                return in -> operand.test(in) ? "DILI" : "OO";
+            default:
+                return in -> in.visitUnaryExpr(expr);
+        }
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitBinaryExpr(Parser.Expr.Binary expr) {
+        expressions++;
+        Function<Interpreter, Object> code = binary(expr);
+        int id = expr.invariant;
+        if (id < 0) return code;
+        // Computed the first time the loop it was hoisted to reaches it, as in the visitor.
+        return in -> {
+            Object value = in.invariants[id];
+            if (value == null) {
+                value = code.apply(in);
+                in.invariants[id] = value;
+            }
+            return value;
+        };
+    }
+
+    private Function<Interpreter, Object> binary(Parser.Expr.Binary expr) {
+        TokenType operator = expr.operator.type;
+        if (operator == TokenType.UG || operator == TokenType.O) {
+            Predicate<Interpreter> left = test(expr.left);
+            Predicate<Interpreter> right = test(expr.right);
+            if (operator == TokenType.UG) return in -> left.test(in) & right.test(in) ? "OO" : "DILI";
+            return in -> left.test(in) | right.test(in) ? "OO" : "DILI";
+        }
+        if (expr.specialization == Parser.Expr.Binary.Specialization.TYPED_NUMBER) {
+            if (isArithmetic(operator)) {
+                ToDoubleFunction<Interpreter> number = arithmetic(expr);
+                return in -> number.applyAsDouble(in);
+            }
+            Predicate<Interpreter> comparison = comparison(expr);
+            return in -> comparison.test(in) ? "OO" : "DILI";
+        }
+        Function<Interpreter, Object> left = value(expr.left);
+        Function<Interpreter, Object> right = value(expr.right);
+        if (operator == TokenType.CONCAT) {
+            return in -> {
+                Object text = left.apply(in);
+                return in.stringify(text) + in.stringify(right.apply(in));
+            };
+        }
+        // Types the TypeChecker could not prove: the visitor's specializing operators.
+        return in -> in.binary(expr, left.apply(in), right.apply(in));
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitVariableExpr(Parser.Expr.Variable expr) {
+        expressions++;
+        Token name = expr.name;
+        int slot = expr.slot;
+        if (slot >= 0) {
+            return in -> {
+                Object value = in.stack[slot];
+                if (value == Interpreter.UNDEFINED) throw Interpreter.undefinedVariable(name);
+                return value;
+            };
+        }
+        int offset = -1 - slot;
+        return in -> {
+            Object value = in.stack[in.fp + offset];
+            if (value == Interpreter.UNDEFINED) throw Interpreter.undefinedVariable(name);
+            return value;
+        };
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitAssignExpr(Parser.Expr.Assign expr) {
+        expressions++;
+        return store(expr.slot, value(expr.value));
+    }
+
+    // The value is computed before the stack is read, since a call in it may grow the stack.
+    private static Function<Interpreter, Object> store(int slot, Function<Interpreter, Object> code) {
+        if (slot >= 0) {
+            return in -> {
+                Object value = code.apply(in);
+                in.stack[slot] = value;
+                return value;
+            };
+        }
+        int offset = -1 - slot;
+        return in -> {
+            Object value = code.apply(in);
+            in.stack[in.fp + offset] = value;
+            return value;
+        };
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitIndexExpr(Parser.Expr.Index expr) {
+        expressions++;
+        Function<Interpreter, Object> index = value(expr.index);
+        return in -> {
+            Object array = in.lookUpArray(expr.name, expr.slot);
+            return in.element(expr, array, index.apply(in));
+        };
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+        expressions++;
+        Function<Interpreter, Object> index = value(expr.index);
+        Function<Interpreter, Object> value = value(expr.value);
+        return in -> {
+            Object array = in.lookUpArray(expr.name, expr.slot);
+            Object position = index.apply(in);
+            return in.storeElement(expr, array, position, value.apply(in));
+        };
+    }
+
+    @Override
+    public Function<Interpreter, Object> visitCallExpr(Parser.Expr.Call expr) {
+        // The visitor evaluates, and counts, the arguments.
+        expressions++;
+        return in -> in.visitCallExpr(expr);
+    }
+
+    @Override
+    public Consumer<Interpreter> visitExpressionStmt(Parser.Stmt.Expression stmt) {
+        int before = expressions;
+        Function<Interpreter, Object> code = value(stmt.expression);
+        int count = expressions - before;
+        return in -> {
+            in.expressionsExecuted += count;
+            code.apply(in);
+        };
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Consumer<Interpreter> visitPrintStmt(Parser.Stmt.Print stmt) {
+        int before = expressions;
+        Function<Interpreter, Object>[] parts = new Function[stmt.expressions.size()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = value(stmt.expressions.get(i));
+        }
+        int count = expressions - before;
+        return in -> {
+            in.expressionsExecuted += count;
+            StringBuilder output = new StringBuilder();
+            for (Function<Interpreter, Object> part : parts) {
+                output.append(in.stringify(part.apply(in)));
+            }
+            in.write(output);
+        };
+    }
+
+    @Override
+    public Consumer<Interpreter> visitVarStmt(Parser.Stmt.Var stmt) {
+        if (stmt.size != null) return in -> in.visitVarStmt(stmt);
+        int before = expressions;
+        Function<Interpreter, Object> code;
+        if (stmt.initializer != null) {
+            code = value(stmt.initializer);
+        } else {
+            Object initial = initialValue(stmt.type);
+            code = in -> initial;
+        }
+        int count = expressions - before;
+        int slot = stmt.slot;
+        Function<Interpreter, Object> declare = store(slot, code);
+        return in -> {
+            if (in.isBound(slot)) return;
+            in.expressionsExecuted += count;
+            declare.apply(in);
+        };
+    }
+
+    private static Object initialValue(TokenType type) {
+        if (type == TokenType.NUMERO || type == TokenType.TIPIK) return 0.0;
+        if (type == TokenType.TINUOD) return "DILI";
+        if (type == TokenType.LETRA) return "";
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Consumer<Interpreter> visitBlockStmt(Parser.Stmt.Block stmt) {
+        Consumer<Interpreter>[] statements = new Consumer[stmt.statements.size()];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = statement(stmt.statements.get(i));
+        }
+        return in -> {
+            for (Consumer<Interpreter> statement : statements) {
+                in.step();
+                statement.accept(in);
+            }
+        };
+    }
+
+    @Override
+    public Consumer<Interpreter> visitIfStmt(Parser.Stmt.If stmt) {
+        int before = expressions;
+        Predicate<Interpreter> condition = branches(stmt, test(stmt.condition));
+        int count = expressions - before;
+        boolean profiled = stmt.thenRuns + stmt.elseRuns > 0;
+        Consumer<Interpreter> thenBranch = branch(stmt.thenBranch, profiled && stmt.thenRuns == 0);
+        if (stmt.elseBranch == null) {
+            return in -> {
+                in.expressionsExecuted += count;
+                if (condition.test(in)) {
+                    in.step();
+                    thenBranch.accept(in);
+                }
+            };
+        }
+        Consumer<Interpreter> elseBranch = branch(stmt.elseBranch, profiled && stmt.elseRuns == 0);
+        return in -> {
+            in.expressionsExecuted += count;
+            if (condition.test(in)) {
+                in.step();
+                thenBranch.accept(in);
+            } else {
+                in.step();
+                elseBranch.accept(in);
+            }
+        };
+    }
+
+    // The condition of a KUNG, counting which way it went when recording.
+    private Predicate<Interpreter> branches(Parser.Stmt.If stmt, Predicate<Interpreter> condition) {
+        if (!recording) return condition;
+        return in -> {
+            boolean taken = condition.test(in);
+            if (taken) stmt.thenRuns++; else stmt.elseRuns++;
+            return taken;
+        };
+    }
+
+    private Consumer<Interpreter> branch(Parser.Stmt branch, boolean cold) {
+        if (!cold) return statement(branch);
+        return in -> {
+            Consumer<Interpreter> code = branch.compiled;
+            if (code == null) code = new ClosureCompiler(staticallyTyped, recording).statement(branch);
+            code.accept(in);
+        };
+    }
+
+    @Override
+    public Consumer<Interpreter> visitWhileStmt(Parser.Stmt.While stmt) {
+        int before = expressions;
+        Predicate<Interpreter> condition = test(stmt.condition);
+        int count = expressions - before;
+        stmt.compiledCondition = in -> {
+            in.expressionsExecuted += count;
+            return condition.test(in);
+        };
+        statement(stmt.body);
+        return in -> in.visitWhileStmt(stmt);
+    }
+
+    @Override
+    public Consumer<Interpreter> visitInputStmt(Parser.Stmt.Input stmt) {
+        return in -> in.visitInputStmt(stmt);
+    }
+
+    @Override
+    public Consumer<Interpreter> visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        statement(stmt.body);
+        return in -> { };
+    }
+
+    @Override
+    public Consumer<Interpreter> visitReturnStmt(Parser.Stmt.Return stmt) {
+        if (stmt.value == null) return in -> in.returnFrom(null);
+        int before = expressions;
+        Function<Interpreter, Object> value = value(stmt.value);
+        int count = expressions - before;
+        return in -> {
+            in.expressionsExecuted += count;
+            in.returnFrom(value.apply(in));
+        };
+    }
+
+    @Override
+    public Consumer<Interpreter> visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        statement(stmt.body);
+        return in -> in.visitParallelStmt(stmt);
+    }
+}
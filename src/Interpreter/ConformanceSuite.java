@@ -0,0 +1,518 @@
+package Interpreter;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
+import javax.script.*;
+
+// Golden-output and performance regression suite over every .bpp script in a directory.
+//
+// For each script.bpp the suite feeds script.in (if present) as DAWAT input, and compares
+// the output byte for byte with script.out. A script with a script.bind, of name=value
+// lines, runs through the javax.script engine with those engine-scope bindings instead;
+// values are numbers, true or false, or else strings. It also records wall time (best of several
+// runs), statements executed and bytes allocated (by every thread, ForkJoin workers included),
+// and compares them with baseline.tsv in the same directory. The run fails when any output
+// differs or any measurement exceeds its baseline by more than the threshold. It also fails
+// when the node profile one run of a script records, loaded for a fresh parse of it, does
+// not survive Interpreter.prepare, when a profile giving every node the same specialization
+// changes what the script prints, or when a script with bindings prints something else
+// when evaluated again in the same engine context, which holds the results of the first
+// run by then. Every script, and a generated source full of what a chunk boundary could
+// cut wrongly, is also lexed in small chunks and through VectorScan (when the module is
+// present), which must give the tokens and lexical errors of a plain scan. Last, every
+// script without bindings runs twice from what the PartialEvaluator left, with its default
+// step budget and a small one, and must print what it prints when run as a whole.
+//
+//   java Interpreter.ConformanceSuite [dir] [--threshold=0.25] [--runs=5]
+//                                     [--update-golden] [--update-baseline]
+public class ConformanceSuite {
+    private static final String BASELINE_FILE = "baseline.tsv";
+
+    private final Path directory;
+    private final double threshold;
+    private final int runs;
+
+    public ConformanceSuite(Path directory, double threshold, int runs) {
+        this.directory = directory;
+        this.threshold = threshold;
+        this.runs = runs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get("src/TestCases");
+        double threshold = 0.25;
+        int runs = 5;
+        boolean updateGolden = false;
+        boolean updateBaseline = false;
+        for (String arg : args) {
+            if (arg.startsWith("--threshold=")) {
+                threshold = Double.parseDouble(arg.substring("--threshold=".length()));
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring("--runs=".length()));
+            } else if (arg.equals("--update-golden")) {
+                updateGolden = true;
+            } else if (arg.equals("--update-baseline")) {
+                updateBaseline = true;
+            } else if (arg.startsWith("--")) {
+                System.err.println("Usage: java Interpreter.ConformanceSuite [dir] [--threshold=0.25] [--runs=5]"
+                        + " [--update-golden] [--update-baseline]");
+                System.exit(64);
+            } else {
+                directory = Paths.get(arg);
+            }
+        }
+
+        boolean passed = new ConformanceSuite(directory, threshold, runs).run(updateGolden, updateBaseline);
+        System.exit(passed ? 0 : 1);
+    }
+
+    public boolean run(boolean updateGolden, boolean updateBaseline) throws IOException {
+        List<Path> scripts;
+        try (Stream<Path> files = Files.list(directory)) {
+            scripts = files.filter(path -> path.toString().endsWith(".bpp")).sorted().collect(Collectors.toList());
+        }
+        Map<String, Measurement> baseline = readBaseline();
+        Map<String, Measurement> measured = new TreeMap<>();
+        boolean passed = true;
+
+        // One untimed pass first, so the first script does not pay for class loading and JIT.
+        for (Path script : scripts) {
+            String source = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+            execute(source, readInput(script), readBindings(script));
+            String lost = checkNodeProfile(source, readInput(script));
+            if (lost != null) {
+                System.out.println(script.getFileName() + ": " + lost);
+                passed = false;
+            }
+            String rerun = checkRerun(source, readInput(script), readBindings(script));
+            if (rerun != null) {
+                System.out.println(script.getFileName() + ": " + rerun);
+                passed = false;
+            }
+            String lexing = checkLexing(source);
+            if (lexing != null) {
+                System.out.println(script.getFileName() + ": " + lexing);
+                passed = false;
+            }
+            String residual = readBindings(script) == null ? checkPartialEvaluation(source, readInput(script)) : null;
+            if (residual != null) {
+                System.out.println(script.getFileName() + ": " + residual);
+                passed = false;
+            }
+        }
+        String lexing = checkLexing(generatedSource());
+        if (lexing != null) {
+            System.out.println("generated source: " + lexing);
+            passed = false;
+        }
+
+        System.out.printf("%-24s %8s %12s %12s %14s  %s%n", "SCRIPT", "OUTPUT", "WALL(us)", "STEPS", "ALLOC(bytes)", "BASELINE");
+        for (Path script : scripts) {
+            String name = script.getFileName().toString().replaceFirst("\\.bpp$", "");
+            String source = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+            byte[] input = readInput(script);
+            Map<String, Object> bindings = readBindings(script);
+
+            Result result = null;
+            Measurement best = null;
+            for (int i = 0; i < Math.max(runs, 1); i++) {
+                result = execute(source, input, bindings);
+                best = best == null ? result.measurement : best.min(result.measurement);
+            }
+            measured.put(name, best);
+
+            String outputStatus = checkOutput(name, result.output, updateGolden);
+            if (outputStatus.equals("CHANGED") || outputStatus.equals("MISSING")) passed = false;
+
+            Measurement expected = baseline.get(name);
+            String baselineStatus = "new";
+            if (expected != null) {
+                List<String> regressions = best.regressionsAgainst(expected, threshold);
+                baselineStatus = regressions.isEmpty() ? "ok" : "REGRESSED " + String.join(", ", regressions);
+                if (!regressions.isEmpty() && !updateBaseline) passed = false;
+            }
+            System.out.printf("%-24s %8s %12d %12d %14d  %s%n", name, outputStatus,
+                    best.wallNanos / 1000, best.steps, best.allocatedBytes, baselineStatus);
+        }
+
+        if (updateBaseline) {
+            writeBaseline(measured);
+            System.out.println("Baseline written to " + directory.resolve(BASELINE_FILE));
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        return passed;
+    }
+
+    private static byte[] readInput(Path script) throws IOException {
+        Path inputFile = script.resolveSibling(script.getFileName().toString().replaceFirst("\\.bpp$", ".in"));
+        return Files.exists(inputFile) ? Files.readAllBytes(inputFile) : new byte[0];
+    }
+
+    // The bindings in script.bind, or null when there is none.
+    private static Map<String, Object> readBindings(Path script) throws IOException {
+        Path bindFile = script.resolveSibling(script.getFileName().toString().replaceFirst("\\.bpp$", ".bind"));
+        if (!Files.exists(bindFile)) return null;
+        Map<String, Object> bindings = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(bindFile, StandardCharsets.UTF_8)) {
+            int equals = line.indexOf('=');
+            if (line.startsWith("#") || equals < 0) continue;
+            String name = line.substring(0, equals);
+            String value = line.substring(equals + 1);
+            if (value.equals("true") || value.equals("false")) {
+                bindings.put(name, Boolean.valueOf(value));
+            } else {
+                try {
+                    bindings.put(name, Double.valueOf(value));
+                } catch (NumberFormatException e) {
+                    bindings.put(name, value);
+                }
+            }
+        }
+        return bindings;
+    }
+
+    private String checkOutput(String name, byte[] output, boolean updateGolden) throws IOException {
+        Path golden = directory.resolve(name + ".out");
+        if (Files.exists(golden) && Arrays.equals(Files.readAllBytes(golden), output)) {
+            return "ok";
+        }
+        String status = Files.exists(golden) ? "CHANGED" : "MISSING";
+        if (updateGolden) {
+            Files.write(golden, output);
+            return "updated";
+        }
+        if (status.equals("CHANGED")) {
+            System.out.println("--- expected " + golden);
+            System.out.println(new String(Files.readAllBytes(golden), StandardCharsets.UTF_8));
+            System.out.println("--- actual");
+            System.out.println(new String(output, StandardCharsets.UTF_8));
+        }
+        return status;
+    }
+
+    // Runs one script with the given stdin, and bindings unless null, capturing everything
+    // it prints. Errors are part of the output, so failing scripts are golden-tested too.
+    private static Result execute(String source, byte[] input, Map<String, Object> bindings) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PrintStream originalOut = System.out;
+        InputStream originalIn = System.in;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(captured, true);
+
+        long stepsBefore = Metrics.STATEMENTS_EXECUTED.sum();
+        Map<Long, Long> allocatedBefore = allocatedBytes(threads);
+        long start = System.nanoTime();
+        System.setOut(out);
+        System.setIn(new ByteArrayInputStream(input));
+        try {
+            if (bindings != null) {
+                evalWithBindings(source, bindings, out);
+            } else {
+                Diagnostics diagnostics = new Diagnostics();
+                Parser parser = new Parser(new Lexer(source, diagnostics).scanTokens(), diagnostics);
+                List<Parser.Stmt> statements = parser.parse();
+                if (diagnostics.hasErrors()) {
+                    diagnostics.print(out);
+                } else {
+                    new Interpreter().interpret(statements);
+                }
+            }
+        } catch (ScriptException | RuntimeException | Error e) {
+            out.println("Error: " + e.getMessage());
+        } finally {
+            System.setOut(originalOut);
+            System.setIn(originalIn);
+        }
+        long wall = System.nanoTime() - start;
+        long steps = Metrics.STATEMENTS_EXECUTED.sum() - stepsBefore;
+        long allocated = 0;
+        for (Map.Entry<Long, Long> thread : allocatedBytes(threads).entrySet()) {
+            allocated += thread.getValue() - allocatedBefore.getOrDefault(thread.getKey(), 0L);
+        }
+
+        out.flush();
+        return new Result(captured.toByteArray(), new Measurement(wall, steps, allocated));
+    }
+
+    // Bytes allocated so far by each live thread. DUNGAN and auto-parallel loops allocate on
+    // ForkJoin workers, so the calling thread alone would miss that; a worker that ends
+    // during the run takes its count with it.
+    private static Map<Long, Long> allocatedBytes(com.sun.management.ThreadMXBean threads) {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int k = 0; k < ids.length; k++) {
+            if (bytes[k] >= 0) allocated.put(ids[k], bytes[k]);
+        }
+        return allocated;
+    }
+
+    private static void evalWithBindings(String source, Map<String, Object> bindings, PrintStream out) throws ScriptException {
+        ScriptEngine engine = new BisayaScriptEngineFactory().getScriptEngine();
+        engine.getContext().setReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        engine.getContext().setWriter(new PrintWriter(out, true));
+        engine.getBindings(ScriptContext.ENGINE_SCOPE).putAll(bindings);
+        engine.eval(source);
+    }
+
+    // Evaluates a script with bindings twice in one engine context and returns how the
+    // second run's output differs from the first's, or null when it does not or there are
+    // no bindings.
+    private static String checkRerun(String source, byte[] input, Map<String, Object> bindings) {
+        if (bindings == null) return null;
+        ScriptEngine engine = new BisayaScriptEngineFactory().getScriptEngine();
+        engine.getBindings(ScriptContext.ENGINE_SCOPE).putAll(bindings);
+        String[] outputs = new String[2];
+        for (int run = 0; run < outputs.length; run++) {
+            StringWriter output = new StringWriter();
+            engine.getContext().setReader(new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+            engine.getContext().setWriter(output);
+            try {
+                engine.eval(source);
+            } catch (ScriptException e) {
+                output.write("Error: " + e.getMessage());
+            }
+            outputs[run] = output.toString();
+        }
+        return outputs[0].equals(outputs[1]) ? null
+                : "evaluated again in the same context, " + difference(outputs[0], outputs[1]);
+    }
+
+    // Runs source as a whole, then from the Residual of a partial evaluation with the
+    // default budget and with one the prefix of most loops runs out of, twice each, since
+    // every run must start from the same variables. Returns how a run from a Residual
+    // printed something else, or null.
+    private static String checkPartialEvaluation(String source, byte[] input) {
+        List<Parser.Stmt> whole = parse(source);
+        if (whole == null) return null;
+        String expected = run(new Interpreter(), input, interpreter -> interpreter.interpret(whole));
+        for (long budget : new long[] {PartialEvaluator.DEFAULT_BUDGET, 1 << 12}) {
+            List<Parser.Stmt> statements = parse(source);
+            Interpreter prepared = new Interpreter();
+            PartialEvaluator.Residual residual;
+            try {
+                prepared.prepare(statements);
+                residual = new PartialEvaluator(prepared).evaluate(statements, budget);
+            } catch (BisayaError e) {
+                // Rejected before anything ran, as the run as a whole was.
+                String actual = "Error: " + e.getMessage() + System.lineSeparator();
+                if (!actual.equals(expected)) return "preparing for partial evaluation failed with " + actual.trim();
+                continue;
+            }
+            for (int repeat = 1; repeat <= 2; repeat++) {
+                String actual = run(new Interpreter(prepared), input, interpreter -> interpreter.interpret(residual));
+                if (!actual.equals(expected)) {
+                    return "run " + repeat + " from a partial evaluation with a budget of " + budget + ", "
+                            + difference(expected, actual);
+                }
+            }
+        }
+        return null;
+    }
+
+    // Runs body on interpreter with the given stdin, returning what it prints, and its
+    // error as execute reports it.
+    private static String run(Interpreter interpreter, byte[] input, Consumer<Interpreter> body) {
+        StringBuilder output = new StringBuilder();
+        interpreter.setInput(new Scanner(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+        interpreter.setOutput(output);
+        try {
+            body.accept(interpreter);
+        } catch (RuntimeException | Error e) {
+            output.append("Error: ").append(e.getMessage()).append(System.lineSeparator());
+        }
+        return output.toString();
+    }
+
+    // The first line where actual differs from expected, for outputs too long to print whole.
+    private static String difference(String expected, String actual) {
+        String[] expectedLines = expected.split("\\R", -1);
+        String[] actualLines = actual.split("\\R", -1);
+        for (int i = 0; ; i++) {
+            String wanted = i < expectedLines.length ? "\"" + expectedLines[i] + "\"" : "nothing";
+            String got = i < actualLines.length ? "\"" + actualLines[i] + "\"" : "nothing";
+            if (!wanted.equals(got)) return "printed " + got + " instead of " + wanted + " on output line " + (i + 1);
+        }
+    }
+
+    // Lexes source in chunks, through VectorScan and both ways, and returns the first way
+    // one of those differs from a plain scan, or null.
+    private static String checkLexing(String source) {
+        List<String> plain = lex(source, false, false);
+        for (int mode = 1; mode < (Lexer.VECTOR ? 4 : 2); mode++) {
+            boolean chunked = (mode & 1) != 0;
+            boolean vector = (mode & 2) != 0;
+            List<String> scan = lex(source, chunked, vector);
+            String how = chunked && vector ? "lexing in chunks through VectorScan" : chunked ? "lexing in chunks" : "lexing through VectorScan";
+            for (int i = 0; i < Math.max(plain.size(), scan.size()); i++) {
+                String expected = i < plain.size() ? plain.get(i) : "nothing";
+                String actual = i < scan.size() ? scan.get(i) : "nothing";
+                if (!expected.equals(actual)) return how + " gives " + actual + " where a plain scan gives " + expected;
+            }
+        }
+        return null;
+    }
+
+    // The tokens of source, then its lexical errors. Chunks are as small as the source's
+    // line ends allow.
+    private static List<String> lex(String source, boolean chunked, boolean vector) {
+        Diagnostics diagnostics = new Diagnostics();
+        Lexer lexer = new Lexer(source, diagnostics);
+        lexer.parallelThreshold = chunked ? 0 : Integer.MAX_VALUE;
+        lexer.minChunk = 1;
+        lexer.parallelism = 64;
+        lexer.vectorThreshold = vector ? 0 : Integer.MAX_VALUE;
+        List<String> scan = new ArrayList<>();
+        for (Token token : lexer.scanTokens()) {
+            scan.add(token.toString());
+        }
+        for (BisayaError error : diagnostics.getErrors()) {
+            scan.add(error.getMessage());
+        }
+        return scan;
+    }
+
+    // A source with what a chunk boundary could cut wrongly: strings, characters and
+    // escapes across line ends, index brackets over several lines, comments holding quotes
+    // and brackets, CRLF line ends and lexical errors, ending inside a string.
+    private static String generatedSource() {
+        StringBuilder source = new StringBuilder("SUGOD\n");
+        for (int i = 0; i < 200; i++) {
+            source.append("MUGNA NUMERO xs").append(i).append("[").append(i % 7 + 1).append("]\n")
+                    .append("IPAKITA: \"line ").append(i).append("\n  caf\u00e9 [not an escape] -- nor a comment\" & [\n] & [[] & []] & [#]\n")
+                    .append("xs").append(i).append("[\n  0\n] = '").append(i % 2 == 0 ? "\n" : "]").append("'\r\n")
+                    .append("-- a comment with \" and ' and [ in it\n")
+                    .append(i % 50 == 0 ? "x = 1 # 2 ]\n" : "\tKUNG WALA\n");
+        }
+        return source.append("IPAKITA: \"never closed\n\nKATAPUSAN\n").toString();
+    }
+
+    // Records a node profile on one run of source, then loads it for a fresh parse and
+    // prepares that. Returns how the specializations differ afterwards, or null when they
+    // match or the script does not get as far as running.
+    private static String checkNodeProfile(String source, byte[] input) throws IOException {
+        List<Parser.Stmt> recorded = parse(source);
+        if (recorded == null) return null;
+        NodeProfile profile = new NodeProfile(source, recorded);
+        Interpreter run = new Interpreter();
+        run.setRecordProfile(true);
+        run.setInput(new Scanner(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+        run.setOutput(new StringBuilder());
+        try {
+            run.interpret(recorded);
+        } catch (RuntimeException | Error e) {
+            // What the nodes learned before the error is still a profile.
+        }
+
+        Path file = Files.createTempFile("conformance", ".nodeprofile");
+        try {
+            profile.save(file);
+            List<Parser.Stmt> loaded = parse(source);
+            NodeProfile fresh = new NodeProfile(source, loaded);
+            if (!fresh.load(file)) return "node profile not loaded";
+            try {
+                new Interpreter().prepare(loaded);
+            } catch (BisayaError e) {
+                return null;
+            }
+            String expected = profile.specializations();
+            String actual = fresh.specializations();
+            if (!expected.equals(actual)) {
+                return "node profile specializations " + expected + " became " + actual + " in prepare";
+            }
+
+            // The same letter for every node, which suits few of them, must not change what the script prints.
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            String plain = run(new Interpreter(), input, interpreter -> interpreter.interpret(parse(source)));
+            for (char letter : new char[] {'S', 'C', 'N'}) {
+                char[] letters = new char[expected.length()];
+                Arrays.fill(letters, letter);
+                lines.set(2, "binary " + new String(letters));
+                Files.write(file, lines, StandardCharsets.UTF_8);
+                List<Parser.Stmt> forged = parse(source);
+                if (!new NodeProfile(source, forged).load(file)) return "node profile not loaded";
+                String output = run(new Interpreter(), input, interpreter -> interpreter.interpret(forged));
+                if (!output.equals(plain)) {
+                    return "with a node profile of all " + letter + ", " + difference(plain, output);
+                }
+            }
+            return null;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<Parser.Stmt> parse(String source) {
+        Diagnostics diagnostics = new Diagnostics();
+        List<Parser.Stmt> statements = new Parser(new Lexer(source, diagnostics).scanTokens(), diagnostics).parse();
+        return diagnostics.hasErrors() ? null : statements;
+    }
+
+    private Map<String, Measurement> readBaseline() throws IOException {
+        Map<String, Measurement> baseline = new HashMap<>();
+        Path file = directory.resolve(BASELINE_FILE);
+        if (!Files.exists(file)) return baseline;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            baseline.put(fields[0], new Measurement(Long.parseLong(fields[1]) * 1000,
+                    Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+        }
+        return baseline;
+    }
+
+    private void writeBaseline(Map<String, Measurement> measured) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# script\twall_us\tsteps\tallocated_bytes");
+        for (Map.Entry<String, Measurement> entry : measured.entrySet()) {
+            Measurement m = entry.getValue();
+            lines.add(entry.getKey() + "\t" + m.wallNanos / 1000 + "\t" + m.steps + "\t" + m.allocatedBytes);
+        }
+        Files.write(directory.resolve(BASELINE_FILE), lines, StandardCharsets.UTF_8);
+    }
+
+    private static class Result {
+        final byte[] output;
+        final Measurement measurement;
+
+        Result(byte[] output, Measurement measurement) {
+            this.output = output;
+            this.measurement = measurement;
+        }
+    }
+
+    private static class Measurement {
+        final long wallNanos;
+        final long steps;
+        final long allocatedBytes;
+
+        Measurement(long wallNanos, long steps, long allocatedBytes) {
+            this.wallNanos = wallNanos;
+            this.steps = steps;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        Measurement min(Measurement other) {
+            return new Measurement(Math.min(wallNanos, other.wallNanos), Math.min(steps, other.steps),
+                    Math.min(allocatedBytes, other.allocatedBytes));
+        }
+
+        List<String> regressionsAgainst(Measurement baseline, double threshold) {
+            List<String> regressions = new ArrayList<>();
+            // Wall times of a few milliseconds are dominated by scheduling noise, so they get a 5ms floor.
+            if (exceeds(wallNanos, Math.max(baseline.wallNanos, 5_000_000), threshold)) regressions.add("wall");
+            if (exceeds(steps, baseline.steps, threshold)) regressions.add("steps");
+            if (exceeds(allocatedBytes, baseline.allocatedBytes, threshold)) regressions.add("alloc");
+            return regressions;
+        }
+
+        private static boolean exceeds(long value, long baseline, double threshold) {
+            return value > baseline * (1 + threshold);
+        }
+    }
+}
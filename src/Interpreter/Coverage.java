@@ -0,0 +1,184 @@
+package Interpreter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Statement coverage for --coverage. Every statement gets a dense id and one bit in
+// a long[]; CoverageInterpreter sets the bit when the statement runs. Each KUNG and
+// ALANG SA gets one more bit, after the statements' bits, set when it runs without
+// running its then branch or body. The report is an LCOV tracefile with line hits (DA)
+// and, for KUNG and ALANG SA, branch hits (BRDA).
+public class Coverage implements Parser.Stmt.Visitor<Void> {
+    private final List<Parser.Stmt> statements = new ArrayList<>();
+    private final int[] skipBits;
+    private final long[] bits;
+
+    public Coverage(List<Parser.Stmt> program) {
+        for (Parser.Stmt stmt : program) {
+            number(stmt);
+        }
+        skipBits = new int[statements.size()];
+        int next = statements.size();
+        for (Parser.Stmt stmt : statements) {
+            boolean branches = stmt instanceof Parser.Stmt.If || stmt instanceof Parser.Stmt.While;
+            skipBits[stmt.id] = branches ? next++ : -1;
+        }
+        bits = new long[(next + 63) >>> 6];
+    }
+
+    public long[] getBits() {
+        return bits;
+    }
+
+    public boolean isCovered(Parser.Stmt stmt) {
+        return (bits[stmt.id >>> 6] & (1L << stmt.id)) != 0;
+    }
+
+    // The bit set when a KUNG finds its condition false, or an ALANG SA is entered and
+    // leaves without running its body; -1 for other statements.
+    int skipBit(Parser.Stmt stmt) {
+        return skipBits[stmt.id];
+    }
+
+    public boolean isSkipped(Parser.Stmt stmt) {
+        int bit = skipBits[stmt.id];
+        return bit >= 0 && (bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    // Writes the LCOV record for sourceFile to path. If path already holds a tracefile,
+    // the hits for the same source are added to it, so a batch of runs can share one file.
+    public void writeLcov(Path path, String sourceFile) throws IOException {
+        Map<Integer, Long> lineHits = new TreeMap<>();
+        Map<String, Long> branchHits = new LinkedHashMap<>();
+        for (Parser.Stmt stmt : statements) {
+            if (stmt instanceof Parser.Stmt.Block && !((Parser.Stmt.Block) stmt).scoped) continue;
+            lineHits.merge(stmt.line, isCovered(stmt) ? 1L : 0L, Math::max);
+            if (stmt instanceof Parser.Stmt.If) {
+                Parser.Stmt.If ifStmt = (Parser.Stmt.If) stmt;
+                branchHits.put(stmt.line + "," + stmt.id + ",0", isCovered(ifStmt.thenBranch) ? 1L : 0L);
+                branchHits.put(stmt.line + "," + stmt.id + ",1", isSkipped(stmt) ? 1L : 0L);
+            } else if (stmt instanceof Parser.Stmt.While) {
+                branchHits.put(stmt.line + "," + stmt.id + ",0", isCovered(((Parser.Stmt.While) stmt).body) ? 1L : 0L);
+                branchHits.put(stmt.line + "," + stmt.id + ",1", isSkipped(stmt) ? 1L : 0L);
+            }
+        }
+
+        List<String> otherRecords = new ArrayList<>();
+        if (Files.exists(path)) {
+            mergeExisting(Files.readAllLines(path, StandardCharsets.UTF_8), sourceFile, lineHits, branchHits, otherRecords);
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (String line : otherRecords) {
+                out.println(line);
+            }
+            out.println("TN:");
+            out.println("SF:" + sourceFile);
+            int branchesHit = 0;
+            for (Map.Entry<String, Long> branch : branchHits.entrySet()) {
+                out.println("BRDA:" + branch.getKey() + "," + branch.getValue());
+                if (branch.getValue() > 0) branchesHit++;
+            }
+            out.println("BRF:" + branchHits.size());
+            out.println("BRH:" + branchesHit);
+            int linesHit = 0;
+            for (Map.Entry<Integer, Long> line : lineHits.entrySet()) {
+                out.println("DA:" + line.getKey() + "," + line.getValue());
+                if (line.getValue() > 0) linesHit++;
+            }
+            out.println("LF:" + lineHits.size());
+            out.println("LH:" + linesHit);
+            out.println("end_of_record");
+        }
+    }
+
+    private static void mergeExisting(List<String> lines, String sourceFile, Map<Integer, Long> lineHits,
+                                      Map<String, Long> branchHits, List<String> otherRecords) {
+        List<String> record = new ArrayList<>();
+        boolean ours = false;
+        for (String line : lines) {
+            record.add(line);
+            if (line.startsWith("SF:")) {
+                ours = line.substring(3).equals(sourceFile);
+            } else if (ours && line.startsWith("DA:")) {
+                String[] fields = line.substring(3).split(",");
+                lineHits.merge(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), Long::sum);
+            } else if (ours && line.startsWith("BRDA:")) {
+                String[] fields = line.substring(5).split(",");
+                String key = fields[0] + "," + fields[1] + "," + fields[2];
+                long taken = fields[3].equals("-") ? 0 : Long.parseLong(fields[3]);
+                branchHits.merge(key, taken, Long::sum);
+            } else if (line.equals("end_of_record")) {
+                if (!ours) otherRecords.addAll(record);
+                record.clear();
+                ours = false;
+            }
+        }
+    }
+
+    private void number(Parser.Stmt stmt) {
+        stmt.id = statements.size();
+        statements.add(stmt);
+        stmt.accept(this);
+    }
+
+    @Override
+    public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Parser.Stmt.Var stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+        for (Parser.Stmt statement : stmt.statements) {
+            number(statement);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Parser.Stmt.If stmt) {
+        number(stmt.thenBranch);
+        if (stmt.elseBranch != null) number(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Parser.Stmt.While stmt) {
+        number(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Parser.Stmt.Input stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        number(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        number(stmt.body);
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package Interpreter;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Interpreter used for --coverage: marks each statement's bit before running it.
+public class CoverageInterpreter extends Interpreter {
+    private Coverage coverage;
+    private long[] bits;
+    // The then branches and loop bodies of the KUNG and ALANG SA statements now running,
+    // innermost last; execute clears an entry when it runs it. A procedure called from a
+    // condition pushes its own entries, so a recursive run of the same statement is kept apart.
+    private Parser.Stmt[] awaited = new Parser.Stmt[16];
+    private int depth;
+
+    @Override
+    public void interpret(List<Parser.Stmt> statements) {
+        coverage = new Coverage(statements);
+        bits = coverage.getBits();
+        depth = 0;
+        super.interpret(statements);
+    }
+
+    public Coverage getCoverage() {
+        return coverage;
+    }
+
+    @Override
+    protected void execute(Parser.Stmt stmt) {
+        bits[stmt.id >>> 6] |= 1L << stmt.id;
+        if (depth > 0 && awaited[depth - 1] == stmt) awaited[depth - 1] = null;
+        super.execute(stmt);
+    }
+
+    @Override
+    public Void visitIfStmt(Parser.Stmt.If stmt) {
+        runBranching(stmt, stmt.thenBranch, () -> super.visitIfStmt(stmt));
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Parser.Stmt.While stmt) {
+        runBranching(stmt, stmt.body, () -> super.visitWhileStmt(stmt));
+        return null;
+    }
+
+    // Runs stmt and sets its skip bit if it finishes without running taken.
+    private void runBranching(Parser.Stmt stmt, Parser.Stmt taken, Runnable run) {
+        if (depth == awaited.length) awaited = Arrays.copyOf(awaited, depth * 2);
+        int entry = depth++;
+        awaited[entry] = taken;
+        try {
+            run.run();
+        } finally {
+            depth = entry;
+        }
+        if (awaited[entry] != null) {
+            int bit = coverage.skipBit(stmt);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+}
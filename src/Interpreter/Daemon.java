@@ -0,0 +1,283 @@
+package Interpreter;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Resident interpreter. It starts once, warms up the interpreter so its hot paths are
+// JIT-compiled, then serves runs from DaemonClient over a Unix domain socket, so a
+// script run costs a connection instead of a JVM start.
+//
+//   java Interpreter.Daemon [--socket=path] [--warmup=runs]
+//
+// Every message on the socket is a frame: a type byte, a length and that many bytes.
+// The client sends ARG frames, a CWD frame and RUN, then stdin as INPUT frames ending
+// with INPUT_END. The daemon answers with OUTPUT and ERROR frames and a final EXIT frame
+// holding the exit status. Runs are served concurrently, each with its own Interpreter.
+//
+// Compiled programs are kept by source. Running the same script again skips lexing,
+// parsing and type checking, and starts where its input-independent prefix ended: the
+// PartialEvaluator ran that once, when the program was compiled.
+public class Daemon {
+    static final byte ARG = 'A';
+    static final byte CWD = 'D';
+    static final byte RUN = 'R';
+    static final byte INPUT = 'I';
+    static final byte INPUT_END = 'E';
+    static final byte OUTPUT = 'O';
+    static final byte ERROR = 'X';
+    static final byte EXIT = 'C';
+
+    // Exit statuses, following the 64 and 74 BisayaMain already uses.
+    static final int EXIT_USAGE = 64;
+    static final int EXIT_PROGRAM_ERROR = 65;
+    static final int EXIT_RUNTIME_ERROR = 70;
+    static final int EXIT_IO_ERROR = 74;
+
+    // Programs compiled by earlier runs, least recently run first.
+    private static final int MAX_PROGRAMS = 64;
+    private static final Map<String, Program> programs = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Program> eldest) {
+            return size() > MAX_PROGRAMS;
+        }
+    };
+
+    // A prepared interpreter, which each run copies, and what is left to run of its program.
+    private static final class Program {
+        final Interpreter prepared;
+        final PartialEvaluator.Residual residual;
+
+        Program(Interpreter prepared, PartialEvaluator.Residual residual) {
+            this.prepared = prepared;
+            this.residual = residual;
+        }
+    }
+
+    public static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "bisaya-" + System.getProperty("user.name") + ".sock");
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path socket = defaultSocket();
+        int warmupRuns = 20;
+        for (String arg : args) {
+            if (arg.startsWith("--socket=")) {
+                socket = Paths.get(arg.substring("--socket=".length()));
+            } else if (arg.startsWith("--warmup=")) {
+                warmupRuns = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else {
+                System.err.println("Usage: java Interpreter.Daemon [--socket=path] [--warmup=runs]");
+                System.exit(EXIT_USAGE);
+            }
+        }
+
+        long start = System.nanoTime();
+        warmUp(warmupRuns);
+        System.err.printf("Warmed up with %d runs in %d ms%n", warmupRuns, (System.nanoTime() - start) / 1_000_000);
+
+        Files.deleteIfExists(socket);
+        Path boundSocket = socket;
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            // Anyone who can connect can run code as this user.
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(boundSocket);
+                } catch (IOException ignored) {
+                }
+            }));
+            System.err.println("Listening on " + socket);
+
+            ExecutorService runs = Executors.newCachedThreadPool(runnable -> {
+                // Sized so programs reach the interpreter's call depth limit before the Java stack's.
+                Thread thread = new Thread(null, runnable, "bisaya-run",
+                        Interpreter.stackSize(Interpreter.DEFAULT_MAX_CALL_DEPTH));
+                thread.setDaemon(true);
+                return thread;
+            });
+            while (true) {
+                SocketChannel client = server.accept();
+                runs.execute(() -> serve(client));
+            }
+        }
+    }
+
+    // Runs generated programs until the interpreter's paths are compiled.
+    private static void warmUp(int runs) {
+        WorkloadGenerator.Options options = new WorkloadGenerator.Options();
+        options.statements = 2000;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int i = 0; i < runs; i++) {
+            options.seed = i;
+            String source = new WorkloadGenerator(options).generate();
+            execute(source, new Scanner(InputStream.nullInputStream()), discard, discard);
+        }
+    }
+
+    private static void serve(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            List<String> args = new ArrayList<>();
+            Path cwd = Paths.get("");
+            while (true) {
+                byte type = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                if (type == ARG) {
+                    args.add(new String(payload, StandardCharsets.UTF_8));
+                } else if (type == CWD) {
+                    cwd = Paths.get(new String(payload, StandardCharsets.UTF_8));
+                } else if (type == RUN) {
+                    break;
+                }
+            }
+
+            PrintStream stdout = new PrintStream(new FrameOutputStream(out, OUTPUT), false, StandardCharsets.UTF_8);
+            PrintStream stderr = new PrintStream(new FrameOutputStream(out, ERROR), true, StandardCharsets.UTF_8);
+            int status = run(args, cwd, new FrameInputStream(in, stdout), stdout, stderr);
+            stdout.flush();
+            stderr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(4);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; nothing is left to tell it.
+        }
+    }
+
+    private static int run(List<String> args, Path cwd, InputStream stdin, PrintStream stdout, PrintStream stderr) {
+        if (args.size() != 1 || args.get(0).startsWith("--")) {
+            stderr.println("Usage: DaemonClient [--socket=path] script");
+            return EXIT_USAGE;
+        }
+        String source;
+        try {
+            source = new String(Files.readAllBytes(cwd.resolve(args.get(0))), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            stderr.println("Error reading file: " + e.getMessage());
+            return EXIT_IO_ERROR;
+        }
+        return execute(source, new Scanner(stdin), stdout, stderr);
+    }
+
+    // The pipeline of BisayaMain.run, with the run's own streams and an exit status.
+    static int execute(String source, Scanner stdin, PrintStream stdout, PrintStream stderr) {
+        try {
+            Program program;
+            synchronized (programs) {
+                program = programs.get(source);
+            }
+            if (program == null) {
+                Diagnostics diagnostics = new Diagnostics();
+                Parser parser = new Parser(new Lexer(source, diagnostics).scanTokens(), diagnostics);
+                List<Parser.Stmt> statements = parser.parse();
+                if (diagnostics.hasErrors()) {
+                    diagnostics.print(stderr);
+                    return EXIT_PROGRAM_ERROR;
+                }
+                Interpreter prepared = new Interpreter();
+                prepared.prepare(statements);
+                program = new Program(prepared, new PartialEvaluator(prepared).evaluate(statements));
+                synchronized (programs) {
+                    programs.put(source, program);
+                }
+            }
+            Interpreter interpreter = new Interpreter(program.prepared);
+            interpreter.setInput(stdin);
+            interpreter.setOutput(stdout);
+            interpreter.interpret(program.residual);
+            return 0;
+        } catch (BisayaError e) {
+            stderr.println(e.getMessage());
+            // Type errors come from prepare, before anything ran.
+            return e.runtime ? EXIT_RUNTIME_ERROR : EXIT_PROGRAM_ERROR;
+        } catch (RuntimeException e) {
+            stderr.println("Error: " + e.getMessage());
+            e.printStackTrace(stderr);
+            return EXIT_RUNTIME_ERROR;
+        }
+    }
+
+    // Writes everything as frames of one type.
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) return;
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+    // Reads the client's INPUT frames on demand. Output is flushed first, so a prompt
+    // printed before a DAWAT reaches the user before the daemon waits for the answer.
+    private static class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+        private final PrintStream stdout;
+        private byte[] buffer = new byte[0];
+        private int position;
+        private boolean ended;
+
+        FrameInputStream(DataInputStream in, PrintStream stdout) {
+            this.in = in;
+            this.stdout = stdout;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            while (position == buffer.length) {
+                if (ended) return -1;
+                stdout.flush();
+                byte type = in.readByte();
+                buffer = new byte[in.readInt()];
+                in.readFully(buffer);
+                position = 0;
+                if (type == INPUT_END) ended = true;
+            }
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
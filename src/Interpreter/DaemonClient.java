@@ -0,0 +1,119 @@
+package Interpreter;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Launcher for a running Daemon: forwards the arguments and stdin, copies the run's
+// output to stdout and stderr, and exits with its status. It only touches java.base
+// classes, so its own JVM starts as fast as a JVM can.
+//
+//   java Interpreter.DaemonClient [--socket=path] script.bpp
+public class DaemonClient {
+    public static void main(String[] args) throws IOException {
+        // Daemon.defaultSocket(), repeated so the client never loads the interpreter's classes.
+        // String.concat and the Runnable below avoid lambdas and + on strings, whose
+        // invokedynamic bootstrap is a large share of a small JVM's startup time.
+        Path socket = Paths.get(System.getProperty("java.io.tmpdir"), "bisaya-".concat(System.getProperty("user.name")).concat(".sock"));
+        int first = 0;
+        if (args.length > 0 && args[0].startsWith("--socket=")) {
+            socket = Paths.get(args[0].substring("--socket=".length()));
+            first = 1;
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.err.println("Error connecting to ".concat(socket.toString()).concat(": ").concat(String.valueOf(e.getMessage())));
+            System.err.println("Start one with: java Interpreter.Daemon");
+            System.exit(Daemon.EXIT_IO_ERROR);
+            return;
+        }
+
+        // Not Channels.newInputStream/newOutputStream: they lock the channel, so a read blocked
+        // waiting for output would stop stdin from being forwarded.
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+        }));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return channel.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+        }));
+        for (int i = first; i < args.length; i++) {
+            byte[] arg = args[i].getBytes(StandardCharsets.UTF_8);
+            frame(out, Daemon.ARG, arg, arg.length);
+        }
+        byte[] cwd = System.getProperty("user.dir").getBytes(StandardCharsets.UTF_8);
+        frame(out, Daemon.CWD, cwd, cwd.length);
+        frame(out, Daemon.RUN, new byte[0], 0);
+        out.flush();
+
+        Thread input = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                forwardInput(out);
+            }
+        }, "bisaya-stdin");
+        input.setDaemon(true);
+        input.start();
+
+        while (true) {
+            byte type = in.readByte();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            if (type == Daemon.OUTPUT) {
+                System.out.write(payload);
+                System.out.flush();
+            } else if (type == Daemon.ERROR) {
+                System.err.write(payload);
+                System.err.flush();
+            } else if (type == Daemon.EXIT) {
+                System.exit(new DataInputStream(new ByteArrayInputStream(payload)).readInt());
+            }
+        }
+    }
+
+    private static void forwardInput(DataOutputStream out) {
+        byte[] buffer = new byte[8192];
+        try {
+            int count;
+            while ((count = System.in.read(buffer)) >= 0) {
+                frame(out, Daemon.INPUT, buffer, count);
+                out.flush();
+            }
+            frame(out, Daemon.INPUT_END, buffer, 0);
+            out.flush();
+        } catch (IOException e) {
+            // The run finished and the daemon closed the connection.
+        }
+    }
+
+    private static void frame(DataOutputStream out, byte type, byte[] payload, int length) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(length);
+            out.write(payload, 0, length);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package Interpreter;
+
+import java.io.PrintStream;
+import java.util.*;
+
+// Collects the errors of one run, so the lexer and parser can report every problem in a
+// program in a single pass instead of stopping at the first one.
+public class Diagnostics {
+    private final List<BisayaError> errors = new ArrayList<>();
+
+    public BisayaError report(BisayaError error) {
+        errors.add(error);
+        return error;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public List<BisayaError> getErrors() {
+        return errors;
+    }
+
+    public void print(PrintStream out) {
+        for (BisayaError error : errors) {
+            out.println(error.getMessage());
+        }
+    }
+
+    // For callers that want the old behavior of one exception: throws a single error
+    // holding every message, positioned at the first one.
+    public void throwIfErrors() {
+        if (errors.isEmpty()) return;
+        if (errors.size() == 1) throw errors.get(0);
+        StringJoiner messages = new StringJoiner("\n");
+        for (BisayaError error : errors) {
+            messages.add(error.getMessage());
+        }
+        throw new BisayaError(errors.get(0).line, messages.toString());
+    }
+}
@@ -0,0 +1,288 @@
+package Interpreter;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+// Java static methods that scripts can call like procedures. An embedding application
+// binds names to methods here and hands the registry to the Interpreter; the TypeChecker
+// links each call site to its Function, and the interpreter invokes it with invokeExact.
+//
+// Each method handle is adapted once, at registration, to the interpreter's values:
+// int and long parameters take NUMERO, double takes TIPIK (or NUMERO), char LETRA,
+// boolean TINUOD, String text, and double[], char[] and boolean[] the matching arrays.
+// Results come back the same way; a void method returns nothing.
+//
+//   HostFunctions hosts = HostFunctions.builtins();
+//   hosts.register("hypot", Math.class, "hypot");
+//   interpreter.setHostFunctions(hosts);
+public final class HostFunctions {
+    // Calls with up to this many arguments use an invoker of matching arity; longer ones
+    // spread an argument array.
+    private static final int MAX_DIRECT_ARITY = 3;
+
+    private static final MethodHandle TO_BOOLEAN;
+    private static final MethodHandle FROM_BOOLEAN;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TO_BOOLEAN = lookup.findStatic(HostFunctions.class, "toBoolean", MethodType.methodType(boolean.class, Object.class));
+            FROM_BOOLEAN = lookup.findStatic(HostFunctions.class, "fromBoolean", MethodType.methodType(Object.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // The functions every interpreter has unless given a registry of its own.
+    static final HostFunctions DEFAULT = new HostFunctions().registerAll(Builtins.class);
+
+    public static final class Function {
+        public final String name;
+        public final List<TokenType> paramTypes;
+        public final List<Boolean> arrayParams;
+        public final TokenType returnType; // null for a void method
+        public final int arity;
+        // (Object, ...)Object for arities up to MAX_DIRECT_ARITY, (Object[])Object beyond.
+        private final MethodHandle invoker;
+
+        Function(String name, List<TokenType> paramTypes, List<Boolean> arrayParams, TokenType returnType,
+                 MethodHandle invoker) {
+            this.name = name;
+            this.paramTypes = paramTypes;
+            this.arrayParams = arrayParams;
+            this.returnType = returnType;
+            this.arity = paramTypes.size();
+            this.invoker = invoker;
+        }
+
+        public Object call() {
+            try {
+                return (Object) invoker.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+
+        public Object call(Object a) {
+            try {
+                return (Object) invoker.invokeExact(a);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+
+        public Object call(Object a, Object b) {
+            try {
+                return (Object) invoker.invokeExact(a, b);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+
+        public Object call(Object a, Object b, Object c) {
+            try {
+                return (Object) invoker.invokeExact(a, b, c);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+
+        public Object call(Object[] arguments) {
+            try {
+                return (Object) invoker.invokeExact(arguments);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+    }
+
+    private final Map<String, Function> functions;
+
+    public HostFunctions() {
+        this.functions = new HashMap<>();
+    }
+
+    private HostFunctions(HostFunctions other) {
+        this.functions = new HashMap<>(other.functions);
+    }
+
+    // A new registry holding the built-in math, text and timing functions, to add to.
+    public static HostFunctions builtins() {
+        return new HostFunctions(DEFAULT);
+    }
+
+    // Binds name to the public static method of owner called methodName, which must not be overloaded.
+    public HostFunctions register(String name, Class<?> owner, String methodName) {
+        Method found = null;
+        for (Method method : owner.getMethods()) {
+            if (!method.getName().equals(methodName) || !Modifier.isStatic(method.getModifiers())) continue;
+            if (found != null) {
+                throw new IllegalArgumentException(owner.getName() + "." + methodName + " is overloaded; register a MethodHandle instead.");
+            }
+            found = method;
+        }
+        if (found == null) {
+            throw new IllegalArgumentException(owner.getName() + " has no public static method " + methodName + ".");
+        }
+        try {
+            return register(name, MethodHandles.publicLookup().unreflect(found));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    // Binds every public static method declared by owner under its own name.
+    public HostFunctions registerAll(Class<?> owner) {
+        for (Method method : owner.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && Modifier.isStatic(method.getModifiers())) {
+                register(method.getName(), owner, method.getName());
+            }
+        }
+        return this;
+    }
+
+    // Binds name to a direct handle, as from MethodHandles.Lookup.findStatic.
+    public HostFunctions register(String name, MethodHandle handle) {
+        MethodType type = handle.type();
+        List<TokenType> paramTypes = new ArrayList<>();
+        List<Boolean> arrayParams = new ArrayList<>();
+        for (Class<?> parameter : type.parameterList()) {
+            Class<?> element = parameter.getComponentType();
+            if (element != null && element != double.class && element != char.class && element != boolean.class) {
+                throw new IllegalArgumentException("Host function '" + name + "' uses unsupported type " + parameter.getSimpleName() + ".");
+            }
+            paramTypes.add(bisayaType(name, parameter.isArray() ? parameter.getComponentType() : parameter));
+            arrayParams.add(parameter.isArray());
+        }
+        Class<?> result = type.returnType();
+        if (result.isArray()) throw new IllegalArgumentException("Host function '" + name + "' cannot return an array.");
+        TokenType returnType = result == void.class ? null : bisayaType(name, result);
+
+        // NUMERO and TIPIK are both doubles: convert other numeric parameters and results
+        // with primitive casts, so no Integer or Long is boxed.
+        MethodType numeric = type;
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (castsFromDouble(type.parameterType(i))) numeric = numeric.changeParameterType(i, double.class);
+        }
+        if (castsFromDouble(result)) numeric = numeric.changeReturnType(double.class);
+        MethodHandle adapted = MethodHandles.explicitCastArguments(handle, numeric);
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (type.parameterType(i) == boolean.class) adapted = MethodHandles.filterArguments(adapted, i, TO_BOOLEAN);
+        }
+        if (result == boolean.class) adapted = MethodHandles.filterReturnValue(adapted, FROM_BOOLEAN);
+
+        // Doubles and chars unbox from the interpreter's Double and Character values.
+        int arity = type.parameterCount();
+        MethodHandle invoker = adapted.asType(MethodType.genericMethodType(arity));
+        if (arity > MAX_DIRECT_ARITY) invoker = invoker.asSpreader(Object[].class, arity);
+        functions.put(name, new Function(name, paramTypes, arrayParams, returnType, invoker));
+        return this;
+    }
+
+    public Function get(String name) {
+        return functions.get(name);
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(functions.keySet());
+    }
+
+    private static TokenType bisayaType(String name, Class<?> type) {
+        if (type == double.class || type == float.class) return TokenType.TIPIK;
+        if (type == int.class || type == long.class || type == short.class || type == byte.class) return TokenType.NUMERO;
+        if (type == char.class) return TokenType.LETRA;
+        if (type == boolean.class) return TokenType.TINUOD;
+        if (type == String.class) return TokenType.STRING;
+        throw new IllegalArgumentException("Host function '" + name + "' uses unsupported type " + type.getName() + ".");
+    }
+
+    private static boolean castsFromDouble(Class<?> type) {
+        return type == int.class || type == long.class || type == short.class || type == byte.class || type == float.class;
+    }
+
+    private static boolean toBoolean(Object value) {
+        return "OO".equals(value);
+    }
+
+    private static Object fromBoolean(boolean value) {
+        return value ? "OO" : "DILI";
+    }
+
+    // Built-in host functions. Numbers are doubles; whole-number results are longs, so
+    // they type as NUMERO.
+    public static final class Builtins {
+        private static final long START = System.nanoTime();
+
+        private Builtins() {
+        }
+
+        public static double sqrt(double x) {
+            return Math.sqrt(x);
+        }
+
+        public static double pow(double x, double y) {
+            return Math.pow(x, y);
+        }
+
+        public static double abs(double x) {
+            return Math.abs(x);
+        }
+
+        public static double min(double x, double y) {
+            return Math.min(x, y);
+        }
+
+        public static double max(double x, double y) {
+            return Math.max(x, y);
+        }
+
+        public static long floor(double x) {
+            return (long) Math.floor(x);
+        }
+
+        public static long ceil(double x) {
+            return (long) Math.ceil(x);
+        }
+
+        public static long round(double x) {
+            return Math.round(x);
+        }
+
+        public static long length(String text) {
+            return text.length();
+        }
+
+        public static char charAt(String text, int index) {
+            return text.charAt(index);
+        }
+
+        public static String upper(String text) {
+            return text.toUpperCase();
+        }
+
+        public static String lower(String text) {
+            return text.toLowerCase();
+        }
+
+        // Milliseconds since the epoch.
+        public static long millis() {
+            return System.currentTimeMillis();
+        }
+
+        // Seconds since the interpreter was loaded, with nanosecond resolution; for timing.
+        public static double seconds() {
+            return (System.nanoTime() - START) / 1e9;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package Interpreter;
+
+import java.util.*;
+
+import static Interpreter.BisayaMain.printDebug;
+
+// Front end for --watch. It keeps the statements of the last version of a script, split
+// into chunks of whole lines that each begin with a top-level statement of the SUGOD block.
+// After an edit only the chunks touching the changed lines are lexed and parsed again, and
+// their new statements are spliced in between the reused ones. Chunks below the edit are
+// kept as they are; when the edit adds or removes lines, their line numbers are shifted.
+//
+// The whole script is parsed the first time, after a version with errors, when an edit
+// touches the SUGOD or KATAPUSAN line, and for scripts that do not have SUGOD and
+// KATAPUSAN on lines of their own.
+public class IncrementalParser {
+    private static class Chunk {
+        int firstLine; // The chunk owns lines firstLine..lastLine, blank and comment lines included
+        int lastLine;
+        final List<Parser.Stmt> statements = new ArrayList<>();
+    }
+
+    private String[] lines; // null when the next version must be parsed in full
+    private int sugodLine;
+    private int katapusanLine;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int linesParsed;
+
+    // Returns the program for source, or null if it has errors, which are in diagnostics.
+    public List<Parser.Stmt> update(String source, Diagnostics diagnostics) {
+        String[] newLines = source.split("\n", -1);
+        if (lines == null || chunks.isEmpty()) {
+            return parseFully(source, newLines, diagnostics);
+        }
+
+        int max = Math.min(lines.length, newLines.length);
+        int prefix = 0;
+        while (prefix < max && lines[prefix].equals(newLines[prefix])) prefix++;
+        if (prefix == lines.length && prefix == newLines.length) {
+            linesParsed = 0;
+            ChunkWalker walker = new ChunkWalker(0);
+            for (Chunk chunk : chunks) {
+                walker.walk(chunk);
+            }
+            return program();
+        }
+        int suffix = 0;
+        while (suffix < max - prefix && lines[lines.length - 1 - suffix].equals(newLines[newLines.length - 1 - suffix])) {
+            suffix++;
+        }
+
+        // Old lines prefix+1..oldLastChanged were replaced; either side may be empty.
+        int oldLastChanged = lines.length - suffix;
+        int delta = newLines.length - lines.length;
+        if (prefix + 1 <= sugodLine || oldLastChanged >= katapusanLine) {
+            return parseFully(source, newLines, diagnostics);
+        }
+
+        // The unchanged lines just before and after the edit are parsed again too, so a
+        // KUNG WALA added under a KUNG, or a body added under a header, joins its statement.
+        int first = chunkAt(Math.max(prefix, sugodLine + 1));
+        int last = chunkAt(Math.min(oldLastChanged + 1, katapusanLine - 1));
+        int regionFirst = chunks.get(first).firstLine;
+        int regionLast = chunks.get(last).lastLine + delta;
+
+        String text = String.join("\n", Arrays.asList(newLines).subList(regionFirst - 1, Math.max(regionLast, regionFirst - 1)));
+        Diagnostics regionDiagnostics = new Diagnostics();
+        List<Token> tokens = new Lexer(text, regionDiagnostics, regionFirst).scanTokens();
+        Parser parser = new Parser(tokens, regionDiagnostics);
+        List<Parser.Stmt> statements = parser.parse();
+        if (regionDiagnostics.hasErrors()) {
+            // Errors are reported from a parse of the whole file, which sees how the broken
+            // statement runs into the rest of it.
+            return parseFully(source, newLines, diagnostics);
+        }
+
+        List<Chunk> replacement = chunk(tokens, parser.getStatementStarts(), statements, regionFirst, regionLast);
+        ChunkWalker above = new ChunkWalker(0);
+        for (int i = 0; i < first; i++) {
+            above.walk(chunks.get(i));
+        }
+        ChunkWalker below = new ChunkWalker(delta);
+        for (int i = last + 1; i < chunks.size(); i++) {
+            below.walk(chunks.get(i));
+        }
+        chunks.subList(first, last + 1).clear();
+        chunks.addAll(first, replacement);
+        katapusanLine += delta;
+        lines = newLines;
+        linesParsed = Math.max(regionLast - regionFirst + 1, 0);
+        printDebug("DEBUG: Re-parsed lines " + regionFirst + "-" + regionLast + " as " + replacement.size() + " chunks");
+        return program();
+    }
+
+    // Lines lexed and parsed by the last update.
+    public int getLinesParsed() {
+        return linesParsed;
+    }
+
+    private List<Parser.Stmt> parseFully(String source, String[] newLines, Diagnostics diagnostics) {
+        lines = null;
+        chunks.clear();
+        linesParsed = newLines.length;
+
+        List<Token> tokens = new Lexer(source, diagnostics).scanTokens();
+        int end = tokens.size() - 2; // KATAPUSAN, just before EOF
+        boolean chunked = end > 0 && tokens.get(0).type == TokenType.SUGOD && tokens.get(end).type == TokenType.KATAPUSAN
+                && tokens.get(1).line > tokens.get(0).line && tokens.get(end - 1).line < tokens.get(end).line;
+        if (!chunked) {
+            Parser parser = new Parser(tokens, diagnostics);
+            List<Parser.Stmt> statements = parser.parse();
+            return diagnostics.hasErrors() ? null : statements;
+        }
+
+        // Parse the body on its own, so the parser reports where each top-level statement starts.
+        List<Token> body = new ArrayList<>(tokens.subList(1, end));
+        body.add(new Token(TokenType.EOF, "", null, tokens.get(end).line));
+        Parser parser = new Parser(body, diagnostics);
+        List<Parser.Stmt> statements = parser.parse();
+        if (diagnostics.hasErrors()) return null;
+
+        sugodLine = tokens.get(0).line;
+        katapusanLine = tokens.get(end).line;
+        chunks.addAll(chunk(body, parser.getStatementStarts(), statements, sugodLine + 1, katapusanLine - 1));
+        lines = newLines;
+        return program();
+    }
+
+    // Groups statements into chunks covering lines firstLine..lastLine. A chunk begins at
+    // each statement that is the first token on its line.
+    private static List<Chunk> chunk(List<Token> tokens, List<Integer> starts, List<Parser.Stmt> statements,
+                                     int firstLine, int lastLine) {
+        List<Chunk> result = new ArrayList<>();
+        if (lastLine < firstLine) return result;
+        Chunk current = null;
+        for (int i = 0; i < statements.size(); i++) {
+            int start = starts.get(i);
+            int line = tokens.get(start).line;
+            if (current == null || tokens.get(start - 1).line < line) {
+                if (current != null) current.lastLine = line - 1;
+                current = new Chunk();
+                current.firstLine = result.isEmpty() ? firstLine : line;
+                result.add(current);
+            }
+            current.statements.add(statements.get(i));
+        }
+        if (current == null) {
+            current = new Chunk();
+            current.firstLine = firstLine;
+            result.add(current);
+        }
+        current.lastLine = lastLine;
+        return result;
+    }
+
+    private int chunkAt(int line) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks.get(middle).firstLine <= line) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private List<Parser.Stmt> program() {
+        List<Parser.Stmt> body = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            body.addAll(chunk.statements);
+        }
+        Parser.Stmt block = new Parser.Stmt.Block(body);
+        block.line = sugodLine;
+        return Collections.singletonList(block);
+    }
+
+    // Walks a chunk's statements, moving them and their tokens by delta lines. It also drops
+    // the specializations of their binary nodes, which the last run left and an edit
+    // elsewhere may have made wrong; the TypeChecker and the run give them afresh.
+    private static class ChunkWalker implements Parser.Stmt.Visitor<Void>, Parser.Expr.Visitor<Void> {
+        private final int delta;
+
+        ChunkWalker(int delta) {
+            this.delta = delta;
+        }
+
+        void walk(Chunk chunk) {
+            chunk.firstLine += delta;
+            chunk.lastLine += delta;
+            for (Parser.Stmt stmt : chunk.statements) {
+                statement(stmt);
+            }
+        }
+
+        private void statement(Parser.Stmt stmt) {
+            if (stmt.line > 0) stmt.line += delta;
+            stmt.accept(this);
+        }
+
+        private void expression(Parser.Expr expr) {
+            if (expr != null) expr.accept(this);
+        }
+
+        private void move(Token token) {
+            token.line += delta;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+            for (Parser.Expr expr : stmt.expressions) {
+                expression(expr);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Parser.Stmt.Var stmt) {
+            move(stmt.name);
+            expression(stmt.size);
+            expression(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+            for (Parser.Stmt statement : stmt.statements) {
+                statement(statement);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Parser.Stmt.If stmt) {
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            if (stmt.elseBranch != null) statement(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Parser.Stmt.While stmt) {
+            expression(stmt.condition);
+            statement(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitInputStmt(Parser.Stmt.Input stmt) {
+            for (Token variable : stmt.variables) {
+                move(variable);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Parser.Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Parser.Expr.Grouping expr) {
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Parser.Expr.Unary expr) {
+            move(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Parser.Expr.Binary expr) {
+            move(expr.operator);
+            expr.specialization = Parser.Expr.Binary.Specialization.UNINITIALIZED;
+            expression(expr.left);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Parser.Expr.Variable expr) {
+            move(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+            move(stmt.name);
+            for (int i = 0; i < stmt.params.size(); i++) {
+                move(stmt.params.get(i));
+            }
+            statement(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+            move(stmt.keyword);
+            expression(stmt.counter);
+            expression(stmt.start);
+            expression(stmt.bound);
+            for (Parser.Expr.Variable reduction : stmt.reductions) {
+                expression(reduction);
+            }
+            statement(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+            move(stmt.keyword);
+            expression(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Parser.Expr.Call expr) {
+            move(expr.name);
+            for (Parser.Expr argument : expr.arguments) {
+                expression(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Parser.Expr.Index expr) {
+            move(expr.name);
+            expression(expr.index);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+            move(expr.name);
+            expression(expr.index);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Parser.Expr.Assign expr) {
+            move(expr.name);
+            // The parser turns x++ into x = x + 1 with both x nodes sharing one token, which must move once.
+            if (expr.value instanceof Parser.Expr.Binary) {
+                Parser.Expr.Binary increment = (Parser.Expr.Binary) expr.value;
+                if (increment.left instanceof Parser.Expr.Variable && ((Parser.Expr.Variable) increment.left).name == expr.name) {
+                    move(increment.operator);
+                    return null;
+                }
+            }
+            expression(expr.value);
+            return null;
+        }
+    }
+}
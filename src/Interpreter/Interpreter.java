@@ -1,27 +1,295 @@
 package Interpreter;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Visitor<Void> {
-    private final Map<String, Object> globals = new HashMap<>();
-    private Map<String, Object> environment = globals;
-    private final Parser parser;
+    // Marks stack slots of globals that have not been assigned yet.
+    static final Object UNDEFINED = new Object();
+    public static final int DEFAULT_MAX_CALL_DEPTH = 1000;
+    // Java stack a nested call takes at most, for ordinary procedure bodies, in either the
+    // tree walker or the compiled closures; a call uses under 2 KB of it in practice.
+    private static final long STACK_PER_CALL = 16 * 1024;
+    // DUNGAN loops split their iterations into at most MAX_CHUNKS chunks of at least
+    // MIN_CHUNK iterations. The split depends on the trip count alone, never on the
+    // machine, so reductions combine in the same order and give the same result everywhere.
+    private static final long MIN_CHUNK = 256;
+    private static final long MAX_CHUNKS = 64;
+    // Thrown by IULI; carries no state, so one instance serves every interpreter and thread.
+    private static final Return RETURN = new Return();
+    private static final OutOfSteps OUT_OF_STEPS = new OutOfSteps();
+
+    private final Resolver resolver;
+    // Variable values, indexed by the slots the Resolver assigned; globals first, then the
+    // main program's block locals, then one frame per running procedure call.
+    // The ClosureCompiler's code reads and writes the stack, fp and invariants directly,
+    // and the PartialEvaluator records the main program's variables below sp.
+    Object[] stack = new Object[0];
+    int fp = 0; // Base of the running procedure's frame
+    int sp = 0; // First slot above the main program's variables and all frames
+    // Globals a host set with setGlobal, by slot; their declarations leave them as they are.
+    private boolean[] bound = new boolean[0];
+    private int callDepth = 0;
+    private int maxCallDepth = DEFAULT_MAX_CALL_DEPTH;
+    // IULI leaves its value here and unwinds to the call with RETURN.
+    private Object returnValue;
+    // Procedures by name, registered by the TypeChecker when their declaration checks.
+    private final Map<String, Parser.Stmt.Procedure> procedures;
+    // Java functions that calls to names other than procedures are linked to.
+    private HostFunctions hostFunctions = HostFunctions.DEFAULT;
+    // One flag per counted loop, set while the loop runs with its hoisted bounds checks passed.
+    private boolean[] boundsChecked = new boolean[0];
+    private int countedLoops = 0;
+    // Values of loop-invariant expressions, by the cache id LoopOptimizer gave them; null until computed.
+    Object[] invariants = new Object[0];
+    private int invariantCount = 0;
+
+    // Counted in plain fields and flushed to Metrics every FLUSH_INTERVAL statements.
+    private static final long FLUSH_INTERVAL = 1 << 12;
+    private long statementsExecuted = 0;
+    long expressionsExecuted = 0;
+    private long loopIterations = 0;
+    // Statements left before the run stops with OutOfSteps, checked every FLUSH_INTERVAL
+    // statements; only the PartialEvaluator sets a limit.
+    long stepBudget = Long.MAX_VALUE;
+
+    // Shared by every DAWAT; a Scanner per statement would drop the input it buffered ahead.
+    private Scanner scanner;
+    // IPAKITA output; null means whatever System.out is when the statement runs.
+    private Appendable out;
+    // Set when the TypeChecker proved every expression's type, so operand checks can be skipped.
+    private boolean staticallyTyped = false;
+    // Whether counted loops the AutoParallelizer proves independent run in parallel chunks.
+    private boolean autoParallel = true;
+    // Where the AutoParallelizer explains its decisions, or null.
+    private PrintStream parallelReport;
+    // Whether statements run as ClosureCompiler code; only this class, since profiling and coverage count each visit.
+    private boolean compileClosures = getClass() == Interpreter.class;
+    // Whether KUNG branches and loop trips are counted on their nodes, for a NodeProfile.
+    private boolean recordProfile = false;
 
     private static final boolean DEBUG = BisayaMain.DEBUG; // Set to true to enable debug logs
 
-    public Interpreter(Parser parser) {
-        this.parser = parser;
+    public Interpreter() {
+        this.procedures = new HashMap<>();
+        this.resolver = new Resolver();
+    }
+
+    // A fresh set of variables for statements another interpreter already prepared, so a
+    // compiled script can run many times, even concurrently, without checking it again.
+    public Interpreter(Interpreter prepared) {
+        this.procedures = prepared.procedures;
+        this.hostFunctions = prepared.hostFunctions;
+        this.maxCallDepth = prepared.maxCallDepth;
+        this.sp = prepared.sp;
+        this.resolver = prepared.resolver;
+        this.staticallyTyped = prepared.staticallyTyped;
+        this.autoParallel = prepared.autoParallel;
+        this.parallelReport = prepared.parallelReport;
+        this.compileClosures = prepared.compileClosures && getClass() == Interpreter.class;
+        this.recordProfile = prepared.recordProfile;
+        this.countedLoops = prepared.countedLoops;
+        this.boundsChecked = new boolean[prepared.boundsChecked.length];
+        this.invariantCount = prepared.invariantCount;
+        this.invariants = new Object[prepared.invariants.length];
+        ensureStack(prepared.stack.length);
     }
 
     public void interpret(List<Parser.Stmt> statements) {
+        interpretIncremental(statements);
+        printCompletion();
+    }
+
+    // Runs a program prepared by the interpreter this one was created from, starting where
+    // the PartialEvaluator stopped: its output is printed and its variables restored
+    // instead of running those statements again.
+    public void interpret(PartialEvaluator.Residual residual) {
+        Object[] variables = residual.variables();
+        System.arraycopy(variables, 0, stack, 0, variables.length);
+        print(residual.output);
+        interpretPrepared(residual.statements);
+        printCompletion();
+    }
+
+    private void printCompletion() {
+        print(System.lineSeparator() + System.lineSeparator() + "Interpretation complete" + System.lineSeparator());
+    }
+
+    // Runs more statements against the variables left by earlier calls, as the REPL does
+    // for each input. New globals get the next free slots; existing ones keep theirs.
+    public void interpretIncremental(List<Parser.Stmt> statements) {
+        long start = System.nanoTime();
         try {
-            BisayaMain.printDebug("Starting interpretation...");
-            for (Parser.Stmt statement : statements) {
-                execute(statement);
-            }
-            System.out.println("\n\nInterpretation complete");
-        } catch (RuntimeException error) {
-            throw error;
+            prepare(statements);
+            executeAll(statements);
+        } finally {
+            flushMetrics();
+            Metrics.INTERPRET_NANOS.add(System.nanoTime() - start);
+        }
+    }
+
+    // Resolves and type checks statements without running them.
+    public void prepare(List<Parser.Stmt> statements) {
+        int globalsBefore = resolver.getGlobals().size();
+        int size = resolver.resolve(statements);
+        BisayaMain.printDebug("Starting type checking...");
+        try {
+            staticallyTyped = new TypeChecker(procedures, hostFunctions).check(statements);
+        } catch (BisayaError e) {
+            // Nothing ran, so a later input may declare the new globals afresh.
+            resolver.forget(globalsBefore);
+            throw e;
+        }
+        ensureStack(size);
+        sp = Math.max(sp, size);
+        // A slot that held a block local in an earlier call may now belong to a new global.
+        Arrays.fill(stack, globalsBefore, resolver.getGlobals().size(), UNDEFINED);
+        invariantCount = new LoopOptimizer().optimize(statements, invariantCount);
+        if (invariants.length < invariantCount) invariants = Arrays.copyOf(invariants, invariantCount);
+        countedLoops = new BoundsCheckHoisting().hoist(statements, countedLoops);
+        if (boundsChecked.length < countedLoops) boundsChecked = Arrays.copyOf(boundsChecked, countedLoops);
+        if (autoParallel) new AutoParallelizer(parallelReport).analyze(statements);
+        if (compileClosures) new ClosureCompiler(staticallyTyped, recordProfile).compile(statements);
+    }
+
+    // Runs statements that were prepared by this interpreter or the one it was created from.
+    public void interpretPrepared(List<Parser.Stmt> statements) {
+        long start = System.nanoTime();
+        try {
+            executeAll(statements);
+        } finally {
+            flushMetrics();
+            Metrics.INTERPRET_NANOS.add(System.nanoTime() - start);
+        }
+    }
+
+    private void executeAll(List<Parser.Stmt> statements) {
+        BisayaMain.printDebug("Starting interpretation...");
+        for (Parser.Stmt statement : statements) {
+            execute(statement);
+        }
+    }
+
+    // Sets a global before the program runs, as a host passing in values does. The value
+    // takes the place of the one its MUGNA would give it, which then is not evaluated.
+    // Returns false when the program has no global of that name, and throws when the
+    // value does not fit the global's declared type.
+    public boolean setGlobal(String name, Object value) {
+        Integer slot = resolver.getGlobals().get(name);
+        if (slot == null) return false;
+        TokenType type = resolver.getGlobalType(name);
+        // A one-character string is as close as many hosts get to a LETRA.
+        if (type == TokenType.LETRA && value instanceof String && ((String) value).length() == 1) {
+            value = ((String) value).charAt(0);
+        }
+        if (type != null && !fits(type, resolver.isGlobalArray(name), value)) {
+            throw BisayaError.runtime(resolver.getGlobalLine(name), "Cannot set " + type + (resolver.isGlobalArray(name) ? " array '" : " variable '")
+                    + name + "' to '" + stringify(value) + "'.");
+        }
+        stack[slot] = value;
+        if (bound.length <= slot) bound = Arrays.copyOf(bound, slot + 1);
+        bound[slot] = true;
+        return true;
+    }
+
+    // Whether slot is a global set by setGlobal, which its declaration must not overwrite.
+    boolean isBound(int slot) {
+        return slot >= 0 && slot < bound.length && bound[slot];
+    }
+
+    private static boolean fits(TokenType type, boolean array, Object value) {
+        switch (type) {
+            case NUMERO:
+            case TIPIK:
+                return array ? value instanceof double[] : value instanceof Double;
+            case LETRA:
+                // An empty string is what a LETRA declared without a value holds.
+                return array ? value instanceof char[] : value instanceof Character || "".equals(value);
+            case TINUOD:
+                return array ? value instanceof boolean[] : "OO".equals(value) || "DILI".equals(value);
+            default:
+                return true;
+        }
+    }
+
+    // Values of the globals that have been assigned, in declaration order.
+    public Map<String, Object> getGlobals() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> global : resolver.getGlobals().entrySet()) {
+            Object value = stack[global.getValue()];
+            if (value != UNDEFINED) values.put(global.getKey(), value);
+        }
+        return values;
+    }
+
+    // Declared types of the globals, by name; untyped globals are left out.
+    public Map<String, TokenType> getGlobalTypes() {
+        Map<String, TokenType> types = new HashMap<>();
+        for (String name : resolver.getGlobals().keySet()) {
+            TokenType type = resolver.getGlobalType(name);
+            if (type != null) types.put(name, type);
+        }
+        return types;
+    }
+
+    // Reads DAWAT input from scanner instead of System.in, so a caller that already reads
+    // standard input, like the REPL, does not lose the lines its own Scanner buffered.
+    public void setInput(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+    // Host functions scripts can call; takes effect for statements prepared afterwards.
+    public void setHostFunctions(HostFunctions hostFunctions) {
+        this.hostFunctions = hostFunctions;
+    }
+
+    // Calls nested deeper than this fail with a runtime error instead of exhausting the Java stack.
+    // The limit is only reached on a thread with a stackSize(maxCallDepth) stack; on a smaller
+    // one the Java stack runs out first, which is reported as a runtime error too.
+    public void setMaxCallDepth(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    // Stack size for a thread that runs programs with calls nested maxCallDepth deep, for
+    // new Thread(group, runnable, name, stackSize). Capped at 1 GB.
+    public static long stackSize(int maxCallDepth) {
+        return Math.min((maxCallDepth + 64L) * STACK_PER_CALL, 1L << 30);
+    }
+
+    // Set before prepare. When off, every ALANG SA runs in turn, as written.
+    public void setAutoParallel(boolean autoParallel) {
+        this.autoParallel = autoParallel;
+    }
+
+    // Set before prepare. When off, statements run on the tree-walking visitor only.
+    public void setCompileClosures(boolean compileClosures) {
+        this.compileClosures = compileClosures && getClass() == Interpreter.class;
+    }
+
+    // Set before prepare. Counts how often each KUNG branch and loop body runs on its node,
+    // at the cost of a few increments; workers of parallel loops add theirs unsynchronized.
+    public void setRecordProfile(boolean recordProfile) {
+        this.recordProfile = recordProfile;
+    }
+
+    // Prints, for each counted loop, whether it runs in parallel and why.
+    public void explainParallelism(PrintStream report) {
+        this.parallelReport = report;
+    }
+
+    // Any Appendable works, so an embedding host can hand over a Writer as well as a PrintStream.
+    public void setOutput(Appendable out) {
+        this.out = out;
+    }
+
+    void print(String text) {
+        try {
+            (out != null ? out : System.out).append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -41,7 +309,7 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
 
         switch (expr.operator.type) {
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                if (!staticallyTyped) checkNumberOperand(expr.operator, right);
                 return -(double)right;
             case DILI:
                 return isTruthy(right) ? "DILI" : "OO";
@@ -52,10 +320,170 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
 
     @Override
     public Object visitBinaryExpr(Parser.Expr.Binary expr) {
+        if (expr.invariant < 0) return binary(expr);
+        // The same on every iteration of the loop it was hoisted to: computed the first time.
+        Object value = invariants[expr.invariant];
+        if (value == null) {
+            value = binary(expr);
+            invariants[expr.invariant] = value;
+        }
+        return value;
+    }
+
+    private Object binary(Parser.Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        return binary(expr, left, right);
+    }
+
+    // Applies the node's operator to operands already evaluated, specializing the node as it goes.
+    Object binary(Parser.Expr.Binary expr, Object left, Object right) {
+        switch (expr.specialization) {
+            case TYPED_NUMBER:
+                return numberBinary(expr.operator, (Double)left, (Double)right);
+            case NUMBER:
+                if (left instanceof Double && right instanceof Double) {
+                    return numberBinary(expr.operator, (Double)left, (Double)right);
+                }
+                break;
+            case CHARACTER:
+                if (left instanceof Character && right instanceof Character) {
+                    return characterEquality(expr.operator.type, (Character)left, (Character)right);
+                }
+                break;
+            case STRING:
+                if (expr.operator.type == TokenType.CONCAT || left instanceof String || right instanceof String) {
+                    return stringify(left) + stringify(right);
+                }
+                break;
+            case UNINITIALIZED:
+                expr.specialization = specialize(expr.operator.type, left, right);
+                if (DEBUG) {
+                    BisayaMain.printDebug("DEBUG: Specialized " + expr.operator.type + " node to " + expr.specialization);
+                }
+                return executeSpecialized(expr, left, right);
+            case GENERIC:
+                return genericBinary(expr, left, right);
+        }
+
+        // The guard failed: the types seen by this node changed, so stop specializing it.
+        if (DEBUG) {
+            BisayaMain.printDebug("DEBUG: Despecialized " + expr.operator.type + " node from " + expr.specialization);
+        }
+        expr.specialization = Parser.Expr.Binary.Specialization.GENERIC;
+        return genericBinary(expr, left, right);
+    }
+
+    private Object executeSpecialized(Parser.Expr.Binary expr, Object left, Object right) {
+        switch (expr.specialization) {
+            case NUMBER:
+                return numberBinary(expr.operator, (Double)left, (Double)right);
+            case CHARACTER:
+                return characterEquality(expr.operator.type, (Character)left, (Character)right);
+            case STRING:
+                return stringify(left) + stringify(right);
+            default:
+                return genericBinary(expr, left, right);
+        }
+    }
 
-        BisayaMain.printDebug("DEBUG: Binary operation " + expr.operator.type + " with left=" + left + " (" + left.getClass().getName() + ") right=" + right + " (" + right.getClass().getName() + ")");
+    // Whether specialize could give an operator that specialization, which is all a node
+    // profile read back from a file may set it to. GENERIC always; TYPED_NUMBER never, as
+    // only the TypeChecker gives it.
+    static boolean canSpecialize(TokenType operator, Parser.Expr.Binary.Specialization specialization) {
+        switch (specialization) {
+            case GENERIC:
+                return true;
+            case STRING:
+                return operator == TokenType.CONCAT || operator == TokenType.PLUS;
+            case CHARACTER:
+                return operator == TokenType.EQUAL || operator == TokenType.NOT_EQUAL;
+            case NUMBER:
+                switch (operator) {
+                    case PLUS:
+                    case EQUAL:
+                    case NOT_EQUAL:
+                    case MINUS:
+                    case MULTIPLY:
+                    case DIVIDE:
+                    case MODULO:
+                    case GREATER:
+                    case GREATER_EQUAL:
+                    case LESS:
+                    case LESS_EQUAL:
+                        return true;
+                }
+                return false;
+        }
+        return false;
+    }
+
+    private Parser.Expr.Binary.Specialization specialize(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case CONCAT:
+                return Parser.Expr.Binary.Specialization.STRING;
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return Parser.Expr.Binary.Specialization.NUMBER;
+                }
+                if (left instanceof String || right instanceof String) {
+                    return Parser.Expr.Binary.Specialization.STRING;
+                }
+                break;
+            case EQUAL:
+            case NOT_EQUAL:
+                if (left instanceof Character && right instanceof Character) {
+                    return Parser.Expr.Binary.Specialization.CHARACTER;
+                }
+                if (left instanceof Double && right instanceof Double) {
+                    return Parser.Expr.Binary.Specialization.NUMBER;
+                }
+                break;
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                if (left instanceof Double && right instanceof Double) {
+                    return Parser.Expr.Binary.Specialization.NUMBER;
+                }
+                break;
+        }
+        return Parser.Expr.Binary.Specialization.GENERIC;
+    }
+
+    private Object numberBinary(Token operator, double left, double right) {
+        switch (operator.type) {
+            case PLUS: return left + right;
+            case MINUS: return left - right;
+            case MULTIPLY: return left * right;
+            case DIVIDE:
+                if (right == 0) throw BisayaError.runtime(operator.line, "Division by zero.");
+                return left / right;
+            case MODULO:
+                if (right == 0) throw BisayaError.runtime(operator.line, "Modulo by zero.");
+                return left % right;
+            case GREATER: return left > right ? "OO" : "DILI";
+            case GREATER_EQUAL: return left >= right ? "OO" : "DILI";
+            case LESS: return left < right ? "OO" : "DILI";
+            case LESS_EQUAL: return left <= right ? "OO" : "DILI";
+            case EQUAL: return Double.compare(left, right) == 0 ? "OO" : "DILI";
+            case NOT_EQUAL: return Double.compare(left, right) != 0 ? "OO" : "DILI";
+        }
+        return null;
+    }
+
+    private Object characterEquality(TokenType operator, char left, char right) {
+        return (left == right) == (operator == TokenType.EQUAL) ? "OO" : "DILI";
+    }
+
+    private Object genericBinary(Parser.Expr.Binary expr, Object left, Object right) {
+        if (DEBUG) {
+            BisayaMain.printDebug("DEBUG: Binary operation " + expr.operator.type + " with left=" + left + " (" + left.getClass().getName() + ") right=" + right + " (" + right.getClass().getName() + ")");
+        }
 
         switch (expr.operator.type) {
             case PLUS:
@@ -68,7 +496,7 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
                 if (left instanceof Character && right instanceof Character) {
                     return String.valueOf(left) + String.valueOf(right);
                 }
-                throw new RuntimeException("Operands must be numbers, strings, or characters.");
+                throw BisayaError.runtime(expr.operator.line, "Operands must be numbers, strings, or characters.");
             case CONCAT:
                 return stringify(left) + stringify(right);
             case MINUS:
@@ -79,11 +507,11 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
                 return (Double)left * (Double)right;
             case DIVIDE:
                 checkNumberOperands(expr.operator, left, right);
-                if ((Double)right == 0) throw new RuntimeException("Division by zero.");
+                if ((Double)right == 0) throw BisayaError.runtime(expr.operator.line, "Division by zero.");
                 return (Double)left / (Double)right;
             case MODULO:
                 checkNumberOperands(expr.operator, left, right);
-                if ((Double)right == 0) throw new RuntimeException("Modulo by zero.");
+                if ((Double)right == 0) throw BisayaError.runtime(expr.operator.line, "Modulo by zero.");
                 return (Double)left % (Double)right;
             case GREATER:
                 checkNumberOperands(expr.operator, left, right);
@@ -107,7 +535,7 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
                     return !((Character)left).equals((Character)right) ? "OO" : "DILI";
                 }
                 if ((left instanceof Double && right instanceof Character) || (left instanceof Character && right instanceof Double)) {
-                    throw new RuntimeException("Cannot compare number with character.");
+                    throw BisayaError.runtime(expr.operator.line, "Cannot compare number with character.");
                 }
                 return !isEqual(left, right) ? "OO" : "DILI";
             case UG:
@@ -120,19 +548,219 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
 
     @Override
     public Object visitVariableExpr(Parser.Expr.Variable expr) {
-        Object value = lookUpVariable(expr.name);
-        BisayaMain.printDebug("DEBUG: Reading variable " + expr.name.lexeme + " with value " + value);
+        Object value = lookUpVariable(expr);
+        if (DEBUG) {
+            BisayaMain.printDebug("DEBUG: Reading variable " + expr.name.lexeme + " with value " + value);
+        }
         return value;
     }
 
     @Override
     public Object visitAssignExpr(Parser.Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        BisayaMain.printDebug("DEBUG: Assigning " + expr.name.lexeme + " = " + value);
-        environment.put(expr.name.lexeme, value);
+        if (DEBUG) {
+            BisayaMain.printDebug("DEBUG: Assigning " + expr.name.lexeme + " = " + value);
+        }
+        stack[address(expr.slot)] = value;
+        return value;
+    }
+
+    @Override
+    public Object visitIndexExpr(Parser.Expr.Index expr) {
+        Object array = lookUpArray(expr.name, expr.slot);
+        return element(expr, array, evaluate(expr.index));
+    }
+
+    Object element(Parser.Expr.Index expr, Object array, Object index) {
+        int i = elementIndex(expr.name, expr.checkedByLoop, array, index);
+        if (array instanceof double[]) return ((double[])array)[i];
+        if (array instanceof char[]) return ((char[])array)[i];
+        return ((boolean[])array)[i] ? "OO" : "DILI";
+    }
+
+    @Override
+    public Object visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+        Object array = lookUpArray(expr.name, expr.slot);
+        Object index = evaluate(expr.index);
+        return storeElement(expr, array, index, evaluate(expr.value));
+    }
+
+    Object storeElement(Parser.Expr.IndexAssign expr, Object array, Object index, Object value) {
+        int i = elementIndex(expr.name, expr.checkedByLoop, array, index);
+        if (array instanceof double[]) {
+            if (!(value instanceof Double)) throw elementTypeError(expr.name, value, "a number");
+            ((double[])array)[i] = (Double)value;
+        } else if (array instanceof char[]) {
+            if (!(value instanceof Character)) throw elementTypeError(expr.name, value, "a character");
+            ((char[])array)[i] = (Character)value;
+        } else {
+            if (!"OO".equals(value) && !"DILI".equals(value)) throw elementTypeError(expr.name, value, "OO or DILI");
+            ((boolean[])array)[i] = "OO".equals(value);
+        }
         return value;
     }
 
+    @Override
+    public Object visitCallExpr(Parser.Expr.Call expr) {
+        if (expr.host != null) return callHost(expr, expr.host);
+        // Monomorphic inline cache: the procedure this site called last, until it is redeclared.
+        Parser.Stmt.Procedure procedure = expr.target;
+        if (procedure == null || procedure.replaced) {
+            procedure = procedures.get(expr.name.lexeme);
+            if (procedure == null) throw BisayaError.runtime(expr.name.line, "Undefined procedure '" + expr.name.lexeme + "'.");
+            expr.target = procedure;
+        }
+        return invoke(procedure, expr.name.line, expr.arguments, null);
+    }
+
+    public Parser.Stmt.Procedure getProcedure(String name) {
+        return procedures.get(name);
+    }
+
+    // Arities the registry has direct invokers for skip the argument array.
+    private Object callHost(Parser.Expr.Call expr, HostFunctions.Function function) {
+        List<Parser.Expr> arguments = expr.arguments;
+        try {
+            switch (arguments.size()) {
+                case 0:
+                    return function.call();
+                case 1:
+                    return function.call(evaluate(arguments.get(0)));
+                case 2:
+                    return function.call(evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+                case 3:
+                    return function.call(evaluate(arguments.get(0)), evaluate(arguments.get(1)), evaluate(arguments.get(2)));
+                default:
+                    Object[] values = new Object[arguments.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = evaluate(arguments.get(i));
+                    }
+                    return function.call(values);
+            }
+        } catch (BisayaError e) {
+            throw e;
+        } catch (ClassCastException e) {
+            // Only reachable when the TypeChecker could not type an argument.
+            throw BisayaError.runtime(expr.name.line, "Wrong argument types for '" + function.name + "'.");
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof java.lang.reflect.UndeclaredThrowableException ? e.getCause() : e;
+            throw BisayaError.runtime(expr.name.line, "'" + function.name + "' failed: " + cause);
+        }
+    }
+
+    // Calls a procedure of the program from the host, after it has run, with values
+    // already converted to Bisaya++ ones. Returns null for a procedure without a return type.
+    public Object call(String name, Object... arguments) {
+        Parser.Stmt.Procedure procedure = procedures.get(name);
+        if (procedure == null) throw BisayaError.runtime(0, "Undefined procedure '" + name + "'.");
+        return invoke(procedure, procedure.name.line, null, arguments);
+    }
+
+    // Runs a procedure in a new frame on top of the stack. The arguments are either
+    // expressions of the calling site or, for host calls, values.
+    private Object invoke(Parser.Stmt.Procedure procedure, int line, List<Parser.Expr> arguments, Object[] values) {
+        String name = procedure.name.lexeme;
+        int count = procedure.params.size();
+        int given = arguments != null ? arguments.size() : values.length;
+        if (given != count) {
+            throw BisayaError.runtime(line, "Procedure '" + name + "' expects " + count
+                    + (count == 1 ? " argument" : " arguments") + ", got " + given + ".");
+        }
+        if (callDepth == maxCallDepth) {
+            throw BisayaError.runtime(line, "Calls nested deeper than " + maxCallDepth + " in '" + name + "'.");
+        }
+
+        // The new frame is reserved first, so calls made by the arguments go above it.
+        int base = sp;
+        int top = base + procedure.frameSize;
+        ensureStack(top);
+        Arrays.fill(stack, base, top, UNDEFINED);
+        int callerFp = fp;
+        sp = top;
+        callDepth++;
+        try {
+            for (int i = 0; i < count; i++) {
+                stack[base + i] = arguments != null ? evaluate(arguments.get(i)) : values[i];
+            }
+            fp = base;
+            execute(procedure.body);
+            if (procedure.returnType != null) {
+                throw BisayaError.runtime(line, "Procedure '" + name + "' ended without IULI.");
+            }
+            return null;
+        } catch (Return signal) {
+            Object value = returnValue;
+            returnValue = null;
+            return value;
+        } catch (StackOverflowError e) {
+            throw BisayaError.runtime(line, "Calls nested too deeply in '" + name + "'.");
+        } finally {
+            fp = callerFp;
+            sp = base;
+            callDepth--;
+        }
+    }
+
+    @Override
+    public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        // Declared when the TypeChecker registered it, so reaching the declaration does nothing.
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+        return returnFrom(stmt.value != null ? evaluate(stmt.value) : null);
+    }
+
+    // Leaves the running procedure with value; invoke catches the signal.
+    Void returnFrom(Object value) {
+        returnValue = value;
+        throw RETURN;
+    }
+
+    // Stack index of a Resolver slot: negative slots are relative to the running frame.
+    private int address(int slot) {
+        return slot >= 0 ? slot : fp - 1 - slot;
+    }
+
+    Object lookUpArray(Token name, int slot) {
+        Object array = stack[address(slot)];
+        if (array == UNDEFINED) throw undefinedVariable(name);
+        if (arrayLength(array) < 0) throw BisayaError.runtime(name.line, "'" + name.lexeme + "' is not an array.");
+        return array;
+    }
+
+    // Loops whose bounds were checked on entry index without checking again.
+    int elementIndex(Token name, int checkedByLoop, Object array, Object index) {
+        if (checkedByLoop >= 0 && boundsChecked[checkedByLoop]) return (int)(double)(Double)index;
+        return checkIndex(name, array, index);
+    }
+
+    private int checkIndex(Token name, Object array, Object index) {
+        if (!(index instanceof Double)) {
+            throw BisayaError.runtime(name.line, "Array index must be a number.");
+        }
+        double value = (Double)index;
+        int length = arrayLength(array);
+        if (value != Math.rint(value) || value < 0 || value >= length) {
+            throw BisayaError.runtime(name.line, "Index " + stringify(index) + " is out of bounds for array '"
+                    + name.lexeme + "' of length " + length + ".");
+        }
+        return (int)value;
+    }
+
+    private BisayaError elementTypeError(Token name, Object value, String expected) {
+        return BisayaError.runtime(name.line, "Elements of '" + name.lexeme + "' must be " + expected + ", got '" + stringify(value) + "'.");
+    }
+
+    // Length of an array value, or -1 for anything else.
+    private static int arrayLength(Object value) {
+        if (value instanceof double[]) return ((double[])value).length;
+        if (value instanceof char[]) return ((char[])value).length;
+        if (value instanceof boolean[]) return ((boolean[])value).length;
+        return -1;
+    }
+
     @Override
     public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
         evaluate(stmt.expression);
@@ -144,22 +772,38 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
         StringBuilder output = new StringBuilder();
         for (Parser.Expr expr : stmt.expressions) {
             Object value = evaluate(expr);
-            BisayaMain.printDebug("DEBUG: Printing value: " + value);
+            if (DEBUG) {
+                BisayaMain.printDebug("DEBUG: Printing value: " + value);
+            }
             output.append(stringify(value));
         }
-        System.out.print(output.toString());
+        write(output);
         return null;
     }
 
+    void write(StringBuilder output) {
+        print(output.toString());
+        Metrics.PRINT_BYTES.add(Metrics.utf8Length(output));
+    }
+
     @Override
     public Void visitVarStmt(Parser.Stmt.Var stmt) {
-        BisayaMain.printDebug("DEBUG: Declaring variable " + stmt.name.lexeme);
+        if (DEBUG) {
+            BisayaMain.printDebug("DEBUG: Declaring variable " + stmt.name.lexeme);
+        }
+        if (isBound(stmt.slot)) return null;
+        if (stmt.size != null) {
+            stack[address(stmt.slot)] = newArray(stmt);
+            return null;
+        }
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
-            BisayaMain.printDebug("DEBUG: Initializing " + stmt.name.lexeme + " with value: " + value);
+            if (DEBUG) {
+                BisayaMain.printDebug("DEBUG: Initializing " + stmt.name.lexeme + " with value: " + value);
+            }
         } else {
-            TokenType varType = parser.getVariableTypes().getOrDefault(stmt.name.lexeme, null);
+            TokenType varType = stmt.type;
             if (varType == TokenType.NUMERO || varType == TokenType.TIPIK) {
                 value = 0.0;
                 BisayaMain.printDebug("DEBUG: Using default NUMERO value: 0.0");
@@ -171,22 +815,53 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
                 BisayaMain.printDebug("DEBUG: Using default LETRA value: ''");
             }
         }
-        environment.put(stmt.name.lexeme, value);
+        stack[address(stmt.slot)] = value;
         return null;
     }
 
+    // NUMERO and TIPIK arrays start at 0, TINUOD arrays at DILI and LETRA arrays at spaces.
+    private Object newArray(Parser.Stmt.Var stmt) {
+        Object size = evaluate(stmt.size);
+        if (!(size instanceof Double) || (Double)size != Math.rint((Double)size) || (Double)size < 0
+                || (Double)size > Integer.MAX_VALUE - 8) {
+            throw BisayaError.runtime(stmt.line, "Array size must be a whole number from 0 up, got '" + stringify(size) + "'.");
+        }
+        int length = (int)(double)(Double)size;
+        switch (stmt.type) {
+            case LETRA:
+                char[] characters = new char[length];
+                Arrays.fill(characters, ' ');
+                return characters;
+            case TINUOD:
+                return new boolean[length];
+            default:
+                return new double[length];
+        }
+    }
+
     @Override
     public Void visitBlockStmt(Parser.Stmt.Block stmt) {
-        BisayaMain.printDebug("DEBUG: Executing block with " + stmt.statements.size() + " statements");
-        executeBlock(stmt.statements, environment);
+        if (DEBUG) {
+            BisayaMain.printDebug("DEBUG: Executing block with " + stmt.statements.size() + " statements");
+        }
+        // Block-local slots were laid out by the Resolver, so entering a scope costs nothing.
+        for (Parser.Stmt statement : stmt.statements) {
+            execute(statement);
+        }
         return null;
     }
 
     @Override
     public Void visitIfStmt(Parser.Stmt.If stmt) {
         Object condition = evaluate(stmt.condition);
-        BisayaMain.printDebug("DEBUG: If condition evaluated to: " + condition);
-        if (isTruthy(condition)) {
+        if (DEBUG) {
+            BisayaMain.printDebug("DEBUG: If condition evaluated to: " + condition);
+        }
+        boolean taken = isTruthy(condition);
+        if (recordProfile) {
+            if (taken) stmt.thenRuns++; else stmt.elseRuns++;
+        }
+        if (taken) {
             BisayaMain.printDebug("DEBUG: Executing then branch");
             execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
@@ -199,104 +874,490 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
     @Override
     public Void visitWhileStmt(Parser.Stmt.While stmt) {
         BisayaMain.printDebug("DEBUG: Starting while loop");
+        if (recordProfile) stmt.entries++;
+        LoopOptimizer.Hoisted hoisted = stmt.hoisted;
+        if (hoisted == null) {
+            runCounted(stmt);
+            return null;
+        }
+        // Hoisted values are computed afresh on each entry. A loop that calls procedures may
+        // be entered again before it finishes, so it puts back the values of the outer entry.
+        int[] ids = hoisted.ids;
+        Object[] outer = hoisted.calls ? new Object[ids.length] : null;
+        for (int k = 0; k < ids.length; k++) {
+            if (outer != null) outer[k] = invariants[ids[k]];
+            invariants[ids[k]] = null;
+        }
+        try {
+            runCounted(stmt);
+        } finally {
+            if (outer != null) {
+                for (int k = 0; k < ids.length; k++) {
+                    invariants[ids[k]] = outer[k];
+                }
+            }
+        }
+        return null;
+    }
+
+    private void runCounted(Parser.Stmt.While stmt) {
+        BoundsCheckHoisting.CountedLoop counted = stmt.counted;
+        if (counted == null) {
+            runLoop(stmt);
+            return;
+        }
+        // The same loop may already be running further up, once procedures can recurse.
+        boolean outer = boundsChecked[counted.id];
+        boundsChecked[counted.id] = inBounds(counted);
+        try {
+            runLoop(stmt);
+        } finally {
+            boundsChecked[counted.id] = outer;
+        }
+    }
+
+    private void runLoop(Parser.Stmt.While stmt) {
+        int trips = stmt.unrolledTrips;
+        if (trips >= 0) {
+            // The trip count is known, so the condition need not be tested.
+            if (recordProfile) stmt.trips += trips;
+            for (int k = 0; k < trips; k++) {
+                loopIterations++;
+                execute(stmt.body);
+            }
+            return;
+        }
+        // Profiling and coverage count on this interpreter, as for DUNGAN.
+        if (autoParallel && stmt.parallel != null && getClass() == Interpreter.class) {
+            String declined = runAutoParallel(stmt);
+            if (declined == null) return;
+            if (parallelReport != null && !stmt.parallel.declineReported) {
+                stmt.parallel.declineReported = true;
+                parallelReport.println("[parallel] line " + stmt.line + ": ALANG SA ran sequentially: " + declined + ".");
+            }
+        }
+        runWhile(stmt);
+    }
+
+    private void runWhile(Parser.Stmt.While stmt) {
+        if (recordProfile) {
+            runWhileCounted(stmt);
+            return;
+        }
+        Predicate<Interpreter> condition = compileClosures ? stmt.compiledCondition : null;
+        if (condition != null) {
+            while (condition.test(this)) {
+                loopIterations++;
+                execute(stmt.body);
+            }
+            return;
+        }
         while (isTruthy(evaluate(stmt.condition))) {
             BisayaMain.printDebug("DEBUG: While condition is true, executing body");
+            loopIterations++;
             execute(stmt.body);
         }
         BisayaMain.printDebug("DEBUG: While loop finished");
+    }
+
+    // runWhile for a recording run, counting the loop's trips on its node, also when IULI leaves it.
+    private void runWhileCounted(Parser.Stmt.While stmt) {
+        Predicate<Interpreter> condition = compileClosures ? stmt.compiledCondition : null;
+        long trips = 0;
+        try {
+            while (condition != null ? condition.test(this) : isTruthy(evaluate(stmt.condition))) {
+                trips++;
+                loopIterations++;
+                execute(stmt.body);
+            }
+        } finally {
+            stmt.trips += trips;
+        }
+    }
+
+    @Override
+    public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        double start = parallelRange(stmt, stmt.start);
+        double span = parallelRange(stmt, stmt.bound) - start;
+        long trips = tripCount(span, stmt.inclusive);
+        int counter = address(stmt.counter.slot);
+        int[] slots = new int[stmt.reductions.size()];
+        String[] names = new String[slots.length];
+        for (int r = 0; r < slots.length; r++) {
+            slots[r] = address(stmt.reductions.get(r).slot);
+            names[r] = stmt.reductions.get(r).name.lexeme;
+        }
+        Reductions reductions = new Reductions(stmt.line, stmt.operators.toArray(new Parser.Stmt.Parallel.Reduction[0]),
+                names, slots, stack);
+        // The TypeChecker lets the body read an array it does not write at any element, which
+        // is only safe as long as it is not one of the written arrays under another name.
+        for (int written : stmt.writtenArrays) {
+            for (int read : stmt.readArrays) {
+                if (stack[address(written)] == stack[address(read)]) {
+                    throw BisayaError.runtime(stmt.line, "DUNGAN loop writes an array it also reads under another name.");
+                }
+            }
+        }
+
+        int chunks = chunkCount(trips);
+        // Profiling and coverage count on this interpreter, so their subclasses run the chunks here, in turn.
+        if (chunks > 1 && getClass() == Interpreter.class) {
+            runParallel(stmt.body, start, trips, chunks, counter, reductions);
+        } else {
+            for (int c = 0; c < chunks; c++) {
+                runChunk(stmt.body, start, trips * c / chunks, trips * (c + 1) / chunks, counter, reductions);
+                reductions.combine(stack);
+            }
+        }
+        reductions.store(stack);
+        stack[counter] = start + trips;
         return null;
     }
 
+    // Runs an ALANG SA loop the AutoParallelizer planned the way DUNGAN runs, when the
+    // values it starts with allow. Otherwise returns a reason to run it in turn instead,
+    // having run nothing.
+    private String runAutoParallel(Parser.Stmt.While stmt) {
+        AutoParallelizer.Plan plan = stmt.parallel;
+        int counter = address(plan.counterSlot);
+        Object first = stack[counter];
+        Object last = evaluate(plan.bound);
+        if (!(first instanceof Double) || !(last instanceof Double)) return "its range is not numbers";
+        double start = (Double)first;
+        long trips = tripCount((Double)last - start, plan.inclusive);
+        int chunks = chunkCount(trips);
+        if (chunks <= 1) return "it has only " + trips + (trips == 1 ? " iteration" : " iterations");
+        if (plan.wholeCounter && !isWhole(first)) return "its counter does not start at a whole number";
+        for (int slot : plan.wholeSlots) {
+            if (!isWhole(stack[address(slot)])) return "a sum relies on a value that is not a whole number";
+        }
+        int[] slots = new int[plan.reductionSlots.length];
+        for (int r = 0; r < slots.length; r++) {
+            slots[r] = address(plan.reductionSlots[r]);
+            Object value = stack[slots[r]];
+            boolean sum = plan.operators[r] == Parser.Stmt.Parallel.Reduction.SUMA
+                    || plan.operators[r] == Parser.Stmt.Parallel.Reduction.IHAP;
+            if (!(value instanceof Double) || sum && !isWhole(value)) {
+                return "'" + plan.reductionNames[r] + "' does not start at a " + (sum ? "whole number" : "number");
+            }
+            if (sum && !AutoParallelizer.sumsExactly(plan, r, (Double) value, start, trips, slot -> stack[address(slot)])) {
+                return "'" + plan.reductionNames[r] + "' may get past 2^53, where sums in another order round differently";
+            }
+        }
+        for (int written : plan.writtenArrays) {
+            for (int read : plan.readArrays) {
+                if (stack[address(written)] == stack[address(read)]) return "an array it writes is also read under another name";
+            }
+        }
+
+        Reductions reductions = new Reductions(stmt.line, plan.operators, plan.reductionNames, slots, stack);
+        Interpreter[] workers = runParallel(stmt.body, start, trips, chunks, counter, reductions);
+        // Private variables are left as the last iteration left them.
+        Object[] lastChunk = workers[chunks - 1].stack;
+        for (int slot : plan.privateSlots) {
+            stack[address(slot)] = lastChunk[address(slot)];
+        }
+        reductions.store(stack);
+        stack[counter] = start + trips;
+        if (recordProfile) stmt.trips += trips;
+        return null;
+    }
+
+    static long tripCount(double span, boolean inclusive) {
+        return Math.max(0, inclusive ? (long) Math.floor(span) + 1 : (long) Math.ceil(span));
+    }
+
+    private static int chunkCount(long trips) {
+        return (int) Math.min(MAX_CHUNKS, (trips + MIN_CHUNK - 1) / MIN_CHUNK);
+    }
+
+    private static boolean isWhole(Object value) {
+        return value instanceof Double && (Double)value == Math.rint((Double)value);
+    }
+
+    // Runs each chunk on a worker with its own copy of the variables, then emits the
+    // chunks' output and combines their reductions in iteration order. An error stops
+    // the loop after the output of the chunks before it.
+    private Interpreter[] runParallel(Parser.Stmt body, double start, long trips, int chunks, int counter,
+                                      Reductions reductions) {
+        Interpreter[] workers = new Interpreter[chunks];
+        RuntimeException[] failures = new RuntimeException[chunks];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            int chunk = c;
+            workers[c] = parallelWorker();
+            workers[c].stepBudget = stepBudget / chunks;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                Interpreter worker = workers[chunk];
+                try {
+                    worker.runChunk(body, start, trips * chunk / chunks, trips * (chunk + 1) / chunks, counter, reductions);
+                } catch (RuntimeException e) {
+                    failures[chunk] = e;
+                } finally {
+                    worker.flushMetrics();
+                }
+            }));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+
+        for (int c = 0; c < chunks; c++) {
+            print(workers[c].out.toString());
+            if (failures[c] != null) throw failures[c];
+            reductions.combine(workers[c].stack);
+        }
+        return workers;
+    }
+
+    private void runChunk(Parser.Stmt body, double start, long from, long to, int counter, Reductions reductions) {
+        reductions.reset(stack);
+        for (long i = from; i < to; i++) {
+            stack[counter] = start + i;
+            loopIterations++;
+            execute(body);
+        }
+    }
+
+    // The reduction variables of a parallel loop, by stack address, and their totals so far.
+    private static final class Reductions {
+        final int line;
+        final Parser.Stmt.Parallel.Reduction[] operators;
+        final String[] names;
+        final int[] slots;
+        final double[] totals;
+
+        Reductions(int line, Parser.Stmt.Parallel.Reduction[] operators, String[] names, int[] slots, Object[] stack) {
+            this.line = line;
+            this.operators = operators;
+            this.names = names;
+            this.slots = slots;
+            this.totals = new double[slots.length];
+            for (int r = 0; r < slots.length; r++) {
+                totals[r] = value(r, stack[slots[r]]);
+            }
+        }
+
+        // A chunk starts every reduction variable at the identity of its operator.
+        void reset(Object[] stack) {
+            for (int r = 0; r < slots.length; r++) {
+                switch (operators[r]) {
+                    case GAMAY: stack[slots[r]] = Double.POSITIVE_INFINITY; break;
+                    case DAKO: stack[slots[r]] = Double.NEGATIVE_INFINITY; break;
+                    default: stack[slots[r]] = 0.0;
+                }
+            }
+        }
+
+        void combine(Object[] values) {
+            for (int r = 0; r < slots.length; r++) {
+                double value = value(r, values[slots[r]]);
+                switch (operators[r]) {
+                    case GAMAY: totals[r] = Math.min(totals[r], value); break;
+                    case DAKO: totals[r] = Math.max(totals[r], value); break;
+                    default: totals[r] += value;
+                }
+            }
+        }
+
+        void store(Object[] stack) {
+            for (int r = 0; r < slots.length; r++) {
+                stack[slots[r]] = totals[r];
+            }
+        }
+
+        private double value(int r, Object value) {
+            if (!(value instanceof Double)) {
+                throw BisayaError.runtime(line, "Reduction variable '" + names[r] + "' must hold a number.");
+            }
+            return (Double)value;
+        }
+    }
+
+    private double parallelRange(Parser.Stmt.Parallel stmt, Parser.Expr expr) {
+        Object value = evaluate(expr);
+        if (!(value instanceof Double)) throw BisayaError.runtime(stmt.line, "DUNGAN loop range must be numbers.");
+        return (Double)value;
+    }
+
+    // A worker for one chunk of a DUNGAN loop: a copy of the variables as they are now,
+    // and output kept until the loop emits it in order.
+    private Interpreter parallelWorker() {
+        Interpreter worker = new Interpreter(this);
+        System.arraycopy(stack, 0, worker.stack, 0, sp);
+        System.arraycopy(boundsChecked, 0, worker.boundsChecked, 0, boundsChecked.length);
+        System.arraycopy(invariants, 0, worker.invariants, 0, invariants.length);
+        worker.fp = fp;
+        worker.sp = sp;
+        worker.callDepth = callDepth;
+        worker.out = new StringBuilder();
+        return worker;
+    }
+
+    // The hoisted bounds check: whether every covered access stays inside its array for
+    // every counter value the loop will run with. When unsure, answers false, and the
+    // accesses check themselves as usual.
+    private boolean inBounds(BoundsCheckHoisting.CountedLoop loop) {
+        Object start = stack[address(loop.counterSlot)];
+        if (!(start instanceof Double)) return false;
+        double first = (Double)start;
+        if (first != Math.rint(first)) return false;
+        Object bound;
+        try {
+            bound = evaluate(loop.bound);
+        } catch (BisayaError e) {
+            return false;
+        }
+        if (!(bound instanceof Double)) return false;
+        double last = loop.inclusive ? first + Math.floor((Double)bound - first) : first + Math.ceil((Double)bound - first) - 1;
+        if (!(last >= first)) return true; // The body never runs
+        for (int i = 0; i < loop.arraySlots.length; i++) {
+            int length = arrayLength(stack[address(loop.arraySlots[i])]);
+            if (first + loop.minOffsets[i] < 0 || last + loop.maxOffsets[i] >= length) return false;
+        }
+        return true;
+    }
+
     @Override
     public Void visitInputStmt(Parser.Stmt.Input stmt) {
         BisayaMain.printDebug("DEBUG: Processing input statement");
-        Scanner scanner = new Scanner(System.in);
+        if (scanner == null) scanner = new Scanner(System.in);
+        // A prompt written just before DAWAT must be visible before the read blocks.
+        if (out instanceof Flushable) {
+            try {
+                ((Flushable) out).flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         String input = scanner.nextLine();
         String[] values = input.split(",");
 
         if (values.length != stmt.variables.size()) {
-            throw new RuntimeException("Expected " + stmt.variables.size() + " values, got " + values.length);
+            throw BisayaError.runtime(stmt.line, "Expected " + stmt.variables.size() + " values, got " + values.length);
         }
 
+        Metrics.INPUT_VALUES.add(values.length);
         for (int i = 0; i < stmt.variables.size(); i++) {
             Token variable = stmt.variables.get(i);
             String value = values[i].trim();
             Object typedValue;
 
             try {
-                TokenType varType = parser.getVariableTypes().getOrDefault(variable.lexeme, null);
-                if (varType == TokenType.NUMERO) {
+                TokenType varType = stmt.types[i];
+                if (varType == TokenType.NUMERO || varType == TokenType.TIPIK) {
                     typedValue = Double.parseDouble(value);
-                    BisayaMain.printDebug("DEBUG: Parsed NUMERO input as Double: " + typedValue);
+                    if (DEBUG) {
+                        BisayaMain.printDebug("DEBUG: Parsed " + varType + " input as Double: " + typedValue);
+                    }
                 } else if (varType == TokenType.TINUOD) {
                     if (value.equalsIgnoreCase("OO")) {
                         typedValue = "OO";
                     } else if (value.equalsIgnoreCase("DILI")) {
                         typedValue = "DILI";
                     } else {
-                        throw new RuntimeException("Invalid input for TINUOD variable '" + variable.lexeme + "': '" + value + "' is not 'OO' or 'DILI'.");
+                        throw BisayaError.runtime(stmt.line, "Invalid input for TINUOD variable '" + variable.lexeme + "': '" + value + "' is not 'OO' or 'DILI'.");
+                    }
+                    if (DEBUG) {
+                        BisayaMain.printDebug("DEBUG: Parsed TINUOD input as String: " + typedValue);
                     }
-                    BisayaMain.printDebug("DEBUG: Parsed TINUOD input as String: " + typedValue);
                 } else if (varType == TokenType.LETRA) {
                     if (value.length() == 1) {
                         typedValue = value.charAt(0);
-                        BisayaMain.printDebug("DEBUG: Parsed LETRA input as Character: " + typedValue);
+                        if (DEBUG) {
+                            BisayaMain.printDebug("DEBUG: Parsed LETRA input as Character: " + typedValue);
+                        }
                     } else {
-                        throw new RuntimeException("Invalid input for LETRA variable '" + variable.lexeme + "': '" + value + "' is not a single character.");
+                        throw BisayaError.runtime(stmt.line, "Invalid input for LETRA variable '" + variable.lexeme + "': '" + value + "' is not a single character.");
                     }
                 } else {
                     typedValue = value;
-                    BisayaMain.printDebug("DEBUG: Parsed input as String: " + typedValue);
+                    if (DEBUG) {
+                        BisayaMain.printDebug("DEBUG: Parsed input as String: " + typedValue);
+                    }
                 }
             } catch (NumberFormatException e) {
-                TokenType varType = parser.getVariableTypes().getOrDefault(variable.lexeme, null);
+                TokenType varType = stmt.types[i];
                 if (varType == TokenType.LETRA) {
                     if (value.length() == 1 && Character.isLetter(value.charAt(0))) {
                         typedValue = value.charAt(0);
-                        BisayaMain.printDebug("DEBUG: Parsed LETRA input as Character (fallback): " + typedValue);
+                        if (DEBUG) {
+                            BisayaMain.printDebug("DEBUG: Parsed LETRA input as Character (fallback): " + typedValue);
+                        }
                     } else {
-                        throw new RuntimeException("Invalid input for LETRA variable '" + variable.lexeme + "': '" + value + "' is not a letter.");
+                        throw BisayaError.runtime(stmt.line, "Invalid input for LETRA variable '" + variable.lexeme + "': '" + value + "' is not a letter.");
                     }
                 } else {
-                    throw new RuntimeException("Invalid input format for variable " + variable.lexeme + ": " + value);
+                    throw BisayaError.runtime(stmt.line, "Invalid input format for variable " + variable.lexeme + ": " + value);
                 }
             }
 
-            BisayaMain.printDebug("DEBUG: Assigning " + variable.lexeme + " = " + typedValue + " (" + typedValue.getClass().getName() + ")");
-            environment.put(variable.lexeme, typedValue);
+            if (DEBUG) {
+                BisayaMain.printDebug("DEBUG: Assigning " + variable.lexeme + " = " + typedValue + " (" + typedValue.getClass().getName() + ")");
+            }
+            stack[address(stmt.slots[i])] = typedValue;
         }
 
         return null;
     }
 
-    private void executeBlock(List<Parser.Stmt> statements, Map<String, Object> environment) {
-        Map<String, Object> previous = this.environment;
-        try {
-            this.environment = environment;
-            for (Parser.Stmt statement : statements) {
-                execute(statement);
-            }
-        } finally {
-            this.environment = previous;
+    // Grows the value stack to hold at least size slots; new slots start undefined.
+    // Growth is geometric, since deep recursion grows it one frame at a time.
+    private void ensureStack(int size) {
+        if (size <= stack.length) return;
+        int oldLength = stack.length;
+        stack = Arrays.copyOf(stack, Math.max(size, oldLength + (oldLength >> 1)));
+        Arrays.fill(stack, oldLength, stack.length, UNDEFINED);
+    }
+
+    protected void execute(Parser.Stmt stmt) {
+        step();
+        Consumer<Interpreter> code = stmt.compiled;
+        if (code != null && compileClosures) {
+            code.accept(this);
+        } else {
+            stmt.accept(this);
         }
     }
 
-    private void execute(Parser.Stmt stmt) {
-        stmt.accept(this);
+    // Counts a statement about to run.
+    void step() {
+        if (++statementsExecuted == FLUSH_INTERVAL) {
+            flushMetrics();
+            if (stepBudget < 0) throw OUT_OF_STEPS;
+        }
     }
 
     private Object evaluate(Parser.Expr expr) {
+        expressionsExecuted++;
         return expr.accept(this);
     }
 
-    private Object lookUpVariable(Token name) {
-        if (environment.containsKey(name.lexeme)) {
-            return environment.get(name.lexeme);
+    private void flushMetrics() {
+        stepBudget -= statementsExecuted;
+        Metrics.STATEMENTS_EXECUTED.add(statementsExecuted);
+        Metrics.EXPRESSIONS_EXECUTED.add(expressionsExecuted);
+        Metrics.LOOP_ITERATIONS.add(loopIterations);
+        statementsExecuted = 0;
+        expressionsExecuted = 0;
+        loopIterations = 0;
+    }
+
+    private Object lookUpVariable(Parser.Expr.Variable expr) {
+        Object value = stack[address(expr.slot)];
+        if (value != UNDEFINED) {
+            return value;
         }
-        throw new RuntimeException("Undefined variable '" + name.lexeme + "'.");
+        throw undefinedVariable(expr.name);
     }
 
-    private boolean isTruthy(Object object) {
+    static BisayaError undefinedVariable(Token name) {
+        return BisayaError.runtime(name.line, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof String) {
             return object.equals("OO");
@@ -325,17 +1386,17 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
         return a.equals(b);
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) return;
-        throw new RuntimeException("Operand must be a number.");
+        throw BisayaError.runtime(operator.line, "Operand must be a number.");
     }
 
     private void checkNumberOperands(Token operator, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
-        throw new RuntimeException("Operands must be numbers.");
+        throw BisayaError.runtime(operator.line, "Operands must be numbers.");
     }
 
-    private String stringify(Object object) {
+    String stringify(Object object) {
         if (object == null) return "nil";
         if (object instanceof String) {
             if (object.equals("OO")) return "OO";
@@ -351,4 +1412,21 @@ public class Interpreter implements Parser.Expr.Visitor<Object>, Parser.Stmt.Vis
         }
         return object.toString();
     }
-}
\ No newline at end of file
+
+    private static class Return extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Return() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Thrown once a run has used up its stepBudget.
+    static class OutOfSteps extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private OutOfSteps() {
+            super(null, null, false, false);
+        }
+    }
+}
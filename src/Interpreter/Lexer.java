@@ -1,15 +1,41 @@
 package Interpreter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static Interpreter.BisayaMain.printDebug;
 
 public class Lexer {
+    // Sources at least this long are split at line ends and lexed in chunks on several threads.
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+    private static final int MIN_CHUNK = 1 << 18;
+    // Set when the JVM runs with --add-modules jdk.incubator.vector: the long inner loops
+    // of large sources then go through VectorScan. Its code is slow until the JIT has
+    // compiled it, so it pays off in a JVM that lexes again and again, like the daemon.
+    static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    private static final int VECTOR_THRESHOLD = 1 << 20;
+    private static final boolean DEBUG = BisayaMain.DEBUG;
+
+    // The thresholds above, package-private so the ConformanceSuite can send small sources
+    // down the chunked and VectorScan paths too.
+    int parallelThreshold = PARALLEL_THRESHOLD;
+    int minChunk = MIN_CHUNK;
+    int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    int vectorThreshold = VECTOR_THRESHOLD;
+
     private final String source;
+    private final int end; // The lexer reads source up to here
+    private byte[] text; // The source in Latin-1 for VectorScan, or null to scan a character at a time
     private final List<Token> tokens = new ArrayList<>();
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // Open array index brackets, so their ']' is not mistaken for the end of an escape.
+    private int brackets = 0;
+    private final Diagnostics diagnostics;
+    // Without a shared collector, scanTokens throws once with every error it found.
+    private final boolean ownsDiagnostics;
 
     private static final Map<String, TokenType> keywords;
 
@@ -32,22 +58,147 @@ public class Lexer {
         keywords.put("UG", TokenType.UG);
         keywords.put("O", TokenType.O);
         keywords.put("DILI", TokenType.DILI);
+        keywords.put("BUHAT", TokenType.BUHAT);
+        keywords.put("IULI", TokenType.IULI);
+        keywords.put("DUNGAN", TokenType.DUNGAN);
     }
 
     public Lexer(String source) {
+        this(source, new Diagnostics(), true);
+    }
+
+    public Lexer(String source, Diagnostics diagnostics) {
+        this(source, diagnostics, false);
+    }
+
+    // Lexes a region of a larger file that starts on firstLine.
+    public Lexer(String source, Diagnostics diagnostics, int firstLine) {
+        this(source, diagnostics, false);
+        this.line = firstLine;
+    }
+
+    private Lexer(String source, Diagnostics diagnostics, boolean ownsDiagnostics) {
+        this.source = source;
+        this.end = source.length();
+        this.diagnostics = diagnostics;
+        this.ownsDiagnostics = ownsDiagnostics;
+    }
+
+    // One chunk of a parallel scan: source from..to, which starts on firstLine outside any literal.
+    private Lexer(String source, byte[] text, int from, int to, int firstLine) {
         this.source = source;
+        this.text = text;
+        this.end = to;
+        this.start = from;
+        this.current = from;
+        this.line = firstLine;
+        this.diagnostics = new Diagnostics();
+        this.ownsDiagnostics = false;
     }
 
     public List<Token> scanTokens() {
         printDebug("Starting lexical analysis...");
+        long startNanos = System.nanoTime();
+        if (VECTOR && end >= vectorThreshold) {
+            byte[] bytes = source.getBytes(StandardCharsets.ISO_8859_1);
+            // A character outside the BMP becomes a single '?', and indexes would no longer match.
+            if (bytes.length == source.length()) text = bytes;
+        }
+        if (end >= parallelThreshold && parallelism > 1) {
+            scanChunks();
+        } else {
+            scanRange();
+        }
+
+        tokens.add(new Token(TokenType.EOF, "", null, line));
+        Metrics.TOKENS_LEXED.add(tokens.size());
+        Metrics.LEX_NANOS.add(System.nanoTime() - startNanos);
+        if (DEBUG) {
+            printDebug("Tokens: " + tokens);
+        }
+        if (ownsDiagnostics) diagnostics.throwIfErrors();
+        return tokens;
+    }
+
+    private void scanRange() {
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
+    }
 
-        tokens.add(new Token(TokenType.EOF, "", null, line));
-        printDebug("Tokens: " + tokens);
-        return tokens;
+    // Lexes chunks concurrently and joins their tokens and errors in source order, so the
+    // result is the same as scanning in one pass.
+    private void scanChunks() {
+        List<Lexer> chunks = split(Math.max(minChunk, end / (parallelism * 4)));
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Lexer chunk : chunks) {
+            tasks.add(ForkJoinTask.adapt(chunk::scanRange));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        for (Lexer chunk : chunks) {
+            tokens.addAll(chunk.tokens);
+            for (BisayaError error : chunk.diagnostics.getErrors()) {
+                diagnostics.report(error);
+            }
+            line = chunk.line;
+        }
+    }
+
+    // Cuts the source into chunks of about size characters, each ending at a line end. A
+    // pre-scan follows what scanToken consumes, but only far enough to know where literals,
+    // comments, escapes and array brackets open and close and which line ends it counts,
+    // so a chunk never starts inside one or on the wrong line.
+    private List<Lexer> split(int size) {
+        List<Lexer> chunks = new ArrayList<>();
+        int from = current;
+        int firstLine = line;
+        int lines = line;
+        int open = 0; // Array brackets
+        int i = current;
+        while (i < end) {
+            char c = source.charAt(i++);
+            switch (c) {
+                case '\n':
+                    lines++;
+                    if (open == 0 && i - from >= size && end - i >= size) {
+                        chunks.add(new Lexer(source, text, from, i, firstLine));
+                        from = i;
+                        firstLine = lines;
+                    }
+                    break;
+                case '"':
+                case '\'':
+                    while (i < end && source.charAt(i) != c) {
+                        if (source.charAt(i) == '\n') lines++;
+                        i++;
+                    }
+                    i++;
+                    break;
+                case '-':
+                    if (i < end && source.charAt(i) == '-') {
+                        while (i < end && source.charAt(i) != '\n') i++;
+                    }
+                    break;
+                case '[':
+                    if (i - 1 > 0 && isAlphaNumeric(source.charAt(i - 2))) {
+                        open++;
+                    } else if (i < end) {
+                        i++; // The escaped character, even a line end, which is then not counted
+                        if (i < end && source.charAt(i) == ']') i++;
+                    }
+                    break;
+                case ']':
+                    if (open > 0) open--;
+                    break;
+            }
+        }
+        chunks.add(new Lexer(source, text, from, end, firstLine));
+        return chunks;
     }
 
     private void scanToken() {
@@ -64,7 +215,7 @@ public class Lexer {
             case '-':
                 if (match('-')) {
                     // A comment goes until the end of the line.
-                    while (peek() != '\n' && !isAtEnd()) advance();
+                    skipTo('\n');
                 } else {
                     addToken(TokenType.MINUS);
                 }
@@ -99,9 +250,11 @@ public class Lexer {
             case '\r':
             case '\t':
                 // Ignore whitespace.
+                skipBlanks();
                 break;
             case '\n':
                 line++;
+                skipBlanks();
                 break;
             case '"':
                 string();
@@ -110,16 +263,28 @@ public class Lexer {
                 character();
                 break;
             case '[':
-                if (!isAtEnd()) {
+                // Written right after a name, '[' indexes an array: xs[i]. Anywhere else it starts an escape.
+                if (start > 0 && isAlphaNumeric(source.charAt(start - 1))) {
+                    brackets++;
+                    addToken(TokenType.LBRACKET);
+                } else if (!isAtEnd()) {
                     char escapedChar = advance();
 
                     if (match(']')) {
                         addToken(TokenType.STRING, String.valueOf(escapedChar));
                     } else {
-                        throw new RuntimeException("Expect ']' after escape character.");
+                        error("Expect ']' after escape character.");
                     }
                 } else {
-                    throw new RuntimeException("Unexpected end of input after '['.");
+                    unterminated(line, "Unexpected end of input after '['.");
+                }
+                break;
+            case ']':
+                if (brackets > 0) {
+                    brackets--;
+                    addToken(TokenType.RBRACKET);
+                } else {
+                    error("Unexpected character: ]");
                 }
                 break;
             case '$':
@@ -131,39 +296,38 @@ public class Lexer {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    throw new RuntimeException("Unexpected character: " + c);
+                    error("Unexpected character: " + c);
                 }
                 break;
         }
     }
 
     private void character() {
-        while (peek() != '\'' && !isAtEnd()) {
-            if (peek() == '\n') line++;
-            advance();
-        }
+        int startLine = line;
+        skipLiteral('\'');
 
         if (isAtEnd()) {
-            throw new RuntimeException("Unterminated character literal.");
+            unterminated(startLine, "Unterminated character literal.");
+            return;
         }
 
         advance(); // The closing '
 
         String value = source.substring(start + 1, current - 1);
         if (value.length() != 1) {
-            throw new RuntimeException("Character literal must contain exactly one character.");
+            error("Character literal must contain exactly one character.");
+            return;
         }
         addToken(TokenType.CHAR, value.charAt(0));
     }
 
     private void string() {
-        while (peek() != '"' && !isAtEnd()) {
-            if (peek() == '\n') line++;
-            advance();
-        }
+        int startLine = line;
+        skipLiteral('"');
 
         if (isAtEnd()) {
-            throw new RuntimeException("Unterminated string.");
+            unterminated(startLine, "Unterminated string.");
+            return;
         }
 
         advance(); // The closing "
@@ -185,7 +349,7 @@ public class Lexer {
                 double value = Double.parseDouble(numberString);
                 addToken(TokenType.TIPIK, value);
             } catch (NumberFormatException e) {
-                throw new RuntimeException("Invalid number format: " + numberString);
+                error("Invalid number format: " + numberString);
             }
         } else {
             // If it's just an integer, create a NUMERO token
@@ -194,7 +358,7 @@ public class Lexer {
                 double value = Double.parseDouble(numberString);
                 addToken(TokenType.NUMERO, value);
             } catch (NumberFormatException e) {
-                throw new RuntimeException("Invalid number format: " + numberString);
+                error("Invalid number format: " + numberString);
             }
         }
     }
@@ -240,6 +404,59 @@ public class Lexer {
         if (type == null) type = TokenType.IDENTIFIER;
         addToken(type);
     }
+
+    // Moves to the next c, or the end of the source.
+    private void skipTo(char c) {
+        if (text != null) {
+            current = VectorScan.indexOf(text, (byte) c, current, end);
+            return;
+        }
+        while (peek() != c && !isAtEnd()) advance();
+    }
+
+    // Moves to the closing quote of a literal, or the end of the source, counting its lines.
+    private void skipLiteral(char quote) {
+        if (text != null) {
+            int close = VectorScan.indexOf(text, (byte) quote, current, end);
+            line += VectorScan.count(text, (byte) '\n', current, close);
+            current = close;
+            return;
+        }
+        while (peek() != quote && !isAtEnd()) {
+            if (peek() == '\n') line++;
+            advance();
+        }
+    }
+
+    // Skips the rest of a run of spaces and line ends, counting its lines. A single blank
+    // between tokens, the usual case, returns at once.
+    private void skipBlanks() {
+        if (!isBlank(peek())) return;
+        if (text != null) {
+            int next = VectorScan.skipBlanks(text, current, end);
+            line += VectorScan.count(text, (byte) '\n', current, next);
+            current = next;
+            return;
+        }
+        while (isBlank(peek())) {
+            if (advance() == '\n') line++;
+        }
+    }
+
+    private boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    // Records the error and carries on scanning, so one pass reports every lexical error.
+    private void error(String message) {
+        diagnostics.report(BisayaError.lexical(line, message, false));
+    }
+
+    // For literals still open when the source ends, reported on the line they started.
+    private void unterminated(int startLine, String message) {
+        diagnostics.report(BisayaError.lexical(startLine, message, true));
+    }
+
     private boolean match(char expected) {
         if (isAtEnd()) return false;
         if (source.charAt(current) != expected) return false;
@@ -254,7 +471,7 @@ public class Lexer {
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
+        if (current + 1 >= end) return '\0';
         return source.charAt(current + 1);
     }
 
@@ -273,7 +490,7 @@ public class Lexer {
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     private char advance() {
@@ -0,0 +1,367 @@
+package Interpreter;
+
+import java.util.*;
+
+import static Interpreter.BisayaMain.printDebug;
+
+// Makes loops cheaper to run without changing what they do. Runs after the Resolver, since
+// it compares variables by slot, and before BoundsCheckHoisting.
+//
+// Loop-invariant code motion: an operation in a loop's condition or body that only reads
+// literals and variables the loop never assigns gives the same value on every iteration.
+// It gets a cache id, and the loop it is hoisted to (the outermost one it is invariant in)
+// lists the ids. The interpreter forgets those values each time the loop is entered and
+// computes each one the first time the loop reaches it, so an operation that fails still
+// fails at the same point, after the same output. As in BoundsCheckHoisting, a loop that
+// calls procedures may have any global assigned behind its back.
+//
+// Induction variable multiplications like i * (w + 1) keep their multiply: one operation
+// per iteration either way, and adding up steps would round differently for fractions.
+// Their invariant factor is hoisted like any other.
+//
+// Unrolling: an ALANG SA loop that runs from one number to another, never assigning its
+// counter in the body, runs a known number of times. When that is at most
+// MAX_UNROLLED_TRIPS, the loop runs its body that many times without testing its condition.
+public class LoopOptimizer implements Parser.Expr.Visitor<Void>, Parser.Stmt.Visitor<Void> {
+    public static final int MAX_UNROLLED_TRIPS = 16;
+
+    // The cache ids of the expressions hoisted to one loop.
+    public static class Hoisted {
+        public final int[] ids;
+        // Whether the loop calls procedures, which may run it again before it finishes.
+        public final boolean calls;
+
+        Hoisted(int[] ids, boolean calls) {
+            this.ids = ids;
+            this.calls = calls;
+        }
+    }
+
+    // A loop being walked: what it writes, and the expressions hoisted to it.
+    private static class Loop {
+        final Parser.Stmt.While stmt;
+        final Set<Integer> writes = new HashSet<>();
+        boolean calls;
+        boolean unrolled;
+        final List<Integer> ids = new ArrayList<>();
+
+        Loop(Parser.Stmt.While stmt) {
+            this.stmt = stmt;
+        }
+    }
+
+    // An expression that only does operations on literals and variables, and the loops around it, innermost first.
+    private static class Candidate {
+        final Parser.Expr expr;
+        final List<Loop> loops;
+
+        Candidate(Parser.Expr expr, List<Loop> loops) {
+            this.expr = expr;
+            this.loops = loops;
+        }
+    }
+
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    // Candidates inside the outermost loop being walked; placed once that loop is done.
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final List<Loop> finished = new ArrayList<>();
+    // The i = start of the ALANG SA whose loop is visited next, or null.
+    private Parser.Expr.Assign initializer;
+    private int nextId;
+    private int unrolled;
+
+    // Optimizes the statements and returns the next free cache id. Ids continue from
+    // firstId, so loops from every call on the same interpreter get their own.
+    public int optimize(List<Parser.Stmt> statements, int firstId) {
+        nextId = firstId;
+        unrolled = 0;
+        for (Parser.Stmt statement : statements) {
+            statement.accept(this);
+        }
+        printDebug("DEBUG: Hoisted " + (nextId - firstId) + " loop-invariant expressions, unrolled " + unrolled + " loops");
+        return nextId;
+    }
+
+    @Override
+    public Void visitWhileStmt(Parser.Stmt.While stmt) {
+        stmt.hoisted = null;
+        stmt.unrolledTrips = -1;
+        Parser.Expr.Assign start = initializer;
+        initializer = null;
+        List<Integer> boundSlots = new ArrayList<>();
+        Integer counter = BoundsCheckHoisting.countedLoopCounter(stmt, boundSlots);
+
+        Loop loop = new Loop(stmt);
+        loops.push(loop);
+        try {
+            visit(stmt.condition);
+            List<Parser.Stmt> body = stmt.body instanceof Parser.Stmt.Block ? ((Parser.Stmt.Block) stmt.body).statements : null;
+            if (counter == null) {
+                stmt.body.accept(this);
+            } else {
+                // Walk the increment last, to see whether anything before it assigns the counter.
+                for (int i = 0; i < body.size() - 1; i++) {
+                    body.get(i).accept(this);
+                }
+                boolean counterWritten = loop.writes.contains(counter) || (loop.calls && counter >= 0);
+                body.get(body.size() - 1).accept(this);
+                if (!counterWritten) unroll(loop, counter, start);
+            }
+        } finally {
+            loops.pop();
+        }
+        finished.add(loop);
+
+        if (loops.isEmpty()) {
+            for (Candidate candidate : candidates) {
+                hoist(candidate.expr, candidate.loops);
+            }
+            candidates.clear();
+            for (Loop done : finished) {
+                if (done.ids.isEmpty()) continue;
+                int[] ids = new int[done.ids.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = done.ids.get(i);
+                }
+                done.stmt.hoisted = new Hoisted(ids, done.calls);
+            }
+            finished.clear();
+        }
+        return null;
+    }
+
+    // Gives a counted loop from a number to a number its trip count, when that is small.
+    private void unroll(Loop loop, int counter, Parser.Expr.Assign start) {
+        if (start == null || start.slot != counter || !(start.value instanceof Parser.Expr.Literal)) return;
+        Object first = ((Parser.Expr.Literal) start.value).value;
+        Parser.Expr.Binary condition = (Parser.Expr.Binary) loop.stmt.condition;
+        if (!(condition.right instanceof Parser.Expr.Literal)) return;
+        Object last = ((Parser.Expr.Literal) condition.right).value;
+        if (!(first instanceof Double) || !(last instanceof Double)) return;
+
+        long trips = Interpreter.tripCount((Double) last - (Double) first, condition.operator.type == TokenType.LESS_EQUAL);
+        if (trips > MAX_UNROLLED_TRIPS) return;
+        loop.stmt.unrolledTrips = (int) trips;
+        loop.unrolled = true;
+        unrolled++;
+        printDebug("DEBUG: Loop at line " + loop.stmt.line + " runs " + trips + " times without testing its condition");
+    }
+
+    // Hoists expr to the outermost of the loops it is invariant in, or else the largest
+    // parts of it that are invariant in some loop.
+    private void hoist(Parser.Expr expr, List<Loop> around) {
+        while (expr instanceof Parser.Expr.Grouping) expr = ((Parser.Expr.Grouping) expr).expression;
+        if (expr instanceof Parser.Expr.Unary) {
+            hoist(((Parser.Expr.Unary) expr).right, around);
+            return;
+        }
+        if (!(expr instanceof Parser.Expr.Binary)) return;
+        Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+
+        Set<Integer> slots = new HashSet<>();
+        reads(binary, slots);
+        Loop target = null;
+        // A loop writes everything the loops inside it write, so once one assigns a variable
+        // the ones around it do too.
+        for (Loop loop : around) {
+            if (!invariant(loop, slots)) break;
+            // An unrolled loop does not test its condition, so it has nowhere to forget values.
+            if (!loop.unrolled) target = loop;
+        }
+        if (target == null) {
+            hoist(binary.left, around);
+            hoist(binary.right, around);
+            return;
+        }
+        binary.invariant = nextId++;
+        target.ids.add(binary.invariant);
+    }
+
+    private static boolean invariant(Loop loop, Set<Integer> slots) {
+        for (int slot : slots) {
+            // Frame slots are negative; a called procedure can only reach the others.
+            if (loop.writes.contains(slot) || (loop.calls && slot >= 0)) return false;
+        }
+        return true;
+    }
+
+    private static void reads(Parser.Expr expr, Set<Integer> slots) {
+        if (expr instanceof Parser.Expr.Variable) {
+            slots.add(((Parser.Expr.Variable) expr).slot);
+        } else if (expr instanceof Parser.Expr.Grouping) {
+            reads(((Parser.Expr.Grouping) expr).expression, slots);
+        } else if (expr instanceof Parser.Expr.Unary) {
+            reads(((Parser.Expr.Unary) expr).right, slots);
+        } else if (expr instanceof Parser.Expr.Binary) {
+            reads(((Parser.Expr.Binary) expr).left, slots);
+            reads(((Parser.Expr.Binary) expr).right, slots);
+        }
+    }
+
+    // True when expr only does operations on literals and variables, so it gives the same
+    // value as long as those variables keep theirs. Clears earlier cache ids on the way.
+    private static boolean operations(Parser.Expr expr) {
+        if (expr instanceof Parser.Expr.Literal || expr instanceof Parser.Expr.Variable) return true;
+        if (expr instanceof Parser.Expr.Grouping) return operations(((Parser.Expr.Grouping) expr).expression);
+        if (expr instanceof Parser.Expr.Unary) return operations(((Parser.Expr.Unary) expr).right);
+        if (expr instanceof Parser.Expr.Binary) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+            binary.invariant = -1;
+            boolean left = operations(binary.left);
+            return operations(binary.right) && left;
+        }
+        return false;
+    }
+
+    private void write(int slot) {
+        for (Loop loop : loops) {
+            loop.writes.add(slot);
+        }
+    }
+
+    private void visit(Parser.Expr expr) {
+        if (expr != null) expr.accept(this);
+    }
+
+    @Override
+    public Void visitLiteralExpr(Parser.Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Parser.Expr.Grouping expr) {
+        visit(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Parser.Expr.Unary expr) {
+        visit(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Parser.Expr.Binary expr) {
+        if (operations(expr)) {
+            if (!loops.isEmpty()) candidates.add(new Candidate(expr, new ArrayList<>(loops)));
+            return null;
+        }
+        visit(expr.left);
+        visit(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Parser.Expr.Variable expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Parser.Expr.Assign expr) {
+        visit(expr.value);
+        write(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Parser.Expr.Index expr) {
+        visit(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+        visit(expr.index);
+        visit(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Parser.Expr.Call expr) {
+        for (Parser.Expr argument : expr.arguments) {
+            visit(argument);
+        }
+        for (Loop loop : loops) {
+            loop.calls = true;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        // Procedures are declared at the top level, so no loop encloses the body.
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        visit(stmt.start);
+        visit(stmt.bound);
+        write(stmt.counter.slot);
+        for (Parser.Expr.Variable reduction : stmt.reductions) {
+            write(reduction.slot);
+        }
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+        visit(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+        visit(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+        for (Parser.Expr expr : stmt.expressions) {
+            visit(expr);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Parser.Stmt.Var stmt) {
+        visit(stmt.size);
+        visit(stmt.initializer);
+        write(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+        List<Parser.Stmt> statements = stmt.statements;
+        for (int i = 0; i < statements.size(); i++) {
+            Parser.Stmt statement = statements.get(i);
+            // The parser gives ALANG SA as a block of its initializer and its loop.
+            if (statement instanceof Parser.Stmt.While && i > 0 && statements.get(i - 1) instanceof Parser.Stmt.Expression
+                    && ((Parser.Stmt.Expression) statements.get(i - 1)).expression instanceof Parser.Expr.Assign) {
+                initializer = (Parser.Expr.Assign) ((Parser.Stmt.Expression) statements.get(i - 1)).expression;
+            }
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Parser.Stmt.If stmt) {
+        visit(stmt.condition);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Parser.Stmt.Input stmt) {
+        for (int slot : stmt.slots) {
+            write(slot);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+package Interpreter;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+// Process-wide interpreter counters. They are LongAdders, so any number of interpreter
+// threads can update them without locks. The interpreter's per-statement counts are kept
+// in plain fields and flushed here in batches, keeping the hot path free of shared writes.
+public final class Metrics implements MetricsMXBean {
+    public static final LongAdder TOKENS_LEXED = new LongAdder();
+    public static final LongAdder STATEMENTS_PARSED = new LongAdder();
+    public static final LongAdder STATEMENTS_EXECUTED = new LongAdder();
+    public static final LongAdder EXPRESSIONS_EXECUTED = new LongAdder();
+    public static final LongAdder LOOP_ITERATIONS = new LongAdder();
+    public static final LongAdder PRINT_BYTES = new LongAdder();
+    public static final LongAdder INPUT_VALUES = new LongAdder();
+    public static final LongAdder LEX_NANOS = new LongAdder();
+    public static final LongAdder PARSE_NANOS = new LongAdder();
+    public static final LongAdder INTERPRET_NANOS = new LongAdder();
+
+    private static final Metrics INSTANCE = new Metrics();
+    private static final String OBJECT_NAME = "Bisaya:type=Metrics";
+
+    private Metrics() {
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    // Prints the counters to out every periodSeconds from a daemon thread.
+    public static void startDump(long periodSeconds, PrintStream out) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bisaya-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> out.println(INSTANCE.format()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public String format() {
+        return String.format("[metrics] tokens=%d (%.0f/s) parsed=%d statements=%d expressions=%d iterations=%d"
+                        + " printBytes=%d inputs=%d lex=%dms parse=%dms interpret=%dms",
+                getTokensLexed(), getTokensLexedPerSecond(), getStatementsParsed(), getStatementsExecuted(),
+                getExpressionsExecuted(), getLoopIterations(), getPrintBytesWritten(), getInputValuesRead(),
+                getLexMillis(), getParseMillis(), getInterpretMillis());
+    }
+
+    // Encoded size of text written by IPAKITA, without allocating the encoded bytes.
+    public static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getTokensLexed() {
+        return TOKENS_LEXED.sum();
+    }
+
+    @Override
+    public double getTokensLexedPerSecond() {
+        long nanos = LEX_NANOS.sum();
+        return nanos == 0 ? 0 : TOKENS_LEXED.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public long getStatementsParsed() {
+        return STATEMENTS_PARSED.sum();
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return STATEMENTS_EXECUTED.sum();
+    }
+
+    @Override
+    public long getExpressionsExecuted() {
+        return EXPRESSIONS_EXECUTED.sum();
+    }
+
+    @Override
+    public long getLoopIterations() {
+        return LOOP_ITERATIONS.sum();
+    }
+
+    @Override
+    public long getPrintBytesWritten() {
+        return PRINT_BYTES.sum();
+    }
+
+    @Override
+    public long getInputValuesRead() {
+        return INPUT_VALUES.sum();
+    }
+
+    @Override
+    public long getLexMillis() {
+        return LEX_NANOS.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getParseMillis() {
+        return PARSE_NANOS.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getInterpretMillis() {
+        return INTERPRET_NANOS.sum() / 1_000_000;
+    }
+}
@@ -0,0 +1,16 @@
+package Interpreter;
+
+// Management interface for Metrics, registered as "Bisaya:type=Metrics".
+public interface MetricsMXBean {
+    long getTokensLexed();
+    double getTokensLexedPerSecond();
+    long getStatementsParsed();
+    long getStatementsExecuted();
+    long getExpressionsExecuted();
+    long getLoopIterations();
+    long getPrintBytesWritten();
+    long getInputValuesRead();
+    long getLexMillis();
+    long getParseMillis();
+    long getInterpretMillis();
+}
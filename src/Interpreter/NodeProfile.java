@@ -0,0 +1,216 @@
+package Interpreter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// What earlier runs of a script learned about its nodes, kept in a sidecar file so the next
+// run does not start cold. Loaded after parsing and before Interpreter.prepare, saved after
+// the run, which records with Interpreter.setRecordProfile.
+//
+// For each Expr.Binary the file keeps the specialization it ended with. The next run
+// starts the node there instead of UNINITIALIZED; its guards still check every value. For
+// each KUNG it keeps how often each branch ran, which tells the ClosureCompiler which ones
+// to leave for later. For each loop it keeps entries and trips, which tells
+// BoundsCheckHoisting which loops run too briefly to check on entry. Counts add up over
+// all the runs recorded.
+//
+// Nodes are numbered in the order a walk of the statements meets them, so the file only
+// applies to the exact source it was recorded from; the source's SHA-256 is its key.
+//
+//   bisaya-node-profile 1
+//   <SHA-256 of the source>
+//   binary <one letter per node, the first of its specialization>
+//   if <then runs>,<else runs> ...
+//   loop <entries>,<trips> ...
+public class NodeProfile {
+    private static final String HEADER = "bisaya-node-profile 1";
+
+    private final String hash;
+    private final List<Parser.Expr.Binary> binaries = new ArrayList<>();
+    private final List<Parser.Stmt.If> branches = new ArrayList<>();
+    private final List<Parser.Stmt.While> loops = new ArrayList<>();
+
+    public NodeProfile(String source, List<Parser.Stmt> statements) {
+        this.hash = sha256(source);
+        for (Parser.Stmt statement : statements) {
+            walk(statement);
+        }
+    }
+
+    // Applies the profile in file to the nodes. Returns false, changing nothing, when there
+    // is no file or it was recorded from another source.
+    public boolean load(Path file) throws IOException {
+        if (!Files.exists(file)) return false;
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.size() != 5 || !lines.get(0).equals(HEADER) || !lines.get(1).equals(hash)) return false;
+        String specializations = field(lines.get(2), "binary");
+        long[] ifCounts = counts(field(lines.get(3), "if"), branches.size());
+        long[] loopCounts = counts(field(lines.get(4), "loop"), loops.size());
+        if (specializations == null || specializations.length() != binaries.size() || ifCounts == null || loopCounts == null) {
+            return false;
+        }
+
+        for (int i = 0; i < binaries.size(); i++) {
+            Parser.Expr.Binary binary = binaries.get(i);
+            Parser.Expr.Binary.Specialization specialization = specialization(specializations.charAt(i));
+            // A letter no run could have given this operator, edited in or from a damaged
+            // file, would take a wrong fast path, so the node starts UNINITIALIZED instead.
+            // TYPED_NUMBER is the TypeChecker's to give, again, on this run.
+            binary.specialization = specialization != null && Interpreter.canSpecialize(binary.operator.type, specialization)
+                    ? specialization : Parser.Expr.Binary.Specialization.UNINITIALIZED;
+        }
+        for (int i = 0; i < branches.size(); i++) {
+            branches.get(i).thenRuns = ifCounts[2 * i];
+            branches.get(i).elseRuns = ifCounts[2 * i + 1];
+        }
+        for (int i = 0; i < loops.size(); i++) {
+            loops.get(i).entries = loopCounts[2 * i];
+            loops.get(i).trips = loopCounts[2 * i + 1];
+        }
+        return true;
+    }
+
+    // Writes what the nodes hold now. Scripts run side by side may save at once, so the
+    // file is replaced whole and is never seen half written; the last run to finish wins.
+    public void save(Path file) throws IOException {
+        StringBuilder text = new StringBuilder(HEADER).append('\n').append(hash).append('\n');
+        text.append("binary ").append(specializations());
+        text.append("\nif");
+        for (Parser.Stmt.If branch : branches) {
+            text.append(' ').append(branch.thenRuns).append(',').append(branch.elseRuns);
+        }
+        text.append("\nloop");
+        for (Parser.Stmt.While loop : loops) {
+            text.append(' ').append(loop.entries).append(',').append(loop.trips);
+        }
+        text.append('\n');
+
+        Path absolute = file.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // The first letters of the specializations the nodes hold now, in order.
+    String specializations() {
+        StringBuilder letters = new StringBuilder();
+        for (Parser.Expr.Binary binary : binaries) {
+            letters.append(binary.specialization.name().charAt(0));
+        }
+        return letters.toString();
+    }
+
+    private static String field(String line, String name) {
+        if (line.equals(name)) return "";
+        return line.startsWith(name + " ") ? line.substring(name.length() + 1) : null;
+    }
+
+    // The pairs of counts on a line, two per node, or null if there are not as many as expected.
+    private static long[] counts(String line, int nodes) {
+        if (line == null) return null;
+        String[] pairs = line.isEmpty() ? new String[0] : line.split(" ");
+        if (pairs.length != nodes) return null;
+        long[] counts = new long[2 * nodes];
+        try {
+            for (int i = 0; i < nodes; i++) {
+                String[] pair = pairs[i].split(",");
+                if (pair.length != 2) return null;
+                counts[2 * i] = Long.parseLong(pair[0]);
+                counts[2 * i + 1] = Long.parseLong(pair[1]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return counts;
+    }
+
+    private static Parser.Expr.Binary.Specialization specialization(char letter) {
+        for (Parser.Expr.Binary.Specialization specialization : Parser.Expr.Binary.Specialization.values()) {
+            if (specialization.name().charAt(0) == letter) return specialization;
+        }
+        return null;
+    }
+
+    private static String sha256(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void walk(Parser.Stmt stmt) {
+        if (stmt instanceof Parser.Stmt.Expression) {
+            walk(((Parser.Stmt.Expression) stmt).expression);
+        } else if (stmt instanceof Parser.Stmt.Print) {
+            for (Parser.Expr expr : ((Parser.Stmt.Print) stmt).expressions) {
+                walk(expr);
+            }
+        } else if (stmt instanceof Parser.Stmt.Var) {
+            walk(((Parser.Stmt.Var) stmt).initializer);
+            walk(((Parser.Stmt.Var) stmt).size);
+        } else if (stmt instanceof Parser.Stmt.Block) {
+            for (Parser.Stmt statement : ((Parser.Stmt.Block) stmt).statements) {
+                walk(statement);
+            }
+        } else if (stmt instanceof Parser.Stmt.If) {
+            Parser.Stmt.If branch = (Parser.Stmt.If) stmt;
+            branches.add(branch);
+            walk(branch.condition);
+            walk(branch.thenBranch);
+            if (branch.elseBranch != null) walk(branch.elseBranch);
+        } else if (stmt instanceof Parser.Stmt.Procedure) {
+            walk(((Parser.Stmt.Procedure) stmt).body);
+        } else if (stmt instanceof Parser.Stmt.Return) {
+            walk(((Parser.Stmt.Return) stmt).value);
+        } else if (stmt instanceof Parser.Stmt.While) {
+            Parser.Stmt.While loop = (Parser.Stmt.While) stmt;
+            loops.add(loop);
+            walk(loop.condition);
+            walk(loop.body);
+        } else if (stmt instanceof Parser.Stmt.Parallel) {
+            Parser.Stmt.Parallel loop = (Parser.Stmt.Parallel) stmt;
+            walk(loop.start);
+            walk(loop.bound);
+            walk(loop.body);
+        }
+    }
+
+    // Null, for a missing initializer or value, has no nodes.
+    private void walk(Parser.Expr expr) {
+        if (expr instanceof Parser.Expr.Binary) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+            binaries.add(binary);
+            walk(binary.left);
+            walk(binary.right);
+        } else if (expr instanceof Parser.Expr.Grouping) {
+            walk(((Parser.Expr.Grouping) expr).expression);
+        } else if (expr instanceof Parser.Expr.Unary) {
+            walk(((Parser.Expr.Unary) expr).right);
+        } else if (expr instanceof Parser.Expr.Assign) {
+            walk(((Parser.Expr.Assign) expr).value);
+        } else if (expr instanceof Parser.Expr.Index) {
+            walk(((Parser.Expr.Index) expr).index);
+        } else if (expr instanceof Parser.Expr.IndexAssign) {
+            walk(((Parser.Expr.IndexAssign) expr).index);
+            walk(((Parser.Expr.IndexAssign) expr).value);
+        } else if (expr instanceof Parser.Expr.Call) {
+            for (Parser.Expr argument : ((Parser.Expr.Call) expr).arguments) {
+                walk(argument);
+            }
+        }
+    }
+}
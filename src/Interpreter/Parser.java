@@ -1,6 +1,8 @@
 package Interpreter;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static Interpreter.BisayaMain.printDebug;
 
@@ -8,74 +10,103 @@ public class Parser {
     private static final boolean DEBUG = BisayaMain.DEBUG;
     private final List<Token> tokens;
     private int current = 0;
-    private final Map<String, TokenType> variableTypes = new HashMap<>();
+    private int statementsParsed = 0;
+    // Token index where each top-level statement starts.
+    private final List<Integer> statementStarts = new ArrayList<>();
     private static final Set<TokenType> KEYWORDS = new HashSet<>(Arrays.asList(
             TokenType.SUGOD, TokenType.KATAPUSAN, TokenType.MUGNA, TokenType.NUMERO, TokenType.LETRA,
             TokenType.TINUOD, TokenType.TIPIK, TokenType.IPAKITA, TokenType.DAWAT, TokenType.KUNG,
             TokenType.KUNG_WALA, TokenType.KUNG_DILI, TokenType.PUNDOK, TokenType.ALANG_SA,
-            TokenType.UG, TokenType.O, TokenType.DILI
+            TokenType.UG, TokenType.O, TokenType.DILI, TokenType.BUHAT, TokenType.IULI, TokenType.DUNGAN
     ));
+    // PUNDOK blocks around the statement being parsed; procedures are only declared outside them.
+    private int nesting = 0;
+    private boolean inProcedure = false;
+    // For each DUNGAN body being parsed, innermost first, the variables it may assign.
+    // DUNGAN loops around the statement being parsed.
+    private int parallelDepth = 0;
+    private final Diagnostics diagnostics;
+    // Without a shared collector, parse throws once with every error it found.
+    private final boolean ownsDiagnostics;
+
     public Parser(List<Token> tokens) {
+        this(tokens, new Diagnostics(), true);
+    }
+
+    public Parser(List<Token> tokens, Diagnostics diagnostics) {
+        this(tokens, diagnostics, false);
+    }
+
+    private Parser(List<Token> tokens, Diagnostics diagnostics, boolean ownsDiagnostics) {
         this.tokens = tokens;
+        this.diagnostics = diagnostics;
+        this.ownsDiagnostics = ownsDiagnostics;
     }
 
     public List<Stmt> parse() {
         printDebug("Starting parsing...");
+        long start = System.nanoTime();
 
         List<Stmt> statements = new ArrayList<>();
         while (!isAtEnd()) {
-            try {
-                Stmt stmt = declaration();
-                if (stmt != null) {
-                    statements.add(stmt);
-                }
-            } catch (RuntimeException error) {
-                printDebug("DEBUG: Error parsing statement: " + error.getMessage());
-                synchronize();
+            statementStarts.add(current);
+            Stmt stmt = recoveringDeclaration();
+            if (stmt != null) {
+                statements.add(stmt);
             }
         }
         printDebug("DEBUG: Parsed " + statements.size() + " statements");
+        Metrics.STATEMENTS_PARSED.add(statementsParsed);
+        Metrics.PARSE_NANOS.add(System.nanoTime() - start);
+        if (ownsDiagnostics) diagnostics.throwIfErrors();
         return statements;
     }
 
-    public Map<String, TokenType> getVariableTypes() {
-        return variableTypes;
+    public List<Integer> getStatementStarts() {
+        return statementStarts;
     }
 
     private Stmt declaration() {
+        int line = peek().line;
+        if (match(TokenType.SUGOD)) return located(block(), line);
+        if (match(TokenType.MUGNA)) return located(varDeclaration(), line);
+        if (match(TokenType.BUHAT)) return located(procedureDeclaration(), line);
+        return statement();
+    }
+
+    // Parses a declaration inside a block. A syntax error is reported, the rest of the
+    // statement is skipped, and null is returned, so the statements after it still get checked.
+    private Stmt recoveringDeclaration() {
+        int start = current;
         try {
-            if (match(TokenType.SUGOD)) return block();
-            if (match(TokenType.MUGNA)) return varDeclaration();
-            return statement();
-        } catch (RuntimeException error) {
-            throw new Error("DEBUG: Error in declaration: " + error.getMessage());
-//            synchronize();
-//            return null;
+            return declaration();
+        } catch (BisayaError error) {
+            printDebug("DEBUG: Error parsing statement: " + error.getMessage());
+            synchronize(start);
+            return null;
         }
     }
 
     private Stmt statement() {
+        int line = peek().line;
+        return located(statementBody(), line);
+    }
+
+    private Stmt statementBody() {
         if (match(TokenType.IPAKITA)) return printStatement();
         if (match(TokenType.DAWAT)) return inputStatement();
         if (match(TokenType.KUNG)) return ifStatement();
+        if (match(TokenType.IULI)) return returnStatement();
         if (match(TokenType.PUNDOK)) {
             printDebug("DEBUG: Found PUNDOK");
             consume(TokenType.LBRACE, "Expect '{' after PUNDOK.");
-            List<Stmt> statements = new ArrayList<>();
-            while (!check(TokenType.RBRACE) && !isAtEnd()) {
-                Stmt stmt = statement();
-                if (stmt != null) {
-                    statements.add(stmt);
-                    printDebug("DEBUG: Added statement to block: " + stmt);
-                }
-            }
-            consume(TokenType.RBRACE, "Expect '}' after block.");
-            return new Stmt.Block(statements);
+            return new Stmt.Block(pundokStatements(), true);
         }
         if (match(TokenType.ALANG_SA)) {
             printDebug("DEBUG: Found ALANG SA statement");
             return whileStatement();
         }
+        if (match(TokenType.DUNGAN)) return parallelStatement();
         return expressionStatement();
     }
 
@@ -89,7 +120,7 @@ public class Parser {
             printDebug("DEBUG: Added expression to print: " + expr);
         } while (match(TokenType.CONCAT));
         if (check(TokenType.IDENTIFIER) || check(TokenType.STRING) || check(TokenType.NUMBER) || check(TokenType.COMMA)) {
-            throw new Error("Expected concatenation operator");
+            throw error(peek(), "Expected concatenation operator");
         }
         printDebug("DEBUG: Print statement parsed with " + expressions.size() + " expressions");
         return new Stmt.Print(expressions);
@@ -97,12 +128,15 @@ public class Parser {
 
     private Stmt inputStatement() {
         printDebug("DEBUG: Parsing input statement");
+        if (parallelDepth > 0) {
+            error(previous(), "DAWAT is not allowed in a DUNGAN loop.");
+        }
         consume(TokenType.COLON, "Expect ':' after DAWAT.");
         List<Token> variables = new ArrayList<>();
         do {
             Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
             variables.add(name);
-            printDebug("DEBUG: Added variable to input: " + name.lexeme + " with varType: " + variableTypes.getOrDefault(name.lexeme, null));
+            printDebug("DEBUG: Added variable to input: " + name.lexeme);
         } while (match(TokenType.COMMA));
         printDebug("DEBUG: Input statement parsed with " + variables.size() + " variables");
         return new Stmt.Input(variables);
@@ -116,6 +150,7 @@ public class Parser {
         Stmt elseBranch = null;
 
         if (match(TokenType.KUNG_DILI)) {
+            int elseLine = previous().line;
             consume(TokenType.LPAREN, "Expect '(' after 'KUNG DILI'.");
             Expr elseCondition = expression();
             consume(TokenType.RPAREN, "Expect ')' after KUNG DILI condition.");
@@ -126,7 +161,7 @@ public class Parser {
                 elseElseBranch = statement();
             }
 
-            elseBranch = new Stmt.If(elseCondition, elseThenBranch, elseElseBranch);
+            elseBranch = located(new Stmt.If(elseCondition, elseThenBranch, elseElseBranch), elseLine);
         } else if (match(TokenType.KUNG_WALA)) {
             elseBranch = statement();
         }
@@ -138,7 +173,7 @@ public class Parser {
         printDebug("DEBUG: Parsing block");
         List<Stmt> statements = new ArrayList<>();
         while (!check(TokenType.KATAPUSAN) && !isAtEnd()) {
-            Stmt stmt = declaration();
+            Stmt stmt = recoveringDeclaration();
             if (stmt != null) {
                 statements.add(stmt);
                 printDebug("DEBUG: Added statement to block: " + stmt);
@@ -151,6 +186,7 @@ public class Parser {
 
     private Stmt whileStatement() {
         printDebug("DEBUG: Starting while statement parsing");
+        int line = previous().line;
         consume(TokenType.LPAREN, "Expect '(' after 'ALANG SA'.");
         printDebug("DEBUG: Found opening parenthesis");
 
@@ -163,9 +199,9 @@ public class Parser {
                 printDebug("DEBUG: Found assignment operator");
                 Expr value = expression();
                 printDebug("DEBUG: Parsed initializer value: " + value);
-                initializer = new Stmt.Expression(new Expr.Assign(name, value));
+                initializer = located(new Stmt.Expression(new Expr.Assign(name, value)), name.line);
             } else {
-                throw new RuntimeException("Expect '=' after variable name.");
+                throw error(peek(), "Expect '=' after variable name.");
             }
         } else {
             initializer = expressionStatement();
@@ -201,7 +237,7 @@ public class Parser {
             }
         }
         if (increment == null) {
-            throw new RuntimeException("Expect increment after comma.");
+            throw error(peek(), "Expect increment after comma.");
         }
         printDebug("DEBUG: Looking for closing parenthesis, current token: " + peek());
         consume(TokenType.RPAREN, "Expect ')' after for clauses.");
@@ -210,21 +246,13 @@ public class Parser {
         // Parse body
         printDebug("DEBUG: Parsing loop body");
         Stmt body;
+        int bodyLine = peek().line;
         if (match(TokenType.PUNDOK)) {
             printDebug("DEBUG: Found PUNDOK");
             consume(TokenType.LBRACE, "Expect '{' after PUNDOK.");
             printDebug("DEBUG: Found opening brace");
-            List<Stmt> statements = new ArrayList<>();
-            while (!check(TokenType.RBRACE) && !isAtEnd()) {
-                Stmt stmt = statement();
-                if (stmt != null) {
-                    statements.add(stmt);
-                    printDebug("DEBUG: Added statement to block: " + stmt);
-                }
-            }
-            consume(TokenType.RBRACE, "Expect '}' after block.");
+            body = located(new Stmt.Block(pundokStatements(), true), bodyLine);
             printDebug("DEBUG: Found closing brace");
-            body = new Stmt.Block(statements);
         } else {
             body = statement();
         }
@@ -233,12 +261,12 @@ public class Parser {
         // Create a block that contains the increment after the body
         List<Stmt> bodyStatements = new ArrayList<>();
         bodyStatements.add(body);
-        bodyStatements.add(new Stmt.Expression(increment));
-        Stmt bodyWithIncrement = new Stmt.Block(bodyStatements);
+        bodyStatements.add(located(new Stmt.Expression(increment), line));
+        Stmt bodyWithIncrement = located(new Stmt.Block(bodyStatements), line);
         printDebug("DEBUG: Created body with increment");
 
         // Create the while loop
-        Stmt whileLoop = new Stmt.While(condition, bodyWithIncrement);
+        Stmt whileLoop = located(new Stmt.While(condition, bodyWithIncrement), line);
         printDebug("DEBUG: Created while loop");
 
         // Create a block that contains the initializer and the while loop
@@ -246,7 +274,166 @@ public class Parser {
         statements.add(initializer);
         statements.add(whileLoop);
         printDebug("DEBUG: Created final block with initializer and while loop");
-        return new Stmt.Block(statements);
+        return located(new Stmt.Block(statements), line);
+    }
+
+    // DUNGAN ALANG SA (i=start, i<bound, i++) followed by a PUNDOK body. The iterations
+    // run in chunks on several threads, each with its own copy of the variables, so the
+    // body may only assign variables it declares itself and the reduction variables
+    // listed after the header: SUMA x (sum), IHAP x (count), GAMAY x (min), DAKO x (max).
+    // start and bound are evaluated once, before the first iteration. What the body does
+    // with variables is checked on resolved slots, by AutoParallelizer.checkParallel.
+    private Stmt parallelStatement() {
+        Token keyword = previous();
+        consume(TokenType.ALANG_SA, "Expect 'ALANG SA' after DUNGAN.");
+        consume(TokenType.LPAREN, "Expect '(' after 'ALANG SA'.");
+        Token counter = consume(TokenType.IDENTIFIER, "Expect loop variable.");
+        consume(TokenType.ASSIGN, "Expect '=' after variable name.");
+        Expr start = expression();
+        consume(TokenType.COMMA, "Expect ',' after initialization.");
+
+        Token compared = consume(TokenType.IDENTIFIER, "DUNGAN loops need a condition " + counter.lexeme + " < n or " + counter.lexeme + " <= n.");
+        if (!compared.lexeme.equals(counter.lexeme) || !match(TokenType.LESS, TokenType.LESS_EQUAL)) {
+            throw error(compared, "DUNGAN loops need a condition " + counter.lexeme + " < n or " + counter.lexeme + " <= n.");
+        }
+        boolean inclusive = previous().type == TokenType.LESS_EQUAL;
+        Expr bound = expression();
+        consume(TokenType.COMMA, "Expect ',' after condition.");
+
+        Token incremented = consume(TokenType.IDENTIFIER, "Expect increment after comma.");
+        if (!incremented.lexeme.equals(counter.lexeme) || !match(TokenType.PLUS) || !match(TokenType.PLUS)) {
+            throw error(incremented, "DUNGAN loops count up with " + counter.lexeme + "++.");
+        }
+        consume(TokenType.RPAREN, "Expect ')' after for clauses.");
+
+        // Reductions follow the header on the same line.
+        List<Stmt.Parallel.Reduction> operators = new ArrayList<>();
+        List<Expr.Variable> reductions = new ArrayList<>();
+        Set<String> listed = new HashSet<>();
+        while (check(TokenType.IDENTIFIER) && peek().line == keyword.line) {
+            Token operator = advance();
+            Stmt.Parallel.Reduction reduction;
+            try {
+                reduction = Stmt.Parallel.Reduction.valueOf(operator.lexeme);
+            } catch (IllegalArgumentException e) {
+                throw error(operator, "Expect SUMA, IHAP, GAMAY or DAKO.");
+            }
+            Token name = consume(TokenType.IDENTIFIER, "Expect variable after " + operator.lexeme + ".");
+            if (!listed.add(name.lexeme) || name.lexeme.equals(counter.lexeme)) {
+                throw error(name, "'" + name.lexeme + "' cannot be a reduction variable here.");
+            }
+            operators.add(reduction);
+            reductions.add(new Expr.Variable(name));
+            if (!match(TokenType.COMMA)) break;
+        }
+
+        int bodyLine = peek().line;
+        consume(TokenType.PUNDOK, "Expect PUNDOK after DUNGAN ALANG SA.");
+        consume(TokenType.LBRACE, "Expect '{' after PUNDOK.");
+        parallelDepth++;
+        Stmt.Block body;
+        try {
+            body = (Stmt.Block) located(new Stmt.Block(pundokStatements(), true), bodyLine);
+        } finally {
+            parallelDepth--;
+        }
+        return new Stmt.Parallel(keyword, new Expr.Variable(counter), start, bound, inclusive, operators, reductions, body);
+    }
+
+    // The statements of a PUNDOK block up to and including its closing '}'.
+    private List<Stmt> pundokStatements() {
+        List<Stmt> statements = new ArrayList<>();
+        nesting++;
+        try {
+            while (!check(TokenType.RBRACE) && !isAtEnd()) {
+                Stmt stmt = recoveringDeclaration();
+                if (stmt != null) {
+                    statements.add(stmt);
+                    printDebug("DEBUG: Added statement to block: " + stmt);
+                }
+            }
+        } finally {
+            nesting--;
+        }
+        consume(TokenType.RBRACE, "Expect '}' after block.");
+        return statements;
+    }
+
+    // BUHAT [type] name(type a, type xs[], ...) followed by a PUNDOK body. Procedures are
+    // declared at the top level and can be called from anywhere in the program, also
+    // before their declaration. Array parameters are passed by reference.
+    private Stmt procedureDeclaration() {
+        Token keyword = previous();
+        if (nesting > 0 || inProcedure) {
+            throw error(keyword, "Procedures must be declared at the top level.");
+        }
+        TokenType returnType = null;
+        if (match(TokenType.NUMERO, TokenType.TINUOD, TokenType.LETRA, TokenType.TIPIK)) {
+            returnType = previous().type;
+        }
+        Token name = consume(TokenType.IDENTIFIER, "Expect procedure name.");
+        consume(TokenType.LPAREN, "Expect '(' after procedure name.");
+
+        List<Token> params = new ArrayList<>();
+        List<TokenType> paramTypes = new ArrayList<>();
+        List<Boolean> arrayParams = new ArrayList<>();
+        if (!check(TokenType.RPAREN)) {
+            do {
+                if (!match(TokenType.NUMERO, TokenType.TINUOD, TokenType.LETRA, TokenType.TIPIK)) {
+                    throw error(peek(), "Expect parameter type.");
+                }
+                TokenType type = previous().type;
+                Token param = consume(TokenType.IDENTIFIER, "Expect parameter name.");
+                boolean array = false;
+                if (match(TokenType.LBRACKET)) {
+                    consume(TokenType.RBRACKET, "Expect ']' after '[' of an array parameter.");
+                    array = true;
+                }
+                params.add(param);
+                paramTypes.add(type);
+                arrayParams.add(array);
+            } while (match(TokenType.COMMA));
+        }
+        consume(TokenType.RPAREN, "Expect ')' after parameters.");
+
+        int bodyLine = peek().line;
+        consume(TokenType.PUNDOK, "Expect PUNDOK after the parameters of '" + name.lexeme + "'.");
+        consume(TokenType.LBRACE, "Expect '{' after PUNDOK.");
+        List<Stmt> statements;
+        inProcedure = true;
+        try {
+            statements = pundokStatements();
+        } finally {
+            inProcedure = false;
+        }
+        Stmt.Block body = (Stmt.Block) located(new Stmt.Block(statements, true), bodyLine);
+        printDebug("DEBUG: Declared procedure " + name.lexeme + " with " + params.size() + " parameters");
+        return new Stmt.Procedure(name, returnType, params, paramTypes, arrayParams, body);
+    }
+
+    private Stmt returnStatement() {
+        Token keyword = previous();
+        if (!inProcedure) {
+            throw error(keyword, "IULI outside a procedure.");
+        }
+        if (parallelDepth > 0) {
+            throw error(keyword, "IULI is not allowed in a DUNGAN loop.");
+        }
+        // Statements are line oriented, so a returned value starts on the line of IULI.
+        Expr value = null;
+        if (peek().line == keyword.line && !check(TokenType.RBRACE) && !isAtEnd()) {
+            value = expression();
+        }
+        return new Stmt.Return(keyword, value);
+    }
+
+    // Records the line a statement starts on, unless a more precise one was already set
+    private Stmt located(Stmt stmt, int line) {
+        if (stmt != null && stmt.line == 0) {
+            stmt.line = line;
+            statementsParsed++;
+        }
+        return stmt;
     }
 
     // Add helper method to peek at the next token
@@ -267,7 +454,7 @@ public class Parser {
         do {
             // Ensure next token is IDENTIFIER
             if (check(TokenType.ASSIGN)) {
-                throw new Error("Expected variable name after comma");
+                throw error(peek(), "Expected variable name after comma");
             }
 
             Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
@@ -279,9 +466,23 @@ public class Parser {
 //            if (KEYWORDS.contains(name)) {
 //                throw new RuntimeException("Cannot use keyword '" + name.lexeme + "' as a variable name.");
 //            }
-            if (type != null) {
-                variableTypes.put(name.lexeme, type);
-                printDebug("DEBUG: Registered variable " + name.lexeme + " with type " + type);
+
+            // An array: MUGNA NUMERO xs[n]. Its elements start at the type's default value.
+            if (match(TokenType.LBRACKET)) {
+                if (type == null) {
+                    throw error(name, "Array declaration needs a type.");
+                }
+                Expr size = expression();
+                consume(TokenType.RBRACKET, "Expect ']' after array size.");
+                if (check(TokenType.ASSIGN)) {
+                    throw error(peek(), "Array declarations take no initializer.");
+                }
+                Stmt.Var declaration = new Stmt.Var(name, null);
+                declaration.type = type;
+                declaration.size = size;
+                declarations.add(located(declaration, name.line));
+                printDebug("DEBUG: Declared " + type + " array " + name.lexeme);
+                continue;
             }
 
             // Handle the initializer
@@ -289,35 +490,35 @@ public class Parser {
             if (match(TokenType.ASSIGN)) {
                 printDebug("DEBUG: Found assignment operator");
                 if (check(TokenType.COMMA) || check(TokenType.EOF)) {
-                    throw new Error("Missing value after '='");
+                    throw error(peek(), "Missing value after '='");
                 }
                 initializer = expression();
                 printDebug("DEBUG: Parsed initializer: " + initializer);
 
                 // Perform type checking
-                if (initializer instanceof Expr.Literal) {
+                if (type != null && initializer instanceof Expr.Literal) {
                     Object value = ((Expr.Literal) initializer).value;
 
                     switch (type) {
                         case LETRA:
                             if (!(value instanceof Character)) {
-                                throw new Error("LETRA can only be assigned a character");
+                                throw error(name, "LETRA can only be assigned a character");
                             }
                             break;
                         case NUMERO:
                         case TIPIK:
                             if (!(value instanceof Double)) {
-                                throw new Error("NUMERO or TIPIK can only be assigned a number.");
+                                throw error(name, "NUMERO or TIPIK can only be assigned a number.");
                             }
                             break;
                         case TINUOD:
                             if (!(value instanceof String && (value.equals("OO") || value.equals("DILI")))) {
-                                throw new Error("TINUOD must be 'OO' or 'DILI'.");
+                                throw error(name, "TINUOD must be 'OO' or 'DILI'.");
                             }
                             break;
                     }
                 } else {
-                    printDebug("WARNING: Initializer is not a literal; type-checking skipped.");
+                    printDebug("DEBUG: Initializer is not a literal; type-checking deferred to TypeChecker.");
                 }
             } else {
                 // Initialize with default value based on type
@@ -333,11 +534,13 @@ public class Parser {
                 }
             }
 
-            declarations.add(new Stmt.Var(name, initializer));
+            Stmt.Var declaration = new Stmt.Var(name, initializer);
+            declaration.type = type;
+            declarations.add(located(declaration, name.line));
         } while (match(TokenType.COMMA));
 
         if (previous().type == TokenType.COMMA) {
-            throw new Error("Trailing comma without a following variable");
+            throw error(previous(), "Trailing comma without a following variable");
         }
 
         if (declarations.size() == 1) {
@@ -376,7 +579,11 @@ public class Parser {
                 Token name = ((Expr.Variable)expr).name;
                 return new Expr.Assign(name, value);
             }
-            throw new RuntimeException("Invalid assignment target at token: " + peek());
+            if (expr instanceof Expr.Index) {
+                Expr.Index element = (Expr.Index)expr;
+                return new Expr.IndexAssign(element.name, element.index, value);
+            }
+            throw error(equals, "Invalid assignment target.");
         }
         return expr;
     }
@@ -494,6 +701,23 @@ public class Parser {
                         new Expr.Literal(1.0)
                 ));
             }
+            if (match(TokenType.LBRACKET)) {
+                Expr index = expression();
+                consume(TokenType.RBRACKET, "Expect ']' after index.");
+                return new Expr.Index(name, index);
+            }
+            // A call's '(' is on the same line as the name; one on the next line starts a new statement.
+            if (check(TokenType.LPAREN) && peek().line == name.line) {
+                advance();
+                List<Expr> arguments = new ArrayList<>();
+                if (!check(TokenType.RPAREN)) {
+                    do {
+                        arguments.add(expression());
+                    } while (match(TokenType.COMMA));
+                }
+                consume(TokenType.RPAREN, "Expect ')' after arguments.");
+                return new Expr.Call(name, arguments);
+            }
             return new Expr.Variable(name);
         }
         if (match(TokenType.LPAREN)) {
@@ -504,7 +728,7 @@ public class Parser {
             return new Expr.Grouping(expr);
         }
        printDebug("DEBUG Unexpected token in primary: " + peek());
-        throw new RuntimeException("Expect expression at token: " + peek().type + " lexeme: " + peek().lexeme);
+        throw error(peek(), "Expect expression.");
     }
 
     private boolean match(TokenType... types) {
@@ -541,21 +765,33 @@ public class Parser {
 
     private Token consume(TokenType type, String message) {
         if (check(type)) return advance();
-        throw new Error(message);
+        throw error(peek(), message);
     }
 
-    private void synchronize() {
-        advance();
-        while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) return;
+    private BisayaError error(Token token, String message) {
+        return diagnostics.report(BisayaError.syntax(token, message));
+    }
+
+    // Skips the rest of the statement that started at token index start. Statements are
+    // line oriented, so this stops at the next line or the next statement keyword, and never
+    // consumes the '}' or KATAPUSAN that closes the enclosing block.
+    private void synchronize(int start) {
+        int line = tokens.get(start).line;
+        if (current == start) advance();
+        while (!isAtEnd() && peek().line <= line) {
             switch (peek().type) {
                 case SUGOD:
                 case KATAPUSAN:
                 case MUGNA:
                 case IPAKITA:
+                case DAWAT:
                 case KUNG:
                 case PUNDOK:
                 case ALANG_SA:
+                case BUHAT:
+                case IULI:
+                case DUNGAN:
+                case RBRACE:
                     return;
             }
             advance();
@@ -572,6 +808,9 @@ public class Parser {
             R visitBinaryExpr(Binary expr);
             R visitVariableExpr(Variable expr);
             R visitAssignExpr(Assign expr);
+            R visitIndexExpr(Index expr);
+            R visitIndexAssignExpr(IndexAssign expr);
+            R visitCallExpr(Call expr);
         }
 
         class Literal implements Expr {
@@ -619,6 +858,10 @@ public class Parser {
             public final Expr left;
             public final Token operator;
             public final Expr right;
+            // Rewritten in place by the interpreter from the operand types it observes.
+            public Specialization specialization = Specialization.UNINITIALIZED;
+            // Cache id when the value is the same on every iteration of a loop, or -1; set by LoopOptimizer.
+            public int invariant = -1;
 
             public Binary(Expr left, Token operator, Expr right) {
                 this.left = left;
@@ -626,6 +869,15 @@ public class Parser {
                 this.right = right;
             }
 
+            public enum Specialization {
+                UNINITIALIZED, // Not executed yet
+                NUMBER,        // Both operands Double
+                TYPED_NUMBER,  // Both operands proven Double by the TypeChecker, no guard needed
+                CHARACTER,     // Both operands Character (== and <>)
+                STRING,        // String concatenation
+                GENERIC        // Types changed, always take the generic path
+            }
+
             @Override
             public <R> R accept(Visitor<R> visitor) {
                 return visitor.visitBinaryExpr(this);
@@ -634,6 +886,9 @@ public class Parser {
 
         class Variable implements Expr {
             public final Token name;
+            public int slot = -1; // Assigned by the Resolver
+            public TokenType type; // Declared type of the binding, null if untyped; set by the Resolver
+            public boolean array; // Whether the binding is an array; set by the Resolver
 
             public Variable(Token name) {
                 this.name = name;
@@ -648,6 +903,9 @@ public class Parser {
         class Assign implements Expr {
             public final Token name;
             public final Expr value;
+            public int slot = -1; // Assigned by the Resolver
+            public TokenType type; // Declared type of the binding, null if untyped; set by the Resolver
+            public boolean array; // Whether the binding is an array; set by the Resolver
 
             public Assign(Token name, Expr value) {
                 this.name = name;
@@ -659,12 +917,78 @@ public class Parser {
                 return visitor.visitAssignExpr(this);
             }
         }
+
+        class Index implements Expr {
+            public final Token name;
+            public final Expr index;
+            public int slot = -1; // Assigned by the Resolver
+            public TokenType type; // Declared type of the binding, null if untyped; set by the Resolver
+            public boolean array; // Whether the binding is an array; set by the Resolver
+            // Counted loop that checks this access on entry, or -1; set by BoundsCheckHoisting.
+            public int checkedByLoop = -1;
+
+            public Index(Token name, Expr index) {
+                this.name = name;
+                this.index = index;
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visitIndexExpr(this);
+            }
+        }
+
+        class IndexAssign implements Expr {
+            public final Token name;
+            public final Expr index;
+            public final Expr value;
+            public int slot = -1; // Assigned by the Resolver
+            public TokenType type; // Declared type of the binding, null if untyped; set by the Resolver
+            public boolean array; // Whether the binding is an array; set by the Resolver
+            // Counted loop that checks this access on entry, or -1; set by BoundsCheckHoisting.
+            public int checkedByLoop = -1;
+
+            public IndexAssign(Token name, Expr index, Expr value) {
+                this.name = name;
+                this.index = index;
+                this.value = value;
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visitIndexAssignExpr(this);
+            }
+        }
+
+        class Call implements Expr {
+            public final Token name;
+            public final List<Expr> arguments;
+            // Procedure this call site ran last time: the interpreter's monomorphic inline cache.
+            public Stmt.Procedure target;
+            // Set by the TypeChecker when the name is a host function rather than a procedure.
+            public HostFunctions.Function host;
+
+            public Call(Token name, List<Expr> arguments) {
+                this.name = name;
+                this.arguments = arguments;
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visitCallExpr(this);
+            }
+        }
     }
 
-    public interface Stmt {
-        <R> R accept(Visitor<R> visitor);
+    public abstract static class Stmt {
+        public int line; // Source line the statement starts on
+        public int id = -1; // Dense statement number, assigned by Coverage
+        // The statement as closures over the running Interpreter, or null; set by ClosureCompiler.
+        public Consumer<Interpreter> compiled;
 
-        interface Visitor<R> {
+        public abstract <R> R accept(Visitor<R> visitor);
+
+        public interface Visitor<R> {
             R visitExpressionStmt(Expression stmt);
             R visitPrintStmt(Print stmt);
             R visitVarStmt(Var stmt);
@@ -672,9 +996,12 @@ public class Parser {
             R visitIfStmt(If stmt);
             R visitWhileStmt(While stmt);
             R visitInputStmt(Input stmt);
+            R visitProcedureStmt(Procedure stmt);
+            R visitReturnStmt(Return stmt);
+            R visitParallelStmt(Parallel stmt);
         }
 
-        class Expression implements Stmt {
+        public static class Expression extends Stmt {
             public final Expr expression;
 
             public Expression(Expr expression) {
@@ -687,7 +1014,7 @@ public class Parser {
             }
         }
 
-        class Print implements Stmt {
+        public static class Print extends Stmt {
             public final List<Expr> expressions;
 
             public Print(List<Expr> expressions) {
@@ -700,9 +1027,12 @@ public class Parser {
             }
         }
 
-        class Var implements Stmt {
+        public static class Var extends Stmt {
             public final Token name;
             public final Expr initializer;
+            public TokenType type; // Declared type, or null for an untyped MUGNA
+            public Expr size; // Element count of an array declaration, null for a scalar
+            public int slot = -1; // Assigned by the Resolver
 
             public Var(Token name, Expr initializer) {
                 this.name = name;
@@ -715,11 +1045,18 @@ public class Parser {
             }
         }
 
-        class Block implements Stmt {
+        public static class Block extends Stmt {
             public final List<Stmt> statements;
+            // PUNDOK blocks open a lexical scope; blocks synthesized by the parser do not.
+            public final boolean scoped;
 
             public Block(List<Stmt> statements) {
+                this(statements, false);
+            }
+
+            public Block(List<Stmt> statements, boolean scoped) {
                 this.statements = statements;
+                this.scoped = scoped;
             }
 
             @Override
@@ -728,10 +1065,13 @@ public class Parser {
             }
         }
 
-        class If implements Stmt {
+        public static class If extends Stmt {
             public final Expr condition;
             public final Stmt thenBranch;
             public final Stmt elseBranch;
+            // Times each branch ran in the runs a NodeProfile recorded, and in this one while recording.
+            public long thenRuns;
+            public long elseRuns;
 
             public If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
                 this.condition = condition;
@@ -745,8 +1085,11 @@ public class Parser {
             }
         }
 
-        class Input implements Stmt {
+        public static class Input extends Stmt {
             public final List<Token> variables;
+            public int[] slots; // Assigned by the Resolver
+            public TokenType[] types; // Declared types of the variables, as Expr.Variable.type
+            public boolean[] arrays;
 
             public Input(List<Token> variables) {
                 this.variables = variables;
@@ -758,9 +1101,64 @@ public class Parser {
             }
         }
 
-        class While implements Stmt {
+        public static class Procedure extends Stmt {
+            public final Token name;
+            public final TokenType returnType; // null for a procedure that returns nothing
+            public final List<Token> params;
+            public final List<TokenType> paramTypes;
+            public final List<Boolean> arrayParams;
+            public final Block body;
+            public int frameSize; // Parameters plus block locals; set by the Resolver
+            // Set once a later declaration of the same name takes over, invalidating cached call sites.
+            public boolean replaced;
+
+            public Procedure(Token name, TokenType returnType, List<Token> params, List<TokenType> paramTypes,
+                             List<Boolean> arrayParams, Block body) {
+                this.name = name;
+                this.returnType = returnType;
+                this.params = params;
+                this.paramTypes = paramTypes;
+                this.arrayParams = arrayParams;
+                this.body = body;
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visitProcedureStmt(this);
+            }
+        }
+
+        public static class Return extends Stmt {
+            public final Token keyword;
+            public final Expr value; // null for a bare IULI
+
+            public Return(Token keyword, Expr value) {
+                this.keyword = keyword;
+                this.value = value;
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visitReturnStmt(this);
+            }
+        }
+
+        public static class While extends Stmt {
             public final Expr condition;
             public final Stmt body;
+            // Bounds checks hoisted to loop entry, or null; set by BoundsCheckHoisting.
+            public BoundsCheckHoisting.CountedLoop counted;
+            // Expressions whose values the loop computes once per entry, or null; set by LoopOptimizer.
+            public LoopOptimizer.Hoisted hoisted;
+            // How many times the body runs when that is known and small, or -1; set by LoopOptimizer.
+            public int unrolledTrips = -1;
+            // How to split the loop across threads, or null; set by AutoParallelizer.
+            public AutoParallelizer.Plan parallel;
+            // The condition as a closure, or null; set by ClosureCompiler.
+            public Predicate<Interpreter> compiledCondition;
+            // Times the loop was entered and its body ran, as for If.thenRuns.
+            public long entries;
+            public long trips;
 
             public While(Expr condition, Stmt body) {
                 this.condition = condition;
@@ -772,5 +1170,40 @@ public class Parser {
                 return visitor.visitWhileStmt(this);
             }
         }
+
+        // DUNGAN ALANG SA: a counted loop whose iterations are split across threads.
+        public static class Parallel extends Stmt {
+            // How each thread's copy of a reduction variable starts, and how the copies are combined.
+            public enum Reduction { SUMA, IHAP, GAMAY, DAKO }
+
+            public final Token keyword;
+            public final Expr.Variable counter;
+            public final Expr start;
+            public final Expr bound;
+            public final boolean inclusive; // i <= bound rather than i < bound
+            public final List<Reduction> operators;
+            public final List<Expr.Variable> reductions;
+            public final Block body;
+            // Arrays from outside the body that it writes, and the ones it only reads; set by the TypeChecker.
+            public int[] writtenArrays = new int[0];
+            public int[] readArrays = new int[0];
+
+            public Parallel(Token keyword, Expr.Variable counter, Expr start, Expr bound, boolean inclusive,
+                            List<Reduction> operators, List<Expr.Variable> reductions, Block body) {
+                this.keyword = keyword;
+                this.counter = counter;
+                this.start = start;
+                this.bound = bound;
+                this.inclusive = inclusive;
+                this.operators = operators;
+                this.reductions = reductions;
+                this.body = body;
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visitParallelStmt(this);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,230 @@
+package Interpreter;
+
+import java.util.*;
+
+import static Interpreter.BisayaMain.printDebug;
+
+// Runs the part of a program that does not depend on its input ahead of time. Runs after
+// Interpreter.prepare, on a copy of the prepared interpreter.
+//
+// The prefix is made of the statements, from the first, that never read DAWAT and never
+// call a host function, counting the bodies of the procedures they call; anything else
+// may see something different on every run. A block that is not input-free as a whole,
+// like the SUGOD block of most programs, is entered, and its statements are taken one by
+// one. The prefix runs under a step budget. What it leaves behind, the IPAKITA output and
+// the main program's variables, makes up the Residual together with the statements after
+// it, which Interpreter.interpret(Residual) carries on from. A statement that runs out of
+// steps or fails ends the prefix before it, so the error, or the endless loop, still
+// happens on the real run.
+public class PartialEvaluator {
+    // Statements the prefix may run; the budget is checked every few thousand of them.
+    public static final long DEFAULT_BUDGET = 1 << 20;
+
+    // A program with its first statements already run.
+    public static final class Residual {
+        public final int evaluated; // How many statements ran ahead, not counting the blocks entered
+        public final String output;
+        // What is left, in order: the statement the prefix stopped at, the rest of its
+        // block, the rest of the block around that, and so on. Blocks of the main program
+        // only group statements, so running these one after another is the same.
+        public final List<Parser.Stmt> statements;
+        private final Object[] variables;
+
+        Residual(int evaluated, String output, List<Parser.Stmt> statements, Object[] variables) {
+            this.evaluated = evaluated;
+            this.output = output;
+            this.statements = statements;
+            this.variables = variables;
+        }
+
+        // The variables the prefix left, with arrays copied, so each run starts from the same values.
+        Object[] variables() {
+            return copy(variables, variables.length);
+        }
+    }
+
+    private final Interpreter prepared;
+    // Whether procedures are input-free, as far as known.
+    private final Map<Parser.Stmt.Procedure, Boolean> procedures = new HashMap<>();
+    // Procedures reached by the procedure being checked, or null.
+    private Set<Parser.Stmt.Procedure> reached;
+
+    // The run of the prefix so far, and the statements it ran.
+    private final StringBuilder output = new StringBuilder();
+    private Interpreter run;
+    private final List<Parser.Stmt> ran = new ArrayList<>();
+    private boolean outOfSteps;
+
+    public PartialEvaluator(Interpreter prepared) {
+        this.prepared = prepared;
+    }
+
+    public Residual evaluate(List<Parser.Stmt> statements) {
+        return evaluate(statements, DEFAULT_BUDGET);
+    }
+
+    public Residual evaluate(List<Parser.Stmt> statements, long budget) {
+        output.setLength(0);
+        ran.clear();
+        outOfSteps = false;
+        run = fork(budget);
+        List<Parser.Stmt> rest = new ArrayList<>();
+        prefix(statements, rest);
+        printDebug("DEBUG: Evaluated " + ran.size() + " statements ahead of time, " + rest.size() + " left");
+        return new Residual(ran.size(), output.toString(), rest, copy(run.stack, run.sp));
+    }
+
+    // Runs statements until one that is not input-free or does not finish. Returns false
+    // when it stopped, having added what is left of statements to rest.
+    private boolean prefix(List<Parser.Stmt> statements, List<Parser.Stmt> rest) {
+        for (int i = 0; i < statements.size(); i++) {
+            Parser.Stmt stmt = statements.get(i);
+            if (!outOfSteps && inputFree(stmt) && run(stmt)) continue;
+            if (stmt instanceof Parser.Stmt.Block) {
+                if (prefix(((Parser.Stmt.Block) stmt).statements, rest)) continue;
+            } else {
+                rest.add(stmt);
+            }
+            rest.addAll(statements.subList(i + 1, statements.size()));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean run(Parser.Stmt stmt) {
+        try {
+            run.interpretPrepared(Collections.singletonList(stmt));
+            ran.add(stmt);
+            return true;
+        } catch (RuntimeException e) {
+            // The statement may have changed variables halfway; run the ones before it again,
+            // which are known to finish, with what is left of the budget.
+            printDebug("DEBUG: Partial evaluation stopped at line " + stmt.line + ": " + e);
+            outOfSteps = e instanceof Interpreter.OutOfSteps;
+            long budget = run.stepBudget;
+            output.setLength(0);
+            run = fork(Long.MAX_VALUE);
+            run.interpretPrepared(ran);
+            run.stepBudget = budget;
+            return false;
+        }
+    }
+
+    private Interpreter fork(long budget) {
+        Interpreter run = new Interpreter(prepared);
+        run.setOutput(output);
+        run.stepBudget = budget;
+        return run;
+    }
+
+    // Copies the first length values, and the arrays among them, keeping arrays that
+    // several variables share shared.
+    private static Object[] copy(Object[] values, int length) {
+        Object[] copy = Arrays.copyOf(values, length);
+        Map<Object, Object> arrays = new IdentityHashMap<>();
+        for (int i = 0; i < length; i++) {
+            Object value = copy[i];
+            if (value instanceof double[]) {
+                copy[i] = arrays.computeIfAbsent(value, array -> ((double[]) array).clone());
+            } else if (value instanceof char[]) {
+                copy[i] = arrays.computeIfAbsent(value, array -> ((char[]) array).clone());
+            } else if (value instanceof boolean[]) {
+                copy[i] = arrays.computeIfAbsent(value, array -> ((boolean[]) array).clone());
+            }
+        }
+        return copy;
+    }
+
+    private boolean inputFree(Parser.Stmt stmt) {
+        if (stmt instanceof Parser.Stmt.Expression) {
+            return inputFree(((Parser.Stmt.Expression) stmt).expression);
+        } else if (stmt instanceof Parser.Stmt.Print) {
+            return inputFree(((Parser.Stmt.Print) stmt).expressions);
+        } else if (stmt instanceof Parser.Stmt.Var) {
+            Parser.Stmt.Var var = (Parser.Stmt.Var) stmt;
+            return inputFree(var.initializer) && inputFree(var.size);
+        } else if (stmt instanceof Parser.Stmt.Block) {
+            for (Parser.Stmt statement : ((Parser.Stmt.Block) stmt).statements) {
+                if (!inputFree(statement)) return false;
+            }
+            return true;
+        } else if (stmt instanceof Parser.Stmt.If) {
+            Parser.Stmt.If ifStmt = (Parser.Stmt.If) stmt;
+            return inputFree(ifStmt.condition) && inputFree(ifStmt.thenBranch)
+                    && (ifStmt.elseBranch == null || inputFree(ifStmt.elseBranch));
+        } else if (stmt instanceof Parser.Stmt.Input) {
+            return false;
+        } else if (stmt instanceof Parser.Stmt.Procedure) {
+            // Declaring it runs nothing; its body counts where it is called.
+            return true;
+        } else if (stmt instanceof Parser.Stmt.Return) {
+            return inputFree(((Parser.Stmt.Return) stmt).value);
+        } else if (stmt instanceof Parser.Stmt.While) {
+            Parser.Stmt.While loop = (Parser.Stmt.While) stmt;
+            return inputFree(loop.condition) && inputFree(loop.body);
+        } else if (stmt instanceof Parser.Stmt.Parallel) {
+            Parser.Stmt.Parallel loop = (Parser.Stmt.Parallel) stmt;
+            return inputFree(loop.start) && inputFree(loop.bound) && inputFree(loop.body);
+        }
+        return false;
+    }
+
+    private boolean inputFree(List<Parser.Expr> exprs) {
+        for (Parser.Expr expr : exprs) {
+            if (!inputFree(expr)) return false;
+        }
+        return true;
+    }
+
+    // Null, for a missing initializer or value, reads nothing.
+    private boolean inputFree(Parser.Expr expr) {
+        if (expr == null || expr instanceof Parser.Expr.Literal || expr instanceof Parser.Expr.Variable) {
+            return true;
+        } else if (expr instanceof Parser.Expr.Grouping) {
+            return inputFree(((Parser.Expr.Grouping) expr).expression);
+        } else if (expr instanceof Parser.Expr.Unary) {
+            return inputFree(((Parser.Expr.Unary) expr).right);
+        } else if (expr instanceof Parser.Expr.Binary) {
+            Parser.Expr.Binary binary = (Parser.Expr.Binary) expr;
+            return inputFree(binary.left) && inputFree(binary.right);
+        } else if (expr instanceof Parser.Expr.Assign) {
+            return inputFree(((Parser.Expr.Assign) expr).value);
+        } else if (expr instanceof Parser.Expr.Index) {
+            return inputFree(((Parser.Expr.Index) expr).index);
+        } else if (expr instanceof Parser.Expr.IndexAssign) {
+            Parser.Expr.IndexAssign assign = (Parser.Expr.IndexAssign) expr;
+            return inputFree(assign.index) && inputFree(assign.value);
+        } else if (expr instanceof Parser.Expr.Call) {
+            Parser.Expr.Call call = (Parser.Expr.Call) expr;
+            // A host function may read the clock, a file or anything else.
+            if (call.host != null || !inputFree(call.arguments)) return false;
+            Parser.Stmt.Procedure procedure = prepared.getProcedure(call.name.lexeme);
+            return procedure != null && inputFree(procedure);
+        }
+        return false;
+    }
+
+    private boolean inputFree(Parser.Stmt.Procedure procedure) {
+        Boolean known = procedures.get(procedure);
+        if (known != null) return known;
+        // Within a check, a procedure reached again counts as input-free: if it is not,
+        // the check fails anyway.
+        if (reached != null) return !reached.add(procedure) || inputFree(procedure.body);
+        reached = new HashSet<>();
+        reached.add(procedure);
+        try {
+            boolean free = inputFree(procedure.body);
+            if (free) {
+                // Everything it reaches is input-free too.
+                for (Parser.Stmt.Procedure other : reached) {
+                    procedures.put(other, true);
+                }
+            } else {
+                procedures.put(procedure, false);
+            }
+            return free;
+        } finally {
+            reached = null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package Interpreter;
+
+import java.io.*;
+import java.util.*;
+
+// Interpreter used for --profile. It records a calling-context tree of statements:
+// one frame per distinct chain of enclosing statements, with an execution count and
+// inclusive time. The plain Interpreter never loads this class, so it pays nothing.
+public class ProfilingInterpreter extends Interpreter {
+    private final Frame root = new Frame(null);
+    private Frame current = root;
+
+    @Override
+    protected void execute(Parser.Stmt stmt) {
+        Frame parent = current;
+        Frame frame = parent.child(stmt);
+        current = frame;
+        long start = System.nanoTime();
+        try {
+            super.execute(stmt);
+        } finally {
+            frame.nanos += System.nanoTime() - start;
+            frame.count++;
+            current = parent;
+        }
+    }
+
+    // Hot spots by source line and ALANG SA loop, most expensive first.
+    public void writeReport(PrintStream out) {
+        Map<Integer, long[]> lines = new TreeMap<>();
+        Map<Parser.Stmt.While, long[]> loops = new LinkedHashMap<>();
+        collect(root, lines, loops);
+
+        List<Map.Entry<Integer, long[]>> hotLines = new ArrayList<>(lines.entrySet());
+        hotLines.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+
+        out.println("=== Bisaya++ profile: source lines by self time ===");
+        out.printf("%6s %12s %12s %12s%n", "LINE", "COUNT", "SELF(us)", "TOTAL(us)");
+        for (Map.Entry<Integer, long[]> entry : hotLines) {
+            long[] stats = entry.getValue();
+            out.printf("%6d %12d %12d %12d%n", entry.getKey(), stats[0], stats[1] / 1000, stats[2] / 1000);
+        }
+
+        out.println("=== ALANG SA loops ===");
+        out.printf("%6s %12s %12s %12s%n", "LINE", "ENTRIES", "ITERATIONS", "TOTAL(us)");
+        for (Map.Entry<Parser.Stmt.While, long[]> entry : loops.entrySet()) {
+            long[] stats = entry.getValue();
+            out.printf("%6d %12d %12d %12d%n", entry.getKey().line, stats[0], stats[1], stats[2] / 1000);
+        }
+    }
+
+    // One line per distinct statement stack, "frame;frame;frame <self microseconds>", the
+    // format flamegraph.pl and speedscope read.
+    public void writeCollapsedStacks(Writer out) throws IOException {
+        for (Frame child : root.children.values()) {
+            writeCollapsed(child, "", out);
+        }
+    }
+
+    private void writeCollapsed(Frame frame, String prefix, Writer out) throws IOException {
+        String label = label(frame.stmt);
+        String path = label == null ? prefix : (prefix.isEmpty() ? label : prefix + ";" + label);
+        long self = frame.selfNanos() / 1000;
+        if (label != null && self > 0) {
+            out.write(path + " " + self + "\n");
+        }
+        for (Frame child : frame.children.values()) {
+            writeCollapsed(child, path, out);
+        }
+    }
+
+    private void collect(Frame frame, Map<Integer, long[]> lines, Map<Parser.Stmt.While, long[]> loops) {
+        for (Frame child : frame.children.values()) {
+            long[] stats = lines.computeIfAbsent(child.stmt.line, line -> new long[3]);
+            stats[0] += child.count;
+            stats[1] += child.selfNanos();
+            // Nested frames on the same line (e.g. an ALANG SA and its desugared parts) only count once.
+            if (frame.stmt == null || frame.stmt.line != child.stmt.line) stats[2] += child.nanos;
+
+            if (child.stmt instanceof Parser.Stmt.While) {
+                Parser.Stmt.While loop = (Parser.Stmt.While) child.stmt;
+                long[] loopStats = loops.computeIfAbsent(loop, l -> new long[3]);
+                loopStats[0] += child.count;
+                Frame body = child.children.get(loop.body);
+                if (body != null) loopStats[1] += body.count;
+                loopStats[2] += child.nanos;
+            }
+            collect(child, lines, loops);
+        }
+    }
+
+    // Frame name in collapsed stacks; blocks the parser synthesized are left out.
+    private static String label(Parser.Stmt stmt) {
+        String kind;
+        if (stmt instanceof Parser.Stmt.Block) {
+            if (!((Parser.Stmt.Block) stmt).scoped) return null;
+            kind = "PUNDOK";
+        } else if (stmt instanceof Parser.Stmt.While) {
+            kind = "ALANG SA";
+        } else if (stmt instanceof Parser.Stmt.If) {
+            kind = "KUNG";
+        } else if (stmt instanceof Parser.Stmt.Print) {
+            kind = "IPAKITA";
+        } else if (stmt instanceof Parser.Stmt.Input) {
+            kind = "DAWAT";
+        } else if (stmt instanceof Parser.Stmt.Var) {
+            kind = "MUGNA";
+        } else {
+            kind = "expression";
+        }
+        return kind + " (line " + stmt.line + ")";
+    }
+
+    private static class Frame {
+        final Parser.Stmt stmt;
+        final Map<Parser.Stmt, Frame> children = new LinkedHashMap<>();
+        long count;
+        long nanos;
+
+        Frame(Parser.Stmt stmt) {
+            this.stmt = stmt;
+        }
+
+        Frame child(Parser.Stmt stmt) {
+            Frame frame = children.get(stmt);
+            if (frame == null) {
+                frame = new Frame(stmt);
+                children.put(stmt, frame);
+            }
+            return frame;
+        }
+
+        long selfNanos() {
+            long self = nanos;
+            for (Frame child : children.values()) self -= child.nanos;
+            return Math.max(self, 0);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package Interpreter;
+
+import java.io.*;
+import java.util.*;
+
+// Interactive prompt session. One Interpreter, with its global types and slot layout,
+// lasts for the whole session: each input is lexed, parsed, checked and resolved on its own
+// against what earlier inputs declared, and only its new statements run.
+//
+// An input continues over several lines while a PUNDOK{ or SUGOD is still open or the
+// statement is unfinished. A KUNG waits for an empty line, since KUNG DILI or KUNG WALA
+// may follow it. An empty line also ends an unfinished input, reporting its errors.
+public class Repl {
+    private final Scanner in;
+    private final PrintStream out;
+    private final LineTracker tracker;
+    private final Interpreter interpreter = new Interpreter();
+
+    public Repl(InputStream in, PrintStream out) {
+        this.in = new Scanner(in);
+        this.tracker = new LineTracker(out);
+        this.out = new PrintStream(tracker, true);
+        interpreter.setInput(this.in);
+        interpreter.setOutput(this.out);
+    }
+
+    public void run() {
+        out.println("Bisaya++ Interpreter");
+        out.println("Type 'exit' to quit");
+
+        StringBuilder input = new StringBuilder();
+        while (true) {
+            out.print(input.length() == 0 ? "> " : "... ");
+            if (!in.hasNextLine()) break;
+            String line = in.nextLine();
+            tracker.atLineStart = true; // The terminal echoed the user's newline
+            boolean blank = line.trim().isEmpty();
+            if (input.length() == 0) {
+                if (line.trim().equals("exit")) break;
+                if (blank) continue;
+            }
+            input.append(line).append('\n');
+            if (eval(input.toString(), blank)) {
+                input.setLength(0);
+                // IPAKITA does not end its own line, so keep the next prompt off its output.
+                if (!tracker.atLineStart) out.println();
+            }
+        }
+    }
+
+    // Runs one input. Returns false, running nothing, when the input is unfinished and
+    // more lines are needed; finished says no more lines will come.
+    public boolean eval(String source, boolean finished) {
+        Diagnostics diagnostics = new Diagnostics();
+        List<Token> tokens = new Lexer(source, diagnostics).scanTokens();
+        Parser parser = new Parser(tokens, diagnostics);
+        List<Parser.Stmt> statements = parser.parse();
+
+        if (!finished && (isOpen(tokens) || isIncomplete(diagnostics))) {
+            return false;
+        }
+        if (diagnostics.hasErrors()) {
+            diagnostics.print(out);
+            return true;
+        }
+
+        try {
+            interpreter.interpretIncremental(statements);
+        } catch (BisayaError e) {
+            // Statements that ran before the error keep their effects, as in a script.
+            out.println(e.getMessage());
+        } catch (RuntimeException e) {
+            // A bug in the interpreter itself; report it with its trace and keep the session.
+            out.println("Error: " + e.getMessage());
+            e.printStackTrace(out);
+        }
+        return true;
+    }
+
+    private static boolean isOpen(List<Token> tokens) {
+        int depth = 0;
+        for (Token token : tokens) {
+            switch (token.type) {
+                case LBRACE:
+                case SUGOD:
+                    depth++;
+                    break;
+                case RBRACE:
+                case KATAPUSAN:
+                    depth--;
+                    break;
+            }
+        }
+        return depth > 0 || tokens.get(0).type == TokenType.KUNG;
+    }
+
+    // Every error is about the input ending early, so further lines could complete it.
+    private static boolean isIncomplete(Diagnostics diagnostics) {
+        if (!diagnostics.hasErrors()) return false;
+        for (BisayaError error : diagnostics.getErrors()) {
+            if (!error.atEnd) return false;
+        }
+        return true;
+    }
+
+    // Remembers whether the last byte written ended a line.
+    private static class LineTracker extends FilterOutputStream {
+        boolean atLineStart = true;
+
+        LineTracker(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            atLineStart = b == '\n';
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) return;
+            out.write(bytes, offset, length);
+            atLineStart = bytes[offset + length - 1] == '\n';
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package Interpreter;
+
+import java.util.*;
+
+import static Interpreter.BisayaMain.printDebug;
+
+// Assigns every variable a fixed slot on the interpreter's value stack.
+// Globals (declared at the top level of SUGOD, or assigned without a MUGNA) occupy the
+// bottom of the stack. Variables declared inside a PUNDOK live above the globals only
+// while their block runs; sibling blocks reuse the same slots.
+// A procedure's parameters and locals live in its call frame instead. They get negative
+// slots, counted from the base of the running frame: -1 is the first parameter.
+//
+// Each variable reference also gets the declared type of the binding it resolves to, and
+// whether that is an array, which is what the TypeChecker checks it against. A name can
+// be a NUMERO parameter in one procedure and a LETRA local in a block elsewhere. Globals
+// have one slot, so all declarations of a global must agree on its type.
+public class Resolver implements Parser.Expr.Visitor<Void>, Parser.Stmt.Visitor<Void> {
+    // A declared name: its slot, declared type (null if untyped) and whether it is an array.
+    private static final class Binding {
+        final int slot;
+        final TokenType type;
+        final boolean array;
+
+        Binding(int slot, TokenType type, boolean array) {
+            this.slot = slot;
+            this.type = type;
+            this.array = array;
+        }
+    }
+
+    private final Map<String, Integer> globals = new LinkedHashMap<>();
+    // Globals declared with MUGNA, by name, with the line of the first declaration in place
+    // of the slot. Assigned-only globals are untyped.
+    private final Map<String, Binding> globalDeclarations = new HashMap<>();
+    private final Deque<Map<String, Binding>> scopes = new ArrayDeque<>();
+    private int nextLocal = 0;
+    private int maxLocals = 0;
+    // Resolving a procedure body, whose locals are frame slots that are never rebased.
+    private boolean inFrame = false;
+
+    // Nodes resolved to block-local slots, rebased above the globals once resolution ends.
+    private final List<Parser.Expr.Variable> localVariables = new ArrayList<>();
+    private final List<Parser.Expr.Assign> localAssigns = new ArrayList<>();
+    private final List<Parser.Expr.Index> localIndexes = new ArrayList<>();
+    private final List<Parser.Expr.IndexAssign> localIndexAssigns = new ArrayList<>();
+    private final List<Parser.Stmt.Var> localDeclarations = new ArrayList<>();
+    private final List<Parser.Stmt.Input> localInputs = new ArrayList<>();
+    private final List<Integer> localInputIndexes = new ArrayList<>();
+
+    // Resolves the statements against the globals already known from earlier calls and
+    // returns the stack size needed to run them. Throws, resolving nothing, when a global
+    // is declared with two different types.
+    public int resolve(List<Parser.Stmt> statements) {
+        declareGlobals(statements);
+        nextLocal = 0;
+        maxLocals = 0;
+        for (Parser.Stmt statement : statements) {
+            statement.accept(this);
+        }
+
+        int base = globals.size();
+        for (Parser.Expr.Variable expr : localVariables) expr.slot += base;
+        for (Parser.Expr.Assign expr : localAssigns) expr.slot += base;
+        for (Parser.Expr.Index expr : localIndexes) expr.slot += base;
+        for (Parser.Expr.IndexAssign expr : localIndexAssigns) expr.slot += base;
+        for (Parser.Stmt.Var stmt : localDeclarations) stmt.slot += base;
+        for (int i = 0; i < localInputs.size(); i++) localInputs.get(i).slots[localInputIndexes.get(i)] += base;
+        localVariables.clear();
+        localAssigns.clear();
+        localIndexes.clear();
+        localIndexAssigns.clear();
+        localDeclarations.clear();
+        localInputs.clear();
+        localInputIndexes.clear();
+
+        printDebug("DEBUG: Resolved " + base + " globals and " + maxLocals + " block-local slots");
+        return base + maxLocals;
+    }
+
+    public Map<String, Integer> getGlobals() {
+        return globals;
+    }
+
+    // Declared type of a global, or null when it is untyped or unknown.
+    public TokenType getGlobalType(String name) {
+        Binding declaration = globalDeclarations.get(name);
+        return declaration != null ? declaration.type : null;
+    }
+
+    // The line a global is first declared on, 0 for one that is only assigned.
+    public int getGlobalLine(String name) {
+        Binding declaration = globalDeclarations.get(name);
+        return declaration != null ? declaration.slot : 0;
+    }
+
+    public boolean isGlobalArray(String name) {
+        Binding declaration = globalDeclarations.get(name);
+        return declaration != null && declaration.array;
+    }
+
+    // Drops the globals from slot count up, which statements that then failed to check
+    // introduced, so a later input may declare them afresh.
+    public void forget(int count) {
+        Iterator<Map.Entry<String, Integer>> iterator = globals.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Integer> global = iterator.next();
+            if (global.getValue() >= count) {
+                globalDeclarations.remove(global.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    // Globals are declared by MUGNA at the top level, possibly inside the SUGOD block, and
+    // a procedure may use one declared further down; so their types are collected first.
+    private void declareGlobals(List<Parser.Stmt> statements) {
+        Map<String, Binding> declared = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        int firstErrorLine = collectGlobals(statements, declared, errors, 0);
+        if (!errors.isEmpty()) {
+            throw new BisayaError(firstErrorLine, String.join("\n", errors));
+        }
+        globalDeclarations.putAll(declared);
+    }
+
+    // Returns the line of the first error added.
+    private int collectGlobals(List<Parser.Stmt> statements, Map<String, Binding> declared, List<String> errors,
+                               int firstErrorLine) {
+        for (Parser.Stmt statement : statements) {
+            if (statement instanceof Parser.Stmt.Var) {
+                Parser.Stmt.Var stmt = (Parser.Stmt.Var) statement;
+                String name = stmt.name.lexeme;
+                Binding declaration = new Binding(stmt.name.line, stmt.type, stmt.size != null);
+                Binding previous = declared.get(name);
+                if (previous == null) previous = globalDeclarations.get(name);
+                if (previous == null) {
+                    declared.put(name, declaration);
+                } else if (previous.type != declaration.type || previous.array != declaration.array) {
+                    if (errors.isEmpty()) firstErrorLine = stmt.name.line;
+                    errors.add("[line " + stmt.name.line + "] Type error: Variable '" + name + "' is already declared as "
+                            + describe(previous) + ", not " + describe(declaration) + ".");
+                }
+            } else if (statement instanceof Parser.Stmt.Block && !((Parser.Stmt.Block) statement).scoped) {
+                firstErrorLine = collectGlobals(((Parser.Stmt.Block) statement).statements, declared, errors, firstErrorLine);
+            }
+        }
+        return firstErrorLine;
+    }
+
+    private static String describe(Binding declaration) {
+        if (declaration.type == null) return "untyped";
+        return declaration.array ? "a " + declaration.type + " array" : declaration.type.toString();
+    }
+
+    @Override
+    public Void visitLiteralExpr(Parser.Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Parser.Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Parser.Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Parser.Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Parser.Expr.Variable expr) {
+        Binding local = lookUpLocal(expr.name.lexeme);
+        Binding binding = local != null ? local : lookUpGlobal(expr.name.lexeme);
+        expr.slot = binding.slot;
+        expr.type = binding.type;
+        expr.array = binding.array;
+        if (local != null && !inFrame) localVariables.add(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Parser.Expr.Assign expr) {
+        resolve(expr.value);
+        Binding local = lookUpLocal(expr.name.lexeme);
+        Binding binding = local != null ? local : lookUpGlobal(expr.name.lexeme);
+        expr.slot = binding.slot;
+        expr.type = binding.type;
+        expr.array = binding.array;
+        if (local != null && !inFrame) localAssigns.add(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Parser.Expr.Index expr) {
+        resolve(expr.index);
+        Binding local = lookUpLocal(expr.name.lexeme);
+        Binding binding = local != null ? local : lookUpGlobal(expr.name.lexeme);
+        expr.slot = binding.slot;
+        expr.type = binding.type;
+        expr.array = binding.array;
+        if (local != null && !inFrame) localIndexes.add(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+        resolve(expr.index);
+        resolve(expr.value);
+        Binding local = lookUpLocal(expr.name.lexeme);
+        Binding binding = local != null ? local : lookUpGlobal(expr.name.lexeme);
+        expr.slot = binding.slot;
+        expr.type = binding.type;
+        expr.array = binding.array;
+        if (local != null && !inFrame) localIndexAssigns.add(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+        for (Parser.Expr expr : stmt.expressions) {
+            resolve(expr);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Parser.Stmt.Var stmt) {
+        // The initializer sees the enclosing binding, not the one being declared.
+        if (stmt.size != null) resolve(stmt.size);
+        if (stmt.initializer != null) resolve(stmt.initializer);
+
+        Map<String, Binding> scope = scopes.peek();
+        if (scope == null) {
+            stmt.slot = global(stmt.name.lexeme);
+            return null;
+        }
+        // Declaring the name again in the same block reuses its slot; what follows sees the new type.
+        Binding previous = scope.get(stmt.name.lexeme);
+        int slot = previous != null ? previous.slot : nextLocal();
+        scope.put(stmt.name.lexeme, new Binding(slot, stmt.type, stmt.size != null));
+        stmt.slot = slot;
+        if (!inFrame) localDeclarations.add(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        // The body sees globals, but not the locals around the declaration.
+        List<Map<String, Binding>> outerScopes = new ArrayList<>(scopes);
+        int outerNextLocal = nextLocal;
+        int outerMaxLocals = maxLocals;
+        boolean outerInFrame = inFrame;
+        scopes.clear();
+        nextLocal = 0;
+        maxLocals = 0;
+        inFrame = true;
+        try {
+            Map<String, Binding> params = new HashMap<>();
+            scopes.push(params);
+            for (int i = 0; i < stmt.params.size(); i++) {
+                params.put(stmt.params.get(i).lexeme, new Binding(nextLocal(), stmt.paramTypes.get(i), stmt.arrayParams.get(i)));
+            }
+            stmt.body.accept(this);
+            stmt.frameSize = maxLocals;
+        } finally {
+            scopes.clear();
+            for (int i = outerScopes.size() - 1; i >= 0; i--) scopes.push(outerScopes.get(i));
+            nextLocal = outerNextLocal;
+            maxLocals = outerMaxLocals;
+            inFrame = outerInFrame;
+        }
+        printDebug("DEBUG: Procedure " + stmt.name.lexeme + " needs a frame of " + stmt.frameSize + " slots");
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+        if (stmt.value != null) resolve(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Parser.Expr.Call expr) {
+        for (Parser.Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    // Takes the next block-local slot, or frame slot inside a procedure.
+    private int nextLocal() {
+        int local = nextLocal++;
+        maxLocals = Math.max(maxLocals, nextLocal);
+        return inFrame ? -1 - local : local;
+    }
+
+    @Override
+    public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+        if (!stmt.scoped) {
+            for (Parser.Stmt statement : stmt.statements) {
+                statement.accept(this);
+            }
+            return null;
+        }
+
+        int start = nextLocal;
+        scopes.push(new HashMap<>());
+        try {
+            for (Parser.Stmt statement : stmt.statements) {
+                statement.accept(this);
+            }
+        } finally {
+            scopes.pop();
+            nextLocal = start;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Parser.Stmt.If stmt) {
+        resolve(stmt.condition);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Parser.Stmt.While stmt) {
+        resolve(stmt.condition);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        resolve(stmt.start);
+        resolve(stmt.bound);
+        resolve(stmt.counter);
+        for (Parser.Expr.Variable reduction : stmt.reductions) {
+            resolve(reduction);
+        }
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Parser.Stmt.Input stmt) {
+        stmt.slots = new int[stmt.variables.size()];
+        stmt.types = new TokenType[stmt.slots.length];
+        stmt.arrays = new boolean[stmt.slots.length];
+        for (int i = 0; i < stmt.slots.length; i++) {
+            String name = stmt.variables.get(i).lexeme;
+            Binding local = lookUpLocal(name);
+            Binding binding = local != null ? local : lookUpGlobal(name);
+            stmt.slots[i] = binding.slot;
+            stmt.types[i] = binding.type;
+            stmt.arrays[i] = binding.array;
+            if (local != null && !inFrame) {
+                localInputs.add(stmt);
+                localInputIndexes.add(i);
+            }
+        }
+        return null;
+    }
+
+    private void resolve(Parser.Expr expr) {
+        expr.accept(this);
+    }
+
+    private Binding lookUpLocal(String name) {
+        for (Map<String, Binding> scope : scopes) {
+            Binding binding = scope.get(name);
+            if (binding != null) return binding;
+        }
+        return null;
+    }
+
+    private Binding lookUpGlobal(String name) {
+        Binding declaration = globalDeclarations.get(name);
+        return new Binding(global(name), declaration != null ? declaration.type : null, declaration != null && declaration.array);
+    }
+
+    private int global(String name) {
+        Integer slot = globals.get(name);
+        if (slot == null) {
+            slot = globals.size();
+            globals.put(name, slot);
+        }
+        return slot;
+    }
+}
@@ -4,7 +4,7 @@ public class Token {
     public final TokenType type;
     public final String lexeme;
     public final Object literal;
-    public final int line;
+    public int line; // Shifted in place when an edit above moves the token, see IncrementalParser
 
     public Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
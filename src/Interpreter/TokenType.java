@@ -4,7 +4,7 @@ public enum TokenType {
     // Keywords
     SUGOD, KATAPUSAN, MUGNA, NUMERO, LETRA, TINUOD, TIPIK,
     IPAKITA, DAWAT, KUNG, KUNG_WALA, KUNG_DILI, PUNDOK,
-    ALANG_SA, UG, O, DILI,
+    ALANG_SA, UG, O, DILI, BUHAT, IULI, DUNGAN,
 
     // Operators
     PLUS, MINUS, MULTIPLY, DIVIDE, MODULO,
@@ -17,6 +17,7 @@ public enum TokenType {
 
     // Special characters
     IDENTIFIER, COMMA, SEMICOLON, LPAREN, RPAREN,
+    LBRACKET, RBRACKET,
     LBRACE, RBRACE, CONCAT, NEWLINE, ESCAPE,
     COLON,
     EOF,
@@ -0,0 +1,587 @@
+package Interpreter;
+
+import java.util.*;
+
+import static Interpreter.BisayaMain.printDebug;
+
+// Static type inference over the whole program, run before execution, after the Resolver.
+// Types are the declaration keywords (NUMERO, TIPIK, LETRA, TINUOD) plus STRING for
+// text built by concatenation; null means the type is only known at runtime. A variable
+// has the type of the declaration the Resolver bound it to; an array has its element type.
+public class TypeChecker implements Parser.Expr.Visitor<TokenType>, Parser.Stmt.Visitor<Void> {
+    private final Map<String, Parser.Stmt.Procedure> procedures;
+    private final HostFunctions hostFunctions;
+    // Procedures declared by the statements being checked; added to procedures if they type check.
+    private final Map<String, Parser.Stmt.Procedure> declared = new LinkedHashMap<>();
+    private Parser.Stmt.Procedure currentProcedure;
+    // While checking the body of a DUNGAN loop, the procedure calls in it, also in inner loops.
+    private List<Parser.Expr.Call> parallelCalls;
+    private final List<String> errors = new ArrayList<>();
+    private final List<Parser.Expr.Binary> numberNodes = new ArrayList<>();
+    private boolean complete = true;
+    private int firstErrorLine;
+
+    public TypeChecker() {
+        this(new HashMap<>(), HostFunctions.DEFAULT);
+    }
+
+    // procedures is kept up to date with the declarations checked, so a REPL session can
+    // share it across inputs. Calls to names that are not procedures are linked to hostFunctions.
+    public TypeChecker(Map<String, Parser.Stmt.Procedure> procedures, HostFunctions hostFunctions) {
+        this.procedures = procedures;
+        this.hostFunctions = hostFunctions;
+    }
+
+    // Returns true when every expression has a static type, in which case numeric
+    // operations are marked so the interpreter can skip its runtime operand checks.
+    // Throws with all type errors found if the program is ill-typed.
+    public boolean check(List<Parser.Stmt> statements) {
+        declare(statements);
+        for (Parser.Stmt statement : statements) {
+            statement.accept(this);
+        }
+        if (!errors.isEmpty()) {
+            throw new BisayaError(firstErrorLine, String.join("\n", errors));
+        }
+        for (Parser.Stmt.Procedure procedure : declared.values()) {
+            Parser.Stmt.Procedure previous = procedures.put(procedure.name.lexeme, procedure);
+            if (previous != null && previous != procedure) previous.replaced = true;
+            procedure.replaced = false;
+        }
+        if (complete) {
+            for (Parser.Expr.Binary expr : numberNodes) {
+                expr.specialization = Parser.Expr.Binary.Specialization.TYPED_NUMBER;
+            }
+        }
+        printDebug("DEBUG: Type check " + (complete ? "complete" : "partial") + ", " + numberNodes.size() + " numeric nodes");
+        return complete;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    // Procedures can be called before their declaration, so they are all collected first.
+    // The parser only allows them at the top level, which may be inside the SUGOD block.
+    private void declare(List<Parser.Stmt> statements) {
+        for (Parser.Stmt statement : statements) {
+            if (statement instanceof Parser.Stmt.Procedure) {
+                Parser.Stmt.Procedure procedure = (Parser.Stmt.Procedure) statement;
+                if (declared.put(procedure.name.lexeme, procedure) != null) {
+                    error(procedure.name, "Procedure '" + procedure.name.lexeme + "' is already declared.");
+                }
+            } else if (statement instanceof Parser.Stmt.Block && !((Parser.Stmt.Block) statement).scoped) {
+                declare(((Parser.Stmt.Block) statement).statements);
+            }
+        }
+    }
+
+    private Parser.Stmt.Procedure procedure(String name) {
+        Parser.Stmt.Procedure procedure = declared.get(name);
+        return procedure != null ? procedure : procedures.get(name);
+    }
+
+    @Override
+    public TokenType visitLiteralExpr(Parser.Expr.Literal expr) {
+        TokenType type = literalType(expr.value);
+        return type != null ? type : unknown();
+    }
+
+    @Override
+    public TokenType visitGroupingExpr(Parser.Expr.Grouping expr) {
+        return infer(expr.expression);
+    }
+
+    @Override
+    public TokenType visitUnaryExpr(Parser.Expr.Unary expr) {
+        TokenType right = infer(expr.right);
+        switch (expr.operator.type) {
+            case MINUS:
+                if (right != null && !isNumeric(right)) {
+                    error(expr.operator, "Operand must be a number.");
+                }
+                return right;
+            case DILI:
+                return TokenType.TINUOD;
+        }
+        return unknown();
+    }
+
+    @Override
+    public TokenType visitBinaryExpr(Parser.Expr.Binary expr) {
+        TokenType left = infer(expr.left);
+        TokenType right = infer(expr.right);
+
+        switch (expr.operator.type) {
+            case CONCAT:
+                return TokenType.STRING;
+            case PLUS:
+                if (isText(left) || isText(right)) return TokenType.STRING;
+                if (left == null || right == null) return unknown();
+                if (left == TokenType.LETRA && right == TokenType.LETRA) return TokenType.STRING;
+                if (isNumeric(left) && isNumeric(right)) {
+                    numberNodes.add(expr);
+                    return widen(left, right);
+                }
+                error(expr.operator, "Operands must be numbers, strings, or characters.");
+                return unknown();
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+                if (checkNumberOperands(expr, left, right)) return widen(left, right);
+                return unknown();
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                checkNumberOperands(expr, left, right);
+                return TokenType.TINUOD;
+            case NOT_EQUAL:
+            case EQUAL:
+                if (expr.operator.type == TokenType.NOT_EQUAL
+                        && ((isNumeric(left) && right == TokenType.LETRA) || (left == TokenType.LETRA && isNumeric(right)))) {
+                    error(expr.operator, "Cannot compare number with character.");
+                }
+                if (isNumeric(left) && isNumeric(right)) numberNodes.add(expr);
+                return TokenType.TINUOD;
+            case UG:
+            case O:
+                return TokenType.TINUOD;
+        }
+        return unknown();
+    }
+
+    @Override
+    public TokenType visitVariableExpr(Parser.Expr.Variable expr) {
+        if (expr.array) {
+            error(expr.name, "Array '" + expr.name.lexeme + "' must be indexed.");
+            return unknown();
+        }
+        return expr.type != null ? expr.type : unknown();
+    }
+
+    @Override
+    public TokenType visitAssignExpr(Parser.Expr.Assign expr) {
+        TokenType value = infer(expr.value);
+        if (expr.array) {
+            error(expr.name, "Cannot assign to array '" + expr.name.lexeme + "'; assign to its elements.");
+            return unknown();
+        }
+        TokenType target = expr.type;
+        if (target == null) return unknown();
+        checkAssignable(expr.name, target, value);
+        return target;
+    }
+
+    @Override
+    public TokenType visitIndexExpr(Parser.Expr.Index expr) {
+        return element(expr.name, expr.index, expr.type, expr.array);
+    }
+
+    @Override
+    public TokenType visitIndexAssignExpr(Parser.Expr.IndexAssign expr) {
+        TokenType target = element(expr.name, expr.index, expr.type, expr.array);
+        TokenType value = infer(expr.value);
+        if (target == null) return unknown();
+        checkAssignable(expr.name, target, value);
+        return target;
+    }
+
+    // Element type of name[index], or null when it is only known at runtime. type and
+    // array describe the binding of name.
+    private TokenType element(Token name, Parser.Expr index, TokenType type, boolean array) {
+        TokenType indexType = infer(index);
+        if (indexType != null && !isNumeric(indexType)) {
+            error(name, "Array index must be a number.");
+        }
+        if (array) return type;
+        if (type != null) {
+            error(name, "'" + name.lexeme + "' is not an array.");
+        }
+        return unknown();
+    }
+
+    @Override
+    public TokenType visitCallExpr(Parser.Expr.Call expr) {
+        TokenType type = call(expr);
+        if (type == null && (procedure(expr.name.lexeme) != null || expr.host != null)) {
+            error(expr.name, "Procedure '" + expr.name.lexeme + "' returns no value.");
+        }
+        return type != null ? type : unknown();
+    }
+
+    // Checks the arguments and returns the procedure's return type, null if it has none.
+    // A name that is not a procedure is looked up among the host functions; a procedure
+    // declared under the same name takes over from it.
+    private TokenType call(Parser.Expr.Call expr) {
+        String name = expr.name.lexeme;
+        Parser.Stmt.Procedure procedure = procedure(name);
+        expr.host = procedure == null ? hostFunctions.get(name) : null;
+        List<TokenType> paramTypes = null;
+        List<Boolean> arrayParams = null;
+        if (procedure != null) {
+            paramTypes = procedure.paramTypes;
+            arrayParams = procedure.arrayParams;
+            // The threads of a DUNGAN loop each have their own copy of the globals, so what
+            // the procedure assigns would be lost, and share the arrays, which it could write
+            // anywhere. What it reads is checked against the loop's writes in visitParallelStmt.
+            if (parallelCalls != null) {
+                parallelCalls.add(expr);
+                Effects effects = new Effects(procedure);
+                if (effects.assigned != null) {
+                    error(expr.name, "Cannot call '" + name + "' in a DUNGAN loop; it assigns global '" + effects.assigned.lexeme + "'.");
+                } else if (effects.arrayWritten != null) {
+                    error(expr.name, "Cannot call '" + name + "' in a DUNGAN loop; it writes array '"
+                            + effects.arrayWritten.lexeme + "', which it does not declare.");
+                }
+            }
+        } else if (expr.host != null) {
+            paramTypes = expr.host.paramTypes;
+            arrayParams = expr.host.arrayParams;
+        } else {
+            error(expr.name, "Undefined procedure '" + name + "'.");
+        }
+        if (paramTypes != null && expr.arguments.size() != paramTypes.size()) {
+            error(expr.name, "Procedure '" + name + "' expects " + paramTypes.size()
+                    + (paramTypes.size() == 1 ? " argument" : " arguments") + ", got "
+                    + expr.arguments.size() + ".");
+        }
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            Parser.Expr argument = expr.arguments.get(i);
+            if (paramTypes == null || i >= paramTypes.size()) {
+                infer(argument);
+                continue;
+            }
+            TokenType parameter = paramTypes.get(i);
+            if (arrayParams.get(i)) {
+                // Arrays are passed by reference, so the element types must match both ways.
+                Parser.Expr.Variable array = argument instanceof Parser.Expr.Variable ? (Parser.Expr.Variable) argument : null;
+                if (array == null || !array.array) {
+                    error(expr.name, "Argument " + (i + 1) + " of '" + name + "' must be an array.");
+                } else if (!assignable(parameter, array.type) || !assignable(array.type, parameter)) {
+                    error(expr.name, "Argument " + (i + 1) + " of '" + name + "' must be a " + parameter + " array.");
+                }
+                continue;
+            }
+            TokenType type = infer(argument);
+            if (type != null && !assignable(parameter, type)) {
+                error(expr.name, "Argument " + (i + 1) + " of '" + name + "' must be " + parameter + ", got " + type + ".");
+            }
+        }
+        if (procedure != null) return procedure.returnType;
+        if (expr.host != null) return expr.host.returnType;
+        return unknown();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Parser.Stmt.Expression stmt) {
+        // A call statement may run a procedure that returns nothing.
+        if (stmt.expression instanceof Parser.Expr.Call) {
+            call((Parser.Expr.Call) stmt.expression);
+            return null;
+        }
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitProcedureStmt(Parser.Stmt.Procedure stmt) {
+        Parser.Stmt.Procedure outer = currentProcedure;
+        currentProcedure = stmt;
+        try {
+            stmt.body.accept(this);
+        } finally {
+            currentProcedure = outer;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Parser.Stmt.Return stmt) {
+        TokenType value = stmt.value != null ? infer(stmt.value) : null;
+        if (currentProcedure == null) return null;
+        String name = currentProcedure.name.lexeme;
+        TokenType target = currentProcedure.returnType;
+        if (stmt.value == null) {
+            if (target != null) error(stmt.keyword, "Procedure '" + name + "' must return a " + target + " value.");
+        } else if (target == null) {
+            error(stmt.keyword, "Procedure '" + name + "' returns no value.");
+        } else if (value != null && !assignable(target, value)) {
+            error(stmt.keyword, "Cannot return " + value + " value from " + target + " procedure '" + name + "'.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Parser.Stmt.Print stmt) {
+        for (Parser.Expr expr : stmt.expressions) {
+            infer(expr);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Parser.Stmt.Var stmt) {
+        if (stmt.size != null) {
+            TokenType size = infer(stmt.size);
+            if (size != null && !isNumeric(size)) {
+                error(stmt.name, "Array size must be a number.");
+            }
+            return null;
+        }
+        TokenType target = stmt.type;
+        if (target == null) {
+            complete = false;
+            if (stmt.initializer != null) infer(stmt.initializer);
+            return null;
+        }
+        if (stmt.initializer == null) return null;
+        // The parser gives LETRA variables an empty string as their default value.
+        if (target == TokenType.LETRA && stmt.initializer instanceof Parser.Expr.Literal
+                && "".equals(((Parser.Expr.Literal) stmt.initializer).value)) {
+            return null;
+        }
+        checkAssignable(stmt.name, target, infer(stmt.initializer));
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Parser.Stmt.Block stmt) {
+        for (Parser.Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Parser.Stmt.If stmt) {
+        infer(stmt.condition);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Parser.Stmt.While stmt) {
+        infer(stmt.condition);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Parser.Stmt.Parallel stmt) {
+        for (Parser.Expr expr : Arrays.asList(stmt.counter, stmt.start, stmt.bound)) {
+            TokenType type = infer(expr);
+            if (type != null && !isNumeric(type)) {
+                error(stmt.keyword, "DUNGAN loop counter and range must be numbers.");
+                break;
+            }
+        }
+        for (Parser.Expr.Variable reduction : stmt.reductions) {
+            String name = reduction.name.lexeme;
+            if (reduction.array || !isNumeric(reduction.type)) {
+                error(reduction.name, "Reduction variable '" + name + "' must be a NUMERO or TIPIK variable.");
+            }
+        }
+        List<Parser.Expr.Call> outerCalls = parallelCalls;
+        parallelCalls = new ArrayList<>();
+        List<Parser.Expr.Call> calls = parallelCalls;
+        try {
+            stmt.body.accept(this);
+        } finally {
+            parallelCalls = outerCalls;
+        }
+        if (outerCalls != null) outerCalls.addAll(calls);
+        // After the body, which links its host function calls.
+        AutoParallelizer.checkParallel(stmt, this::error);
+        Set<Integer> written = new HashSet<>();
+        for (int slot : stmt.writtenArrays) written.add(slot);
+        for (Parser.Expr.Call call : calls) {
+            for (Map.Entry<Integer, Token> read : new Effects(procedure(call.name.lexeme)).arraysRead.entrySet()) {
+                if (written.contains(read.getKey())) {
+                    error(call.name, "Cannot call '" + call.name.lexeme + "' in a DUNGAN loop; it reads '"
+                            + read.getValue().lexeme + "', which the loop writes.");
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    // What a procedure does outside its own frame, itself or in the procedures it calls:
+    // the first global it assigns, the first array it writes without declaring it, and the
+    // global arrays it reads. Within a procedure body every other variable has a slot in
+    // the frame, below zero; arrays it did not declare are its parameters or globals.
+    private final class Effects {
+        Token assigned;
+        Token arrayWritten;
+        final Map<Integer, Token> arraysRead = new HashMap<>();
+        private final Set<Parser.Stmt.Procedure> seen = new HashSet<>();
+
+        Effects(Parser.Stmt.Procedure procedure) {
+            walk(procedure);
+        }
+
+        private void walk(Parser.Stmt.Procedure procedure) {
+            if (procedure != null && seen.add(procedure)) statement(procedure.body, new HashSet<>());
+        }
+
+        private void assigned(Token name) {
+            if (assigned == null) assigned = name;
+        }
+
+        private void statement(Parser.Stmt stmt, Set<Integer> arrays) {
+            if (stmt instanceof Parser.Stmt.Expression) {
+                expression(((Parser.Stmt.Expression) stmt).expression, arrays);
+            } else if (stmt instanceof Parser.Stmt.Print) {
+                for (Parser.Expr expr : ((Parser.Stmt.Print) stmt).expressions) {
+                    expression(expr, arrays);
+                }
+            } else if (stmt instanceof Parser.Stmt.Var) {
+                Parser.Stmt.Var var = (Parser.Stmt.Var) stmt;
+                expression(var.initializer, arrays);
+                expression(var.size, arrays);
+                if (var.size != null) arrays.add(var.slot);
+            } else if (stmt instanceof Parser.Stmt.Block) {
+                for (Parser.Stmt statement : ((Parser.Stmt.Block) stmt).statements) {
+                    statement(statement, arrays);
+                }
+            } else if (stmt instanceof Parser.Stmt.If) {
+                Parser.Stmt.If branch = (Parser.Stmt.If) stmt;
+                expression(branch.condition, arrays);
+                statement(branch.thenBranch, arrays);
+                if (branch.elseBranch != null) statement(branch.elseBranch, arrays);
+            } else if (stmt instanceof Parser.Stmt.Input) {
+                Parser.Stmt.Input input = (Parser.Stmt.Input) stmt;
+                for (int i = 0; i < input.variables.size(); i++) {
+                    if (input.slots[i] >= 0) assigned(input.variables.get(i));
+                }
+            } else if (stmt instanceof Parser.Stmt.Return) {
+                expression(((Parser.Stmt.Return) stmt).value, arrays);
+            } else if (stmt instanceof Parser.Stmt.While) {
+                Parser.Stmt.While loop = (Parser.Stmt.While) stmt;
+                expression(loop.condition, arrays);
+                statement(loop.body, arrays);
+            } else if (stmt instanceof Parser.Stmt.Parallel) {
+                Parser.Stmt.Parallel loop = (Parser.Stmt.Parallel) stmt;
+                if (loop.counter.slot >= 0) assigned(loop.counter.name);
+                for (Parser.Expr.Variable reduction : loop.reductions) {
+                    if (reduction.slot >= 0) assigned(reduction.name);
+                }
+                expression(loop.start, arrays);
+                expression(loop.bound, arrays);
+                statement(loop.body, arrays);
+            }
+        }
+
+        // Null, for a missing initializer or value, does nothing.
+        private void expression(Parser.Expr expr, Set<Integer> arrays) {
+            if (expr instanceof Parser.Expr.Assign) {
+                Parser.Expr.Assign assign = (Parser.Expr.Assign) expr;
+                if (assign.slot >= 0) assigned(assign.name);
+                expression(assign.value, arrays);
+            } else if (expr instanceof Parser.Expr.Binary) {
+                expression(((Parser.Expr.Binary) expr).left, arrays);
+                expression(((Parser.Expr.Binary) expr).right, arrays);
+            } else if (expr instanceof Parser.Expr.Grouping) {
+                expression(((Parser.Expr.Grouping) expr).expression, arrays);
+            } else if (expr instanceof Parser.Expr.Unary) {
+                expression(((Parser.Expr.Unary) expr).right, arrays);
+            } else if (expr instanceof Parser.Expr.Index) {
+                Parser.Expr.Index index = (Parser.Expr.Index) expr;
+                if (index.slot >= 0) arraysRead.putIfAbsent(index.slot, index.name);
+                expression(index.index, arrays);
+            } else if (expr instanceof Parser.Expr.IndexAssign) {
+                Parser.Expr.IndexAssign index = (Parser.Expr.IndexAssign) expr;
+                if (arrayWritten == null && !arrays.contains(index.slot)) arrayWritten = index.name;
+                expression(index.index, arrays);
+                expression(index.value, arrays);
+            } else if (expr instanceof Parser.Expr.Call) {
+                Parser.Expr.Call call = (Parser.Expr.Call) expr;
+                Parser.Stmt.Procedure callee = procedure(call.name.lexeme);
+                for (Parser.Expr argument : call.arguments) {
+                    expression(argument, arrays);
+                    // A global array passed on may be read by the callee at any element.
+                    if (callee != null && argument instanceof Parser.Expr.Variable && ((Parser.Expr.Variable) argument).array
+                            && ((Parser.Expr.Variable) argument).slot >= 0) {
+                        arraysRead.putIfAbsent(((Parser.Expr.Variable) argument).slot, ((Parser.Expr.Variable) argument).name);
+                    }
+                }
+                walk(callee);
+            }
+        }
+    }
+
+    @Override
+    public Void visitInputStmt(Parser.Stmt.Input stmt) {
+        for (int i = 0; i < stmt.variables.size(); i++) {
+            Token variable = stmt.variables.get(i);
+            if (stmt.arrays[i]) {
+                error(variable, "Cannot read input into array '" + variable.lexeme + "'.");
+            } else if (stmt.types[i] == null) {
+                // Untyped DAWAT targets receive the raw input string.
+                complete = false;
+            }
+        }
+        return null;
+    }
+
+    private TokenType infer(Parser.Expr expr) {
+        return expr.accept(this);
+    }
+
+    private TokenType unknown() {
+        complete = false;
+        return null;
+    }
+
+    private boolean checkNumberOperands(Parser.Expr.Binary expr, TokenType left, TokenType right) {
+        if ((left != null && !isNumeric(left)) || (right != null && !isNumeric(right))) {
+            error(expr.operator, "Operands must be numbers.");
+            return false;
+        }
+        if (left == null || right == null) return false;
+        numberNodes.add(expr);
+        return true;
+    }
+
+    private void checkAssignable(Token name, TokenType target, TokenType value) {
+        if (value == null || assignable(target, value)) return;
+        error(name, "Cannot assign " + value + " value to " + target + " variable '" + name.lexeme + "'.");
+    }
+
+    private void error(Token token, String message) {
+        if (errors.isEmpty()) firstErrorLine = token.line;
+        errors.add("[line " + token.line + "] Type error: " + message);
+    }
+
+    private static TokenType literalType(Object value) {
+        if (value instanceof Double) {
+            double number = (Double) value;
+            return number == Math.rint(number) ? TokenType.NUMERO : TokenType.TIPIK;
+        }
+        if (value instanceof Character) return TokenType.LETRA;
+        if (value instanceof String) {
+            return value.equals("OO") || value.equals("DILI") ? TokenType.TINUOD : TokenType.STRING;
+        }
+        return null;
+    }
+
+    private static boolean assignable(TokenType target, TokenType value) {
+        return target == value || (isNumeric(target) && isNumeric(value));
+    }
+
+    private static TokenType widen(TokenType left, TokenType right) {
+        return left == TokenType.TIPIK || right == TokenType.TIPIK ? TokenType.TIPIK : TokenType.NUMERO;
+    }
+
+    private static boolean isNumeric(TokenType type) {
+        return type == TokenType.NUMERO || type == TokenType.TIPIK;
+    }
+
+    // TINUOD values are the strings "OO" and "DILI" at runtime, so + concatenates them.
+    private static boolean isText(TokenType type) {
+        return type == TokenType.STRING || type == TokenType.TINUOD;
+    }
+}
@@ -0,0 +1,60 @@
+package Interpreter;
+
+import jdk.incubator.vector.*;
+
+// The Lexer's inner loops, many characters at a time with the incubating Vector API. Only
+// loaded when the JVM runs with --add-modules jdk.incubator.vector, see Lexer.VECTOR.
+//
+// It reads a Latin-1 copy of the source, where every other character is '?', which is
+// none of the characters looked for. Vectors are at most 256 bits: the runs scanned are
+// short, and wider ones slow some CPUs down for everything around them.
+final class VectorScan {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.vectorBitSize() > 256
+            ? ByteVector.SPECIES_256 : ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private VectorScan() {
+    }
+
+    // Index of the first c in text from..to, or to.
+    static int indexOf(byte[] text, byte c, int from, int to) {
+        int i = from;
+        for (; i + LANES <= to; i += LANES) {
+            VectorMask<Byte> found = ByteVector.fromArray(SPECIES, text, i).eq(c);
+            if (found.anyTrue()) return i + found.firstTrue();
+        }
+        while (i < to && text[i] != c) i++;
+        return i;
+    }
+
+    // How many times c occurs in text from..to.
+    static int count(byte[] text, byte c, int from, int to) {
+        int count = 0;
+        int i = from;
+        for (; i + LANES <= to; i += LANES) {
+            count += ByteVector.fromArray(SPECIES, text, i).eq(c).trueCount();
+        }
+        for (; i < to; i++) {
+            if (text[i] == c) count++;
+        }
+        return count;
+    }
+
+    // Index of the first character in text from..to that is not a space, tab, carriage
+    // return or line end, or to.
+    static int skipBlanks(byte[] text, int from, int to) {
+        int i = from;
+        for (; i + LANES <= to; i += LANES) {
+            ByteVector chars = ByteVector.fromArray(SPECIES, text, i);
+            VectorMask<Byte> blank = chars.eq((byte) ' ').or(chars.eq((byte) '\t'))
+                    .or(chars.eq((byte) '\r')).or(chars.eq((byte) '\n'));
+            if (!blank.allTrue()) return i + blank.not().firstTrue();
+        }
+        while (i < to && isBlank(text[i])) i++;
+        return i;
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+}
@@ -0,0 +1,237 @@
+package Interpreter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Generates valid, well-typed Bisaya++ programs for scaling tests and benchmarks.
+// The same options and seed always produce the same program, and the program is streamed
+// to the output, so multi-million statement sources never have to fit in one String.
+//
+//   java Interpreter.WorkloadGenerator --statements=1000000 --depth=4 --seed=7 > big.bpp
+public class WorkloadGenerator {
+    public static class Options {
+        public int statements = 1000;  // Statements to emit, including nested ones
+        public int depth = 3;          // Maximum nesting of PUNDOK / KUNG / ALANG SA
+        public int loopTrips = 10;     // Iterations of every generated ALANG SA
+        public int variables = 8;      // NUMERO variables v0..vN-1
+        public int exprDepth = 3;      // Maximum depth of generated expression trees
+        public int printPercent = 5;   // Share of statements that are IPAKITA
+        public long seed = 1;
+    }
+
+    private static final String[] ARITHMETIC = {"+", "-", "*"};
+    private static final String[] COMPARISON = {"<", "<=", ">", ">=", "==", "<>"};
+
+    private final Options options;
+    private final Random random;
+    private Appendable out;
+    private int emitted;
+
+    public WorkloadGenerator(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        String output = null;
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) usage();
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "statements": options.statements = number(value, 1, Integer.MAX_VALUE); break;
+                case "depth": options.depth = number(value, 0, Integer.MAX_VALUE); break;
+                case "trips": options.loopTrips = number(value, 0, Integer.MAX_VALUE); break;
+                case "variables": options.variables = number(value, 1, Integer.MAX_VALUE); break;
+                case "expr-depth": options.exprDepth = number(value, 0, Integer.MAX_VALUE); break;
+                case "print-percent": options.printPercent = number(value, 0, 100); break;
+                case "seed":
+                    try {
+                        options.seed = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        usage();
+                    }
+                    break;
+                case "out": output = value; break;
+                default: usage();
+            }
+        }
+
+        if (output == null) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            new WorkloadGenerator(options).generate(writer);
+            writer.flush();
+        } else {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+                new WorkloadGenerator(options).generate(writer);
+            }
+        }
+    }
+
+    // A whole number from min to max; anything else only gets the usage.
+    private static int number(String value, int min, int max) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= min && number <= max) return number;
+        } catch (NumberFormatException e) {
+            // Falls through to the usage
+        }
+        usage();
+        return min;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java Interpreter.WorkloadGenerator [--statements=N] [--depth=N] [--trips=N]"
+                + " [--variables=N] [--expr-depth=N] [--print-percent=N] [--seed=N] [--out=file]");
+        System.err.println("  --statements and --variables are at least 1, --print-percent at most 100.");
+        System.exit(64);
+    }
+
+    public String generate() {
+        StringBuilder source = new StringBuilder();
+        try {
+            generate(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return source.toString();
+    }
+
+    public void generate(Appendable out) throws IOException {
+        this.out = out;
+        emitted = 0;
+
+        out.append("-- Generated by WorkloadGenerator: statements=").append(String.valueOf(options.statements))
+                .append(" depth=").append(String.valueOf(options.depth))
+                .append(" trips=").append(String.valueOf(options.loopTrips))
+                .append(" variables=").append(String.valueOf(options.variables))
+                .append(" expr-depth=").append(String.valueOf(options.exprDepth))
+                .append(" print-percent=").append(String.valueOf(options.printPercent))
+                .append(" seed=").append(String.valueOf(options.seed)).append('\n');
+        out.append("SUGOD\n");
+        declarations();
+        while (emitted < options.statements) {
+            statement(1, 0);
+        }
+        out.append("KATAPUSAN\n");
+    }
+
+    private void declarations() throws IOException {
+        for (int i = 0; i < options.variables; i++) {
+            line(1, "MUGNA NUMERO v" + i + " = " + random.nextInt(100));
+        }
+        for (int i = 0; i < options.depth; i++) {
+            line(1, "MUGNA NUMERO i" + i);
+        }
+        line(1, "MUGNA LETRA c = 'a'");
+        line(1, "MUGNA TINUOD t = \"OO\"");
+    }
+
+    // Emits one statement, which for compound statements includes their bodies.
+    // loops is the number of enclosing ALANG SA, so i0..i(loops-1) are in scope.
+    private void statement(int indent, int loops) throws IOException {
+        emitted++;
+        int nesting = indent - 1;
+        int roll = random.nextInt(100);
+
+        if (roll < options.printPercent) {
+            print(indent, loops);
+        } else if (nesting < options.depth && roll < options.printPercent + 12) {
+            ifStatement(indent, loops);
+        } else if (nesting < options.depth && loops < options.depth && roll < options.printPercent + 22) {
+            loop(indent, loops);
+        } else if (nesting < options.depth && roll < options.printPercent + 27) {
+            line(indent, "PUNDOK{");
+            body(indent + 1, loops);
+            line(indent, "}");
+        } else if (roll < options.printPercent + 32) {
+            line(indent, "c = '" + (char) ('a' + random.nextInt(26)) + "'");
+        } else if (roll < options.printPercent + 37) {
+            line(indent, "t = (" + condition(loops) + ")");
+        } else {
+            line(indent, variable() + " = (" + expression(options.exprDepth, loops) + ") % 1000");
+        }
+    }
+
+    private void body(int indent, int loops) throws IOException {
+        int count = 1 + random.nextInt(6);
+        for (int i = 0; i < count && emitted < options.statements; i++) {
+            statement(indent, loops);
+        }
+    }
+
+    // IPAKITA cannot be followed by an assignment on the next line, so it always gets its own block.
+    private void print(int indent, int loops) throws IOException {
+        String variable = variable();
+        String counter = loops > 0 ? " & \" i=\" & i" + random.nextInt(loops) : "";
+        line(indent, "PUNDOK{");
+        line(indent + 1, "IPAKITA: \"" + variable + "=\" & " + variable + counter + " & [,] & c & [ ] & t & $");
+        line(indent, "}");
+    }
+
+    private void ifStatement(int indent, int loops) throws IOException {
+        line(indent, "KUNG (" + condition(loops) + ")");
+        block(indent, loops);
+        // The parser accepts a single KUNG DILI per KUNG.
+        if (random.nextBoolean()) {
+            line(indent, "KUNG DILI (" + condition(loops) + ")");
+            block(indent, loops);
+        }
+        if (random.nextBoolean()) {
+            line(indent, "KUNG WALA");
+            block(indent, loops);
+        }
+    }
+
+    private void loop(int indent, int loops) throws IOException {
+        String counter = "i" + loops;
+        line(indent, "ALANG SA (" + counter + "=1, " + counter + "<=" + options.loopTrips + ", " + counter + "++)");
+        line(indent, "PUNDOK{");
+        body(indent + 1, loops + 1);
+        line(indent, "}");
+    }
+
+    private void block(int indent, int loops) throws IOException {
+        line(indent, "PUNDOK{");
+        body(indent + 1, loops);
+        line(indent, "}");
+    }
+
+    private String condition(int loops) {
+        String comparison = expression(1, loops) + " " + COMPARISON[random.nextInt(COMPARISON.length)] + " "
+                + expression(1, loops);
+        switch (random.nextInt(4)) {
+            case 0: return comparison + " UG c <> 'z'";
+            case 1: return comparison + " O t == \"OO\"";
+            default: return comparison;
+        }
+    }
+
+    private String expression(int depth, int loops) {
+        if (depth <= 0 || random.nextInt(3) == 0) {
+            int leaf = random.nextInt(3);
+            if (leaf == 0) return String.valueOf(random.nextInt(100));
+            if (leaf == 1 && loops > 0) return "i" + random.nextInt(loops);
+            return variable();
+        }
+        String left = expression(depth - 1, loops);
+        String right = expression(depth - 1, loops);
+        if (random.nextInt(5) == 0) {
+            return "(" + left + " % " + (2 + random.nextInt(50)) + ")";
+        }
+        return "(" + left + " " + ARITHMETIC[random.nextInt(ARITHMETIC.length)] + " " + right + ")";
+    }
+
+    private String variable() {
+        return "v" + random.nextInt(options.variables);
+    }
+
+    private void line(int indent, String text) throws IOException {
+        for (int i = 0; i < indent; i++) out.append("  ");
+        out.append(text).append('\n');
+    }
+}